@@ -0,0 +1,92 @@
+package reversi;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The {@link RowKernel} using the incubating Vector API, which works on as
+ * many words as the CPU's widest vectors hold at once (eight with AVX-512).
+ * It does exactly what {@link ScalarRowKernel} does, running along all the
+ * rows as one, so even narrow boards fill the vectors.<br>
+ * <br>
+ * This is the only class which needs the <tt>jdk.incubator.vector</tt>
+ * module, both to compile and to run, so it lives in its own source root
+ * where a plain compile of <tt>src</tt> does not see it.  To build it,
+ * compile both roots with the module:<br>
+ * <br>
+ * <tt>javac --add-modules jdk.incubator.vector -d out $(find src src-vector -name '*.java')</tt><br>
+ * <br>
+ * and run with <tt>java --add-modules jdk.incubator.vector</tt>.  Without
+ * the class, or the module at run time, {@link BitRowReversi} uses the
+ * scalar kernel.
+ *
+ * @author Kevin Becker
+ */
+final class VectorRowKernel implements RowKernel {
+    /** the widest vectors of longs the CPU has */
+    private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+    /**
+     * Create the kernel, refusing if the CPU has no vectors worth using
+     * (the Vector API would then be much slower than plain code).
+     *
+     * @throws UnsupportedOperationException if vectors hold only one long
+     */
+    VectorRowKernel() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("No vector support for longs");
+        }
+    }
+
+    @Override
+    public void legalMoves(long[] player1, long[] player2, long[] columns, long[] scratch, long[] moves,
+                           int rows, int stride) {
+        int start = stride;
+        int end = (rows + 1) * stride;
+        int lanes = SPECIES.length();
+        int vectorEnd = start + (end - start) / lanes * lanes;
+
+        // spread every disc up and down: the rows above, at and below each cell
+        int p = start;
+        for (; p<vectorEnd; p+=lanes) {
+            occupied(player1, player2, p - stride)
+                    .or(occupied(player1, player2, p))
+                    .or(occupied(player1, player2, p + stride))
+                    .intoArray(scratch, p);
+        }
+        for (; p<end; ++p) {
+            scratch[p] = player1[p - stride] | player2[p - stride] | player1[p] | player2[p] |
+                    player1[p + stride] | player2[p + stride];
+        }
+
+        // then left and right, carrying bits across words, and keep the empty cells
+        for (p=start; p<vectorEnd; p+=lanes) {
+            LongVector near = LongVector.fromArray(SPECIES, scratch, p);
+            near = near.or(near.lanewise(VectorOperators.LSHL, 1))
+                    .or(LongVector.fromArray(SPECIES, scratch, p - 1).lanewise(VectorOperators.LSHR, 63))
+                    .or(near.lanewise(VectorOperators.LSHR, 1))
+                    .or(LongVector.fromArray(SPECIES, scratch, p + 1).lanewise(VectorOperators.LSHL, 63));
+            near.and(occupied(player1, player2, p).not())
+                    .and(LongVector.fromArray(SPECIES, columns, p))
+                    .intoArray(moves, p);
+        }
+        for (; p<end; ++p) {
+            long near = scratch[p];
+            near |= (near << 1) | (scratch[p - 1] >>> 63) | (near >>> 1) | (scratch[p + 1] << 63);
+            moves[p] = near & ~(player1[p] | player2[p]) & columns[p];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "vector x" + SPECIES.length();
+    }
+
+    /**
+     * Load the occupied cells of a vector's worth of words.
+     */
+    private static LongVector occupied(long[] player1, long[] player2, int p) {
+        return LongVector.fromArray(SPECIES, player1, p).or(LongVector.fromArray(SPECIES, player2, p));
+    }
+}
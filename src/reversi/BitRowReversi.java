@@ -0,0 +1,411 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * A Reversi engine which keeps each player's discs as rows of bits, 64
+ * cells to a long.  It plays by exactly the same rules as {@link Reversi},
+ * but:
+ * <ul>
+ * <li>every legal move is found at once with shifts, ANDs and ORs over
+ * whole rows (a cell is legal if it is empty and the board, spread by one
+ * cell in every direction, covers it) instead of checking the eight
+ * neighbors of every cell;</li>
+ * <li>a move's flips are found by stepping a single bit along each
+ * direction, so a move costs time in proportion to the discs it flips
+ * rather than to the board;</li>
+ * <li>disc counts are kept up to date so the winner is known without a
+ * scan.</li>
+ * </ul>
+ * The whole-board step is done by a {@link RowKernel}.  When the JVM is run
+ * with <tt>--add-modules jdk.incubator.vector</tt> on a CPU with vector
+ * instructions, <tt>VectorRowKernel</tt> does several words at once;
+ * otherwise {@link ScalarRowKernel} does them one at a time.  The choice is
+ * made once, when the class is loaded, and <tt>-Dreversi.vector=false</tt>
+ * forces the scalar kernel.  The vector kernel is in its own source root,
+ * <tt>src-vector</tt>, so <tt>src</tt> compiles without the incubator
+ * module; when it was not compiled the scalar kernel is used.
+ *
+ * @author Kevin Becker
+ */
+public class BitRowReversi implements Board {
+    /** the kernel used by boards, chosen when the class is loaded */
+    private static final RowKernel KERNEL = loadKernel();
+
+    /** number of rows in board */
+    private final int rows;
+    /** number of columns in board */
+    private final int cols;
+    /** longs per row, including a padding word at each end */
+    private final int stride;
+    /** the cells which are on the board, laid out like the players' discs */
+    private final long[] columns;
+    /** player one's discs, with a padding row above and below the board */
+    private final long[] player1;
+    /** player two's discs, laid out like player1 */
+    private final long[] player2;
+    /** finds the legal moves */
+    private final RowKernel kernel;
+    /** working space for the kernel, created when first needed */
+    private long[] scratch;
+    /** the legal moves from the kernel, created when first needed */
+    private long[] moves;
+    /** which player's turn is it? */
+    private boolean p1Turn;
+    /** how many valid moves have been made? */
+    private int numMoves;
+    /** number of player one's discs */
+    private int p1Discs;
+    /** number of player two's discs */
+    private int p2Discs;
+    /** the Zobrist hash of the board, kept up to date as discs change */
+    private long hash;
+
+    /**
+     * Construct a board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2 and the board
+     * must have fewer than 2^31 cells
+     */
+    public BitRowReversi(int rows, int cols) {
+        this(rows, cols, KERNEL);
+    }
+
+    /**
+     * Construct a board of a specified size which uses a particular kernel.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param kernel finds the legal moves
+     */
+    BitRowReversi(int rows, int cols, RowKernel kernel) {
+        int words = (cols + 63) >>> 6;
+        if (rows < 2 || cols < 2 || (long) rows * cols > Integer.MAX_VALUE - 64 ||
+                (long) (rows + 2) * (words + 2) > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Unsupported board size: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = words + 2;
+        this.kernel = kernel;
+
+        this.player1 = new long[(rows + 2) * this.stride];
+        this.player2 = new long[(rows + 2) * this.stride];
+
+        // mark the cells which are on the board
+        this.columns = new long[this.player1.length];
+        for (int row=0; row<rows; ++row) {
+            int base = (row + 1) * this.stride + 1;
+            for (int w=0; w<(cols >>> 6); ++w) {
+                this.columns[base + w] = -1L;
+            }
+            if ((cols & 63) != 0) {
+                this.columns[base + (cols >>> 6)] = (1L << cols) - 1;
+            }
+        }
+        this.p1Turn = true;
+
+        // populate the center of the board with pieces
+        place(rows/2-1, cols/2-1, this.player1);
+        place(rows/2, cols/2, this.player1);
+        place(rows/2-1, cols/2, this.player2);
+        place(rows/2, cols/2-1, this.player2);
+    }
+
+    /**
+     * Construct a copy of another board.
+     *
+     * @param other the board to copy
+     */
+    public BitRowReversi(BitRowReversi other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.stride = other.stride;
+        this.columns = other.columns;
+        this.player1 = other.player1.clone();
+        this.player2 = other.player2.clone();
+        this.kernel = other.kernel;
+        this.p1Turn = other.p1Turn;
+        this.numMoves = other.numMoves;
+        this.p1Discs = other.p1Discs;
+        this.p2Discs = other.p2Discs;
+        this.hash = other.hash;
+    }
+
+    /**
+     * Get the name of the kernel boards use by default, for reports.
+     *
+     * @return the name
+     */
+    public static String getKernelName() {
+        return KERNEL.getName();
+    }
+
+    @Override
+    public int getRows() {
+        return this.rows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.cols;
+    }
+
+    @Override
+    public Move getCell(int row, int col) {
+        if (has(this.player1, row, col)) {
+            return Move.PLAYER_ONE;
+        } else if (has(this.player2, row, col)) {
+            return Move.PLAYER_TWO;
+        }
+        return Move.NONE;
+    }
+
+    @Override
+    public Move getCurrentPlayer() {
+        return this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+    }
+
+    @Override
+    public int getNumMoves() {
+        return this.numMoves;
+    }
+
+    @Override
+    public long getHash() {
+        return this.hash;
+    }
+
+    @Override
+    public boolean isValidMove(int row, int col) {
+        return row >= 0 && row < this.rows && col >= 0 && col < this.cols &&
+                !occupied(row, col) && occupiedNeighbor(row, col);
+    }
+
+    @Override
+    public int[] getValidMoves() {
+        if (this.moves == null) {
+            this.scratch = new long[this.player1.length];
+            this.moves = new long[this.player1.length];
+        }
+        this.kernel.legalMoves(this.player1, this.player2, this.columns, this.scratch, this.moves,
+                this.rows, this.stride);
+
+        // read the moves out in row-major order
+        int count = 0;
+        for (int p=this.stride; p<this.moves.length-this.stride; ++p) {
+            count += Long.bitCount(this.moves[p]);
+        }
+        int[] valid = new int[count];
+        int next = 0;
+        for (int row=0; row<this.rows && next<count; ++row) {
+            int base = (row + 1) * this.stride + 1;
+            for (int w=0; w<this.stride-2; ++w) {
+                long word = this.moves[base + w];
+                while (word != 0) {
+                    valid[next++] = row * this.cols + (w << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+        }
+        return valid;
+    }
+
+    @Override
+    public void makeMove(int row, int col) throws ReversiException {
+        // check for exceptions
+        if (row < 0 || row >= this.rows) {
+            throw new ReversiException("Invalid row: " + row);
+        } else if (col < 0 || col >= this.cols) {
+            throw new ReversiException("Invalid column: " + col);
+        } else if (occupied(row, col)) {
+            throw new ReversiException("Cell occupied: " + "(" + row + ", " + col + ")");
+        } else if (!occupiedNeighbor(row, col)) {
+            throw new ReversiException("No neighbor: " + "(" + row + ", " + col + ")");
+        }
+
+        long[] mine = this.p1Turn ? this.player1 : this.player2;
+        long[] theirs = this.p1Turn ? this.player2 : this.player1;
+        place(row, col, mine);
+        flipPieces(row, col, mine, theirs);
+        this.p1Turn = !this.p1Turn;
+    }
+
+    @Override
+    public boolean gameOver() {
+        return this.numMoves == this.rows * this.cols;
+    }
+
+    @Override
+    public Move getWinner() {
+        if (this.p1Discs == this.p2Discs) {
+            return Move.NONE;
+        } else if (this.p1Discs > this.p2Discs) {
+            return Move.PLAYER_ONE;
+        } else {
+            return Move.PLAYER_TWO;
+        }
+    }
+
+    @Override
+    public BitRowReversi copy() {
+        return new BitRowReversi(this);
+    }
+
+    /**
+     * Returns a string representation of the board in the same layout as
+     * {@link Reversi#toString()}.
+     *
+     * @return the string representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        // build the top row with column numbers
+        builder.append(' ');
+        for (int c=0; c<this.cols; ++c) {
+            builder.append(' ').append(c).append(' ');
+        }
+        builder.append('\n');
+
+        // build remaining rows with row numbers and column values
+        for (int r=0; r<this.rows; ++r) {
+            builder.append(r);
+            for (int c=0; c<this.cols; ++c) {
+                builder.append('[').append(getCell(r, c).getSymbol()).append(']');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Choose the kernel: the vector one if its module is present and it was
+     * compiled and can be loaded, otherwise the scalar one.
+     *
+     * @return the kernel
+     */
+    private static RowKernel loadKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("reversi.vector", "true")) ||
+                ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return ScalarRowKernel.INSTANCE;
+        }
+        try {
+            // loaded by name so this class never links against the incubator module itself
+            return (RowKernel) Class.forName("reversi.VectorRowKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return ScalarRowKernel.INSTANCE;
+        }
+    }
+
+    /**
+     * Put a disc on an empty cell.
+     *
+     * @param row the row
+     * @param col the column
+     * @param player the discs of the player
+     */
+    private void place(int row, int col, long[] player) {
+        player[index(row, col)] |= 1L << col;
+        ++this.numMoves;
+        if (player == this.player1) {
+            ++this.p1Discs;
+        } else {
+            ++this.p2Discs;
+        }
+        this.hash ^= Zobrist.key(row * this.cols + col, player == this.player1 ? Move.PLAYER_ONE : Move.PLAYER_TWO);
+    }
+
+    /**
+     * Flip all the pieces that are affected by a new disc.
+     *
+     * @param row the row
+     * @param col the column
+     * @param mine the discs of the player who moved
+     * @param theirs the discs of the other player
+     */
+    private void flipPieces(int row, int col, long[] mine, long[] theirs) {
+        Move me = mine == this.player1 ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+        Move other = me == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+        for (int rd=-1; rd<=1; ++rd) {
+            for (int cd=-1; cd<=1; ++cd) {
+                if (rd == 0 && cd == 0) {
+                    continue;
+                }
+
+                // run over the opponent's discs in this direction (the padding ends every run)
+                int r = row + rd;
+                int c = col + cd;
+                int run = 0;
+                while (has(theirs, r, c)) {
+                    r += rd;
+                    c += cd;
+                    ++run;
+                }
+
+                // flip them if they are capped by one of our discs
+                if (run > 0 && has(mine, r, c)) {
+                    for (int i=1; i<=run; ++i) {
+                        int fr = row + i * rd;
+                        int fc = col + i * cd;
+                        int p = index(fr, fc);
+                        theirs[p] &= ~(1L << fc);
+                        mine[p] |= 1L << fc;
+                        int cell = fr * this.cols + fc;
+                        this.hash ^= Zobrist.key(cell, other) ^ Zobrist.key(cell, me);
+                    }
+                    if (me == Move.PLAYER_ONE) {
+                        this.p1Discs += run;
+                        this.p2Discs -= run;
+                    } else {
+                        this.p2Discs += run;
+                        this.p1Discs -= run;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Check that there is an occupied neighbor - we relax the official rules
+     * here that say the neighbor must be the same color.  The padding lets
+     * this look one cell off the board on every side.
+     */
+    private boolean occupiedNeighbor(int row, int col) {
+        for (int r=row-1; r<=row+1; ++r) {
+            for (int c=col-1; c<=col+1; ++c) {
+                if (!(r == row && c == col) && occupied(r, c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check whether either player has a disc on a cell.
+     */
+    private boolean occupied(int row, int col) {
+        return has(this.player1, row, col) || has(this.player2, row, col);
+    }
+
+    /**
+     * Check whether a player has a disc on a cell, which may be one cell off
+     * the board.
+     */
+    private boolean has(long[] player, int row, int col) {
+        return (player[index(row, col)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Get the index of the word holding a cell, which may be one cell off
+     * the board (into the padding).
+     */
+    private int index(int row, int col) {
+        return (row + 1) * this.stride + 1 + (col >> 6);
+    }
+}
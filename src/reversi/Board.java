@@ -0,0 +1,127 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * The operations shared by every Reversi engine.  {@link Reversi} is the
+ * reference engine; {@link PackedReversi} plays by the same rules but is
+ * built for very large boards, and {@link BitRowReversi} finds every move
+ * at once with (optionally vectorized) bit operations on rows.  See
+ * {@link EngineBenchmark} for how they compare.
+ *
+ * @author Kevin Becker
+ */
+public interface Board {
+    /** boards with more cells than this are created as {@link PackedReversi} */
+    int LARGE_BOARD_CELLS = 32 * 32;
+
+    /**
+     * Create the engine best suited to a board size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @return a new board in the starting position
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2
+     */
+    static Board create(int rows, int cols) {
+        if ((long) rows * cols > LARGE_BOARD_CELLS) {
+            return new PackedReversi(rows, cols);
+        }
+        return new Reversi(rows, cols);
+    }
+
+    /**
+     * Get the number of rows in the board.
+     *
+     * @return number of rows
+     */
+    int getRows();
+
+    /**
+     * Get the number of columns in the board.
+     *
+     * @return number of columns
+     */
+    int getCols();
+
+    /**
+     * Get the contents of a cell on the board.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the player occupying the cell, or {@link Move#NONE} if empty
+     */
+    Move getCell(int row, int col);
+
+    /**
+     * Get the player whose turn it is.
+     *
+     * @return {@link Move#PLAYER_ONE} or {@link Move#PLAYER_TWO}
+     */
+    Move getCurrentPlayer();
+
+    /**
+     * Get the number of occupied cells on the board, including the four
+     * starting pieces.
+     *
+     * @return the number of occupied cells
+     */
+    int getNumMoves();
+
+    /**
+     * Get a 64-bit hash of the discs on the board.  Every engine computes
+     * the same hash for the same position, so it can be used to check that
+     * two copies of a game agree.
+     *
+     * @return the hash
+     */
+    long getHash();
+
+    /**
+     * Check whether a move would be accepted by {@link #makeMove(int, int)}.
+     *
+     * @param row the row
+     * @param col the column
+     * @return whether the move is valid
+     */
+    boolean isValidMove(int row, int col);
+
+    /**
+     * Get every valid move for the player to move.
+     *
+     * @return the moves, each packed as <tt>row * cols + col</tt>
+     */
+    int[] getValidMoves();
+
+    /**
+     * Verify a move and update the board state.
+     *
+     * @param row the row to place the new piece
+     * @param col the column to place the new piece
+     * @throws ReversiException if the move is invalid
+     */
+    void makeMove(int row, int col) throws ReversiException;
+
+    /**
+     * Check to see if the game is over (board is filled)
+     *
+     * @return whether the game is over or not
+     */
+    boolean gameOver();
+
+    /**
+     * Get the winner of the game.
+     *
+     * @rit.pre The game must be over.
+     * @return The winner.
+     */
+    Move getWinner();
+
+    /**
+     * Construct a copy of this board which shares no state with it.
+     *
+     * @return the copy
+     */
+    Board copy();
+}
@@ -0,0 +1,214 @@
+package reversi;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.BiFunction;
+
+/**
+ * Compares the engines on boards of several sizes (8x8, 32x32 and 128x128
+ * unless others are given).  For each engine it measures:
+ * <ul>
+ * <li>move generation: {@link Board#getValidMoves()} on positions from
+ * every stage of a game;</li>
+ * <li>play: whole games, finding the valid moves and then making one on
+ * every turn.</li>
+ * </ul>
+ * Every engine plays the same moves.  {@link BitRowReversi} is measured with
+ * both of its kernels; the vector kernel needs <tt>src-vector</tt> to be
+ * compiled and the JVM to be run with
+ * <tt>--add-modules jdk.incubator.vector</tt>, and is skipped otherwise.
+ * Usage: <tt>java EngineBenchmark [size...]</tt>
+ *
+ * @author Kevin Becker
+ */
+public class EngineBenchmark {
+    /** how long each measurement runs for, in milliseconds */
+    private static final long MEASURE_MILLIS = 2000;
+
+    /** roughly how many plies of games are played per size */
+    private static final int PLIES_PER_SIZE = 1 << 16;
+
+    /** the number of positions move generation cycles through */
+    private static final int NUM_POSITIONS = 256;
+
+    /** sinks the results so the JIT cannot drop them */
+    private static volatile long sink;
+
+    /**
+     * An engine being measured.
+     */
+    private static class Engine {
+        /** the engine's name in the report */
+        final String name;
+        /** creates a board of a size */
+        final BiFunction<Integer, Integer, Board> factory;
+
+        /**
+         * Describe an engine.
+         *
+         * @param name the name in the report
+         * @param factory creates a board of a size
+         */
+        Engine(String name, BiFunction<Integer, Integer, Board> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Run the benchmark.
+     *
+     * @param args (optional) the sizes of the square boards to measure
+     */
+    public static void main(String[] args) {
+        int[] sizes = {8, 32, 128};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i=0; i<args.length; ++i) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        List<Engine> engines = new ArrayList<>();
+        engines.add(new Engine("Reversi", Reversi::new));
+        engines.add(new Engine("PackedReversi", PackedReversi::new));
+        engines.add(new Engine("BitRowReversi (scalar)",
+                (rows, cols) -> new BitRowReversi(rows, cols, ScalarRowKernel.INSTANCE)));
+        if (!BitRowReversi.getKernelName().equals(ScalarRowKernel.INSTANCE.getName())) {
+            engines.add(new Engine("BitRowReversi (" + BitRowReversi.getKernelName() + ")", BitRowReversi::new));
+        } else {
+            System.out.println("The vector kernel is unavailable (compile src-vector and run with --add-modules jdk.incubator.vector).");
+        }
+
+        System.out.printf("%-6s %-26s %14s %14s %10s%n", "Size", "Engine", "Move gen/s", "Plies/s", "vs Reversi");
+        for (int size : sizes) {
+            int[][] games = randomGames(new SplittableRandom(size), size,
+                    Math.max(1, PLIES_PER_SIZE / (size * size)));
+            double baseline = 0;
+            for (Engine engine : engines) {
+                Board[] positions = positions(engine, size, games);
+
+                // the first runs just warm up the JIT
+                measureMoveGeneration(positions, MEASURE_MILLIS / 4);
+                measurePlay(engine, size, games, MEASURE_MILLIS / 4);
+                double generation = measureMoveGeneration(positions, MEASURE_MILLIS);
+                double play = measurePlay(engine, size, games, MEASURE_MILLIS);
+
+                if (baseline == 0) {
+                    baseline = play;
+                }
+                System.out.printf("%-6s %-26s %,14.0f %,14.0f %9.1fx%n", size + "x" + size, engine.name,
+                        generation, play, play / baseline);
+            }
+        }
+    }
+
+    /**
+     * Play random games from the start to the end.
+     *
+     * @param random the source of randomness
+     * @param size the side of the board
+     * @param count the number of games
+     * @return each game's moves, as <tt>row * cols + col</tt>
+     */
+    private static int[][] randomGames(SplittableRandom random, int size, int count) {
+        int[][] games = new int[count][];
+        for (int g=0; g<count; ++g) {
+            // the bit row engine is checked against Reversi, and is much quicker on big boards
+            Board game = new BitRowReversi(size, size, ScalarRowKernel.INSTANCE);
+            int[] moves = new int[size * size - 4];
+            for (int ply=0; ply<moves.length; ++ply) {
+                int[] valid = game.getValidMoves();
+                moves[ply] = valid[random.nextInt(valid.length)];
+                play(game, size, moves[ply]);
+            }
+            games[g] = moves;
+        }
+        return games;
+    }
+
+    /**
+     * Get positions spread over the games, each on a board of an engine.
+     *
+     * @param engine the engine
+     * @param size the side of the board
+     * @param games the games
+     * @return the positions
+     */
+    private static Board[] positions(Engine engine, int size, int[][] games) {
+        Board[] positions = new Board[NUM_POSITIONS];
+        for (int i=0; i<NUM_POSITIONS; ++i) {
+            int[] moves = games[i % games.length];
+            int plies = (int) ((long) moves.length * i / NUM_POSITIONS);
+            Board board = engine.factory.apply(size, size);
+            for (int ply=0; ply<plies; ++ply) {
+                play(board, size, moves[ply]);
+            }
+            positions[i] = board;
+        }
+        return positions;
+    }
+
+    /**
+     * Find the valid moves of positions over and over.
+     *
+     * @param positions the positions to cycle through
+     * @param millis how long to run for
+     * @return move generations per second
+     */
+    private static double measureMoveGeneration(Board[] positions, long millis) {
+        long total = 0;
+        long count = 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1_000_000;
+        while (System.nanoTime() < deadline) {
+            for (Board position : positions) {
+                total += position.getValidMoves().length;
+            }
+            count += positions.length;
+        }
+        sink = total;
+        return count / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Play the games over and over, finding the valid moves before each
+     * move as a player would.
+     *
+     * @param engine the engine
+     * @param size the side of the board
+     * @param games the games
+     * @param millis how long to run for (at least one game is played)
+     * @return plies per second
+     */
+    private static double measurePlay(Engine engine, int size, int[][] games, long millis) {
+        long total = 0;
+        long plies = 0;
+        long start = System.nanoTime();
+        long deadline = start + millis * 1_000_000;
+        int next = 0;
+        do {
+            int[] moves = games[next++ % games.length];
+            Board board = engine.factory.apply(size, size);
+            for (int move : moves) {
+                total += board.getValidMoves().length;
+                play(board, size, move);
+            }
+            plies += moves.length;
+        } while (System.nanoTime() < deadline);
+        sink = total;
+        return plies / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Make a move which is known to be valid.
+     */
+    private static void play(Board board, int size, int move) {
+        try {
+            board.makeMove(move / size, move % size);
+        } catch (ReversiException re) {
+            throw new IllegalStateException("Engines disagree on a valid move", re);
+        }
+    }
+}
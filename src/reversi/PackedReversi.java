@@ -0,0 +1,422 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+import java.util.Arrays;
+
+/**
+ * A Reversi engine for very large (and non-square) boards.  It plays by
+ * exactly the same rules as {@link Reversi}, but:
+ * <ul>
+ * <li>the board is stored as packed 2-bit cells, 32 to a long, instead of
+ * one object reference per cell;</li>
+ * <li>the frontier (every empty cell next to an occupied one) is tracked as
+ * moves are made.  Under our relaxed rules the frontier is exactly the set
+ * of valid moves, so move generation costs time proportional to the
+ * frontier rather than to the whole board;</li>
+ * <li>disc counts are kept up to date so the winner is known without a
+ * scan.</li>
+ * </ul>
+ *
+ * @author Kevin Becker
+ */
+public class PackedReversi implements Board {
+    /** cell code of an empty cell */
+    private static final int EMPTY = 0;
+    /** cell code of a player one disc */
+    private static final int ONE = 1;
+    /** cell code of a player two disc */
+    private static final int TWO = 2;
+
+    /** number of rows in board */
+    private final int rows;
+    /** number of columns in board */
+    private final int cols;
+    /** the board, 2 bits per cell in row-major order */
+    private final long[] cells;
+    /** one bit per cell, set for cells currently on the frontier */
+    private final long[] frontierBits;
+    /**
+     * the frontier cells, possibly with stale entries for cells which have
+     * since been played (their bit in frontierBits is clear)
+     */
+    private int[] frontier;
+    /** number of entries in use in frontier */
+    private int frontierLength;
+    /** number of live cells on the frontier */
+    private int frontierSize;
+    /** which player's turn is it? */
+    private boolean p1Turn;
+    /** how many valid moves have been made? */
+    private int numMoves;
+    /** number of player one's discs */
+    private int p1Discs;
+    /** number of player two's discs */
+    private int p2Discs;
+    /** the Zobrist hash of the board, kept up to date as discs change */
+    private long hash;
+
+    /**
+     * Construct a board of a specified size.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     *
+     * @rit.pre the board dimensions cannot be smaller than 2x2 and the board
+     * must have fewer than 2^31 cells
+     */
+    public PackedReversi(int rows, int cols) {
+        this(rows, cols, true);
+    }
+
+    /**
+     * Construct an empty board, optionally with the starting pieces.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param start whether to place the starting pieces
+     */
+    private PackedReversi(int rows, int cols, boolean start) {
+        if (rows < 2 || cols < 2 || (long) rows * cols > Integer.MAX_VALUE - 64) {
+            throw new IllegalArgumentException("Unsupported board size: " + rows + "x" + cols);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        int area = rows * cols;
+        this.cells = new long[(area + 31) >>> 5];
+        this.frontierBits = new long[(area + 63) >>> 6];
+        this.frontier = new int[16];
+        this.p1Turn = true;
+
+        if (start) {
+            // populate the center of the board with pieces
+            place(rows/2-1, cols/2-1, ONE);
+            place(rows/2, cols/2, ONE);
+            place(rows/2-1, cols/2, TWO);
+            place(rows/2, cols/2-1, TWO);
+        }
+    }
+
+    /**
+     * Construct a copy of another board.
+     *
+     * @param other the board to copy
+     */
+    public PackedReversi(PackedReversi other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.cells = other.cells.clone();
+        this.frontierBits = other.frontierBits.clone();
+        this.frontier = Arrays.copyOf(other.frontier, other.frontier.length);
+        this.frontierLength = other.frontierLength;
+        this.frontierSize = other.frontierSize;
+        this.p1Turn = other.p1Turn;
+        this.numMoves = other.numMoves;
+        this.p1Discs = other.p1Discs;
+        this.p2Discs = other.p2Discs;
+        this.hash = other.hash;
+    }
+
+    /**
+     * Construct a board in a given position.
+     *
+     * @param position the position
+     */
+    PackedReversi(Position position) {
+        this(position.getRows(), position.getCols(), false);
+        for (int row=0; row<this.rows; ++row) {
+            for (int col=0; col<this.cols; ++col) {
+                Move move = position.getCell(row, col);
+                if (move != Move.NONE) {
+                    place(row, col, move == Move.PLAYER_ONE ? ONE : TWO);
+                }
+            }
+        }
+        this.p1Turn = position.getCurrentPlayer() == Move.PLAYER_ONE;
+    }
+
+    @Override
+    public int getRows() {
+        return this.rows;
+    }
+
+    @Override
+    public int getCols() {
+        return this.cols;
+    }
+
+    @Override
+    public Move getCell(int row, int col) {
+        return move(get(row * this.cols + col));
+    }
+
+    @Override
+    public Move getCurrentPlayer() {
+        return this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+    }
+
+    @Override
+    public int getNumMoves() {
+        return this.numMoves;
+    }
+
+    @Override
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Get the number of valid moves, which is the size of the frontier.
+     *
+     * @return the number of valid moves
+     */
+    public int getValidMoveCount() {
+        return this.frontierSize;
+    }
+
+    @Override
+    public boolean isValidMove(int row, int col) {
+        return row >= 0 && row < this.rows && col >= 0 && col < this.cols &&
+                onFrontier(row * this.cols + col);
+    }
+
+    @Override
+    public int[] getValidMoves() {
+        compactFrontier();
+        return Arrays.copyOf(this.frontier, this.frontierLength);
+    }
+
+    @Override
+    public void makeMove(int row, int col) throws ReversiException {
+        // check for exceptions
+        if (row < 0 || row >= this.rows) {
+            throw new ReversiException("Invalid row: " + row);
+        } else if (col < 0 || col >= this.cols) {
+            throw new ReversiException("Invalid column: " + col);
+        } else if (get(row * this.cols + col) != EMPTY) {
+            throw new ReversiException("Cell occupied: " + "(" + row + ", " + col + ")");
+        } else if (!onFrontier(row * this.cols + col)) {
+            throw new ReversiException("No neighbor: " + "(" + row + ", " + col + ")");
+        }
+
+        int me = this.p1Turn ? ONE : TWO;
+        place(row, col, me);
+        flipPieces(row, col, me);
+        this.p1Turn = !this.p1Turn;
+    }
+
+    @Override
+    public boolean gameOver() {
+        return this.numMoves == this.rows * this.cols;
+    }
+
+    @Override
+    public Move getWinner() {
+        if (this.p1Discs == this.p2Discs) {
+            return Move.NONE;
+        } else if (this.p1Discs > this.p2Discs) {
+            return Move.PLAYER_ONE;
+        } else {
+            return Move.PLAYER_TWO;
+        }
+    }
+
+    @Override
+    public PackedReversi copy() {
+        return new PackedReversi(this);
+    }
+
+    /**
+     * Returns a string representation of the board in the same layout as
+     * {@link Reversi#toString()}.
+     *
+     * @return the string representation
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+
+        // build the top row with column numbers
+        builder.append(' ');
+        for (int c=0; c<this.cols; ++c) {
+            builder.append(' ').append(c).append(' ');
+        }
+        builder.append('\n');
+
+        // build remaining rows with row numbers and column values
+        for (int r=0; r<this.rows; ++r) {
+            builder.append(r);
+            for (int c=0; c<this.cols; ++c) {
+                builder.append('[').append(getCell(r, c).getSymbol()).append(']');
+            }
+            builder.append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Put a disc on an empty cell, take the cell off the frontier and add
+     * its empty neighbors to it.
+     *
+     * @param row the row
+     * @param col the column
+     * @param player the cell code of the player
+     */
+    private void place(int row, int col, int player) {
+        int cell = row * this.cols + col;
+        set(cell, player);
+        ++this.numMoves;
+        if (player == ONE) {
+            ++this.p1Discs;
+        } else {
+            ++this.p2Discs;
+        }
+
+        if (onFrontier(cell)) {
+            this.frontierBits[cell >>> 6] &= ~(1L << cell);
+            --this.frontierSize;
+        }
+        for (int r=Math.max(0, row-1); r<=Math.min(this.rows-1, row+1); ++r) {
+            for (int c=Math.max(0, col-1); c<=Math.min(this.cols-1, col+1); ++c) {
+                int neighbor = r * this.cols + c;
+                if (get(neighbor) == EMPTY && !onFrontier(neighbor)) {
+                    addToFrontier(neighbor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Flip all the pieces that are affected by a new disc.
+     *
+     * @param row the row
+     * @param col the column
+     * @param me the cell code of the player who moved
+     */
+    private void flipPieces(int row, int col, int me) {
+        int other = me == ONE ? TWO : ONE;
+        for (int rd=-1; rd<=1; ++rd) {
+            for (int cd=-1; cd<=1; ++cd) {
+                if (rd == 0 && cd == 0) {
+                    continue;
+                }
+
+                // run over the opponent's discs in this direction
+                int r = row + rd;
+                int c = col + cd;
+                int run = 0;
+                while (r >= 0 && r < this.rows && c >= 0 && c < this.cols && get(r * this.cols + c) == other) {
+                    r += rd;
+                    c += cd;
+                    ++run;
+                }
+
+                // flip them if they are capped by one of our discs
+                if (run > 0 && r >= 0 && r < this.rows && c >= 0 && c < this.cols &&
+                        get(r * this.cols + c) == me) {
+                    for (int i=1; i<=run; ++i) {
+                        set((row + i * rd) * this.cols + col + i * cd, me);
+                    }
+                    if (me == ONE) {
+                        this.p1Discs += run;
+                        this.p2Discs -= run;
+                    } else {
+                        this.p2Discs += run;
+                        this.p1Discs -= run;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a cell to the frontier, dropping stale entries first if the list
+     * is full.
+     */
+    private void addToFrontier(int cell) {
+        this.frontierBits[cell >>> 6] |= 1L << cell;
+        ++this.frontierSize;
+        if (this.frontierLength == this.frontier.length) {
+            compactFrontier();
+            if (this.frontierLength * 2 > this.frontier.length) {
+                this.frontier = Arrays.copyOf(this.frontier, this.frontier.length * 2);
+            }
+        }
+        this.frontier[this.frontierLength++] = cell;
+    }
+
+    /**
+     * Remove the entries of cells which have been played since they were
+     * added to the frontier list.
+     */
+    private void compactFrontier() {
+        int live = 0;
+        for (int i=0; i<this.frontierLength; ++i) {
+            if (onFrontier(this.frontier[i])) {
+                this.frontier[live++] = this.frontier[i];
+            }
+        }
+        this.frontierLength = live;
+    }
+
+    /**
+     * Copy the discs into one bitset per player, in the layout of
+     * {@link Position}.  Each word of the board holds 32 cells, whose low
+     * bits are player one's and high bits player two's, so the copy takes
+     * a few shifts per 32 cells rather than a look at each one.
+     *
+     * @param player1 receives player one's discs; it must be zeroed and have
+     * room for every cell
+     * @param player2 receives player two's discs, likewise
+     */
+    void copyBits(long[] player1, long[] player2) {
+        for (int i=0; i<this.cells.length; ++i) {
+            long word = this.cells[i];
+            int shift = (i & 1) << 5;
+            player1[i >>> 1] |= unshuffle(word) << shift;
+            player2[i >>> 1] |= unshuffle(word >>> 1) << shift;
+        }
+    }
+
+    /**
+     * Gather the even bits of a word into its low 32 bits.
+     */
+    private static long unshuffle(long word) {
+        word &= 0x5555555555555555L;
+        word = (word | (word >>> 1)) & 0x3333333333333333L;
+        word = (word | (word >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+        word = (word | (word >>> 4)) & 0x00ff00ff00ff00ffL;
+        word = (word | (word >>> 8)) & 0x0000ffff0000ffffL;
+        return (word | (word >>> 16)) & 0x00000000ffffffffL;
+    }
+
+    /**
+     * Check whether a cell is on the frontier.
+     */
+    private boolean onFrontier(int cell) {
+        return (this.frontierBits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /**
+     * Turn a cell code into the player it stands for.
+     */
+    private static Move move(int code) {
+        return code == ONE ? Move.PLAYER_ONE : code == TWO ? Move.PLAYER_TWO : Move.NONE;
+    }
+
+    /**
+     * Read the code of a cell.
+     */
+    private int get(int cell) {
+        return (int) (this.cells[cell >>> 5] >>> ((cell & 31) << 1)) & 3;
+    }
+
+    /**
+     * Write the code of a cell.
+     */
+    private void set(int cell, int code) {
+        this.hash ^= Zobrist.key(cell, move(get(cell))) ^ Zobrist.key(cell, move(code));
+        int shift = (cell & 31) << 1;
+        this.cells[cell >>> 5] = (this.cells[cell >>> 5] & ~(3L << shift)) | ((long) code << shift);
+    }
+}
@@ -0,0 +1,355 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable, compact snapshot of a Reversi board.  Each player's discs
+ * are stored as a bitset in row-major order (bit <tt>row * cols + col</tt>),
+ * so an 8x8 board is just two longs.<br>
+ * <br>
+ * Because players strictly alternate, whose turn it is follows from the
+ * number of discs on the board and does not need to be stored.
+ *
+ * @author Kevin Becker
+ */
+public final class Position implements Comparable<Position> {
+    /** largest number of rows or columns {@link #toBytes()} can encode */
+    public static final int MAX_SIDE = 0xffff;
+    /** largest number of cells a position can be read with */
+    private static final long MAX_CELLS = Integer.MAX_VALUE - 64;
+
+    /** number of rows in board */
+    private final int rows;
+    /** number of columns in board */
+    private final int cols;
+    /** player one's discs */
+    private final long[] player1;
+    /** player two's discs */
+    private final long[] player2;
+
+    /**
+     * Construct a position from bitsets.  The arrays become owned by this
+     * object and must not be modified afterwards.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param player1 player one's discs
+     * @param player2 player two's discs
+     */
+    private Position(int rows, int cols, long[] player1, long[] player2) {
+        this.rows = rows;
+        this.cols = cols;
+        this.player1 = player1;
+        this.player2 = player2;
+    }
+
+    /**
+     * Take a snapshot of a board.  A {@link PackedReversi} copies its packed
+     * cells a word at a time, so even very large boards are cheap to take.
+     *
+     * @param game the board
+     * @return the position of the board
+     */
+    public static Position of(Board game) {
+        int rows = game.getRows();
+        int cols = game.getCols();
+        long[] player1 = new long[words(rows, cols)];
+        long[] player2 = new long[player1.length];
+        if (game instanceof PackedReversi) {
+            ((PackedReversi) game).copyBits(player1, player2);
+            return new Position(rows, cols, player1, player2);
+        }
+        for (int row=0, bit=0; row<rows; ++row) {
+            for (int col=0; col<cols; ++col, ++bit) {
+                Move move = game.getCell(row, col);
+                if (move == Move.PLAYER_ONE) {
+                    player1[bit >>> 6] |= 1L << bit;
+                } else if (move == Move.PLAYER_TWO) {
+                    player2[bit >>> 6] |= 1L << bit;
+                }
+            }
+        }
+        return new Position(rows, cols, player1, player2);
+    }
+
+    /**
+     * Create a position from bitsets.  The arrays are copied.
+     *
+     * @param rows number of rows
+     * @param cols number of columns
+     * @param player1 player one's discs, one bit per cell in row-major order
+     * @param player2 player two's discs, one bit per cell in row-major order
+     * @return the position
+     *
+     * @rit.pre the bitsets must have room for every cell and must not overlap
+     */
+    public static Position fromBits(int rows, int cols, long[] player1, long[] player2) {
+        int words = words(rows, cols);
+        return new Position(rows, cols, Arrays.copyOf(player1, words), Arrays.copyOf(player2, words));
+    }
+
+    /**
+     * Create an 8x8 position from a pair of bitboards.
+     *
+     * @param player1 player one's discs
+     * @param player2 player two's discs
+     * @return the position
+     */
+    public static Position fromBits(long player1, long player2) {
+        return new Position(Reversi.DIM, Reversi.DIM, new long[] {player1}, new long[] {player2});
+    }
+
+    /**
+     * Read a position written by {@link #toBytes()}.
+     *
+     * @param bytes the encoded position
+     * @return the position
+     * @throws ReversiException if the bytes are not a valid position
+     */
+    public static Position fromBytes(byte[] bytes) throws ReversiException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (buffer.remaining() < 4) {
+            throw new ReversiException("Truncated position");
+        }
+        int rows = buffer.getShort() & 0xffff;
+        int cols = buffer.getShort() & 0xffff;
+        // two unsigned shorts can overflow an int when multiplied
+        long cells = (long) rows * cols;
+        if (rows < 2 || cols < 2 || cells > MAX_CELLS || buffer.remaining() != 2 * ((cells + 7) / 8)) {
+            throw new ReversiException("Malformed position: " + rows + "x" + cols);
+        }
+
+        long[] player1 = new long[words(rows, cols)];
+        long[] player2 = new long[player1.length];
+        readBits(buffer, player1, (int) cells);
+        readBits(buffer, player2, (int) cells);
+        for (int i=0; i<player1.length; ++i) {
+            if ((player1[i] & player2[i]) != 0) {
+                throw new ReversiException("Malformed position: cell owned by both players");
+            }
+        }
+        return new Position(rows, cols, player1, player2);
+    }
+
+    /**
+     * Encode the position compactly: the dimensions as two unsigned shorts,
+     * followed by each player's bitset packed into bytes (least significant
+     * bit first).
+     *
+     * @return the encoded position
+     * @throws IllegalStateException if a dimension is over {@link #MAX_SIDE}
+     */
+    public byte[] toBytes() {
+        if (this.rows > MAX_SIDE || this.cols > MAX_SIDE) {
+            throw new IllegalStateException("Cannot encode a " + this.rows + "x" + this.cols + " position");
+        }
+        int cells = this.rows * this.cols;
+        int bytesPerPlayer = (cells + 7) / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 2 * bytesPerPlayer);
+        buffer.putShort((short) this.rows);
+        buffer.putShort((short) this.cols);
+        writeBits(buffer, this.player1, bytesPerPlayer);
+        writeBits(buffer, this.player2, bytesPerPlayer);
+        return buffer.array();
+    }
+
+    /**
+     * Rebuild a playable board from this position.
+     *
+     * @return a new board in this position
+     */
+    public Reversi toReversi() {
+        Move[][] board = new Move[this.rows][this.cols];
+        for (int row=0; row<this.rows; ++row) {
+            for (int col=0; col<this.cols; ++col) {
+                board[row][col] = getCell(row, col);
+            }
+        }
+        int discs = getDiscCount();
+        return new Reversi(board, discs % 2 == 0, discs);
+    }
+
+    /**
+     * Rebuild a playable board from this position, using the engine
+     * {@link Board#create(int, int)} would pick for its size.
+     *
+     * @return a new board in this position
+     */
+    public Board toBoard() {
+        if ((long) this.rows * this.cols > Board.LARGE_BOARD_CELLS) {
+            return new PackedReversi(this);
+        }
+        return toReversi();
+    }
+
+    /**
+     * Get the number of rows in the board.
+     *
+     * @return number of rows
+     */
+    public int getRows() {
+        return this.rows;
+    }
+
+    /**
+     * Get the number of columns in the board.
+     *
+     * @return number of columns
+     */
+    public int getCols() {
+        return this.cols;
+    }
+
+    /**
+     * Get the contents of a cell on the board.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the player occupying the cell, or {@link Move#NONE} if empty
+     */
+    public Move getCell(int row, int col) {
+        int bit = row * this.cols + col;
+        if ((this.player1[bit >>> 6] & (1L << bit)) != 0) {
+            return Move.PLAYER_ONE;
+        } else if ((this.player2[bit >>> 6] & (1L << bit)) != 0) {
+            return Move.PLAYER_TWO;
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Get the number of discs on the board.
+     *
+     * @return the number of occupied cells
+     */
+    public int getDiscCount() {
+        int discs = 0;
+        for (int i=0; i<this.player1.length; ++i) {
+            discs += Long.bitCount(this.player1[i]) + Long.bitCount(this.player2[i]);
+        }
+        return discs;
+    }
+
+    /**
+     * Get the player whose turn it is.
+     *
+     * @return {@link Move#PLAYER_ONE} or {@link Move#PLAYER_TWO}
+     */
+    public Move getCurrentPlayer() {
+        return getDiscCount() % 2 == 0 ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+    }
+
+    /**
+     * Get the number of longs in each player's bitset.
+     *
+     * @return the number of words
+     */
+    public int getWordCount() {
+        return this.player1.length;
+    }
+
+    /**
+     * Get one word of player one's bitset.
+     *
+     * @param index the word
+     * @return the bits of cells <tt>64 * index</tt> onwards
+     */
+    public long getPlayer1Word(int index) {
+        return this.player1[index];
+    }
+
+    /**
+     * Get one word of player two's bitset.
+     *
+     * @param index the word
+     * @return the bits of cells <tt>64 * index</tt> onwards
+     */
+    public long getPlayer2Word(int index) {
+        return this.player2[index];
+    }
+
+    /**
+     * Order positions by size, then by player one's discs, then by player
+     * two's discs.  The order is arbitrary but total, which is all that is
+     * needed to pick a canonical form.
+     *
+     * @param other the position to compare with
+     * @return negative, zero or positive as this is less than, equal to or
+     * greater than other
+     */
+    @Override
+    public int compareTo(Position other) {
+        int result = Integer.compare(this.rows, other.rows);
+        if (result == 0) {
+            result = Integer.compare(this.cols, other.cols);
+        }
+        for (int i=0; result == 0 && i<this.player1.length; ++i) {
+            result = Long.compareUnsigned(this.player1[i], other.player1[i]);
+        }
+        for (int i=0; result == 0 && i<this.player2.length; ++i) {
+            result = Long.compareUnsigned(this.player2[i], other.player2[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        } else if (!(other instanceof Position)) {
+            return false;
+        }
+        Position that = (Position) other;
+        return this.rows == that.rows && this.cols == that.cols &&
+                Arrays.equals(this.player1, that.player1) && Arrays.equals(this.player2, that.player2);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * this.rows + this.cols) + Arrays.hashCode(this.player1)) +
+                Arrays.hashCode(this.player2);
+    }
+
+    /**
+     * Returns the board in the same layout as {@link Reversi#toString()}.
+     *
+     * @return the string representation
+     */
+    @Override
+    public String toString() {
+        return toReversi().toString();
+    }
+
+    /**
+     * Get the number of longs needed to hold one bit per cell.
+     */
+    private static int words(int rows, int cols) {
+        return (rows * cols + 63) >>> 6;
+    }
+
+    /**
+     * Write the low bits of a bitset as bytes.
+     */
+    private static void writeBits(ByteBuffer buffer, long[] bits, int bytes) {
+        for (int i=0; i<bytes; ++i) {
+            buffer.put((byte) (bits[i >>> 3] >>> ((i & 7) * 8)));
+        }
+    }
+
+    /**
+     * Read a bitset written by {@link #writeBits}, ignoring bits past the
+     * last cell.
+     */
+    private static void readBits(ByteBuffer buffer, long[] bits, int cells) {
+        int bytes = (cells + 7) / 8;
+        for (int i=0; i<bytes; ++i) {
+            bits[i >>> 3] |= (buffer.get() & 0xffL) << ((i & 7) * 8);
+        }
+        if ((cells & 63) != 0) {
+            bits[bits.length - 1] &= (1L << cells) - 1;
+        }
+    }
+}
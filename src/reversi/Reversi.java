@@ -1,5 +1,7 @@
 package reversi;
 
+import java.util.Arrays;
+
 /**
  * Implementation of the game board representation and move making for
  * Reversi.
@@ -7,7 +9,7 @@ package reversi;
  * @author Sean Strout @ RIT CS
  * @author Robert St Jacquest @ RIT SE
  */
-public class Reversi {
+public class Reversi implements Board {
     /** The default board size is 8x8 */
     public final static int DIM = 8;
 
@@ -40,6 +42,8 @@ public class Reversi {
     private boolean p1Turn;
     /** how many valid moves have been made? */
     private int numMoves;
+    /** the Zobrist hash of the board, kept up to date as discs change */
+    private long hash;
 
     /**
      * Default construct an 8x8 board.
@@ -66,7 +70,7 @@ public class Reversi {
         }
         // populate the center of the board with pieces
         this.board[rows/2-1][cols/2-1] = Move.PLAYER_ONE;
-        this.board[rows/2][rows/2] = Move.PLAYER_ONE;
+        this.board[rows/2][cols/2] = Move.PLAYER_ONE;
         this.board[rows/2-1][cols/2] = Move.PLAYER_TWO;
         this.board[rows/2][cols/2-1] = Move.PLAYER_TWO;
 
@@ -75,6 +79,42 @@ public class Reversi {
         this.cols = cols;
         this.p1Turn = true;
         this.numMoves = 4;
+        this.hash = Zobrist.hash(this);
+    }
+
+    /**
+     * Construct a copy of another board.  The copy shares no state with the
+     * original, so moves made on one are not seen by the other.
+     *
+     * @param other the board to copy
+     */
+    public Reversi(Reversi other) {
+        this.rows = other.rows;
+        this.cols = other.cols;
+        this.board = new Move[other.rows][];
+        for (int row=0; row<other.rows; ++row) {
+            this.board[row] = other.board[row].clone();
+        }
+        this.p1Turn = other.p1Turn;
+        this.numMoves = other.numMoves;
+        this.hash = other.hash;
+    }
+
+    /**
+     * Construct a board from existing state.  Used when rebuilding a board
+     * from a {@link Position}.
+     *
+     * @param board the cells of the board, which become owned by this object
+     * @param p1Turn whether it is player one's turn
+     * @param numMoves the number of occupied cells
+     */
+    Reversi(Move[][] board, boolean p1Turn, int numMoves) {
+        this.rows = board.length;
+        this.cols = board[0].length;
+        this.board = board;
+        this.p1Turn = p1Turn;
+        this.numMoves = numMoves;
+        this.hash = Zobrist.hash(this);
     }
 
     /**
@@ -82,6 +122,7 @@ public class Reversi {
      *
      * @return number of rows
      */
+    @Override
     public int getRows() {
         return this.rows;
     }
@@ -91,10 +132,81 @@ public class Reversi {
      *
      * @return number of columns
      */
+    @Override
     public int getCols() {
         return this.cols;
     }
 
+    /**
+     * Get the contents of a cell on the board.
+     *
+     * @param row the row
+     * @param col the column
+     * @return the player occupying the cell, or {@link Move#NONE} if empty
+     */
+    @Override
+    public Move getCell(int row, int col) {
+        return this.board[row][col];
+    }
+
+    /**
+     * Get the player whose turn it is.
+     *
+     * @return {@link Move#PLAYER_ONE} or {@link Move#PLAYER_TWO}
+     */
+    @Override
+    public Move getCurrentPlayer() {
+        return this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+    }
+
+    /**
+     * Get the number of occupied cells on the board, including the four
+     * starting pieces.
+     *
+     * @return the number of occupied cells
+     */
+    @Override
+    public int getNumMoves() {
+        return this.numMoves;
+    }
+
+    /**
+     * Check whether a move would be accepted by {@link #makeMove(int, int)}.
+     *
+     * @param row the row
+     * @param col the column
+     * @return whether the move is valid
+     */
+    @Override
+    public boolean isValidMove(int row, int col) {
+        return row >= 0 && row < this.rows && col >= 0 && col < this.cols &&
+                this.board[row][col] == Move.NONE && occupiedNeighbor(row, col);
+    }
+
+    @Override
+    public long getHash() {
+        return this.hash;
+    }
+
+    @Override
+    public int[] getValidMoves() {
+        int count = 0;
+        int[] moves = new int[this.rows * this.cols - this.numMoves];
+        for (int row=0; row<this.rows; ++row) {
+            for (int col=0; col<this.cols; ++col) {
+                if (this.board[row][col] == Move.NONE && occupiedNeighbor(row, col)) {
+                    moves[count++] = row * this.cols + col;
+                }
+            }
+        }
+        return Arrays.copyOf(moves, count);
+    }
+
+    @Override
+    public Reversi copy() {
+        return new Reversi(this);
+    }
+
     /**
      * Check that there is an occupied neighbor - we relax the official rules
      * here that say the neighbor must be the same color.
@@ -144,20 +256,21 @@ public class Reversi {
 
                 // Continue in the current direction until we go off the end of the
                 // board or we reach a square that does not contain an opponent's disc.
-                while (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == other) {
+                while (r >= 0 && r < this.rows && c >= 0 && c < this.cols && this.board[r][c] == other) {
                     r += rd;
                     c += cd;
                 }
 
                 // If we did not go off the board and the square we stopped on
                 // contains one of this player's discs, flips the ones in between.
-                if (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == me) {
+                if (r >= 0 && r < this.rows && c >= 0 && c < this.cols && this.board[r][c] == me) {
                     // restart
                     r = row + rd;
                     c = col + cd;
 
-                    while (r >= 0 && r < this.rows && c >= 0 && c < this.rows && this.board[r][c] == other) {
+                    while (r >= 0 && r < this.rows && c >= 0 && c < this.cols && this.board[r][c] == other) {
                         this.board[r][c] = me;
+                        this.hash ^= Zobrist.key(r * this.cols + c, other) ^ Zobrist.key(r * this.cols + c, me);
                         r += rd;
                         c += cd;
                     }
@@ -174,6 +287,7 @@ public class Reversi {
      * @param col the column to place the new piece
      * @throws ReversiException if the move is invalid
      */
+    @Override
     public void makeMove(int row, int col) throws ReversiException {
         // check for exceptions
         if (row < 0 || row >= this.rows) {
@@ -191,6 +305,7 @@ public class Reversi {
         // place piece on board
         ++this.numMoves;
         this.board[row][col] = this.p1Turn ? Move.PLAYER_ONE : Move.PLAYER_TWO;
+        this.hash ^= Zobrist.key(row * this.cols + col, this.board[row][col]);
 
         // flip opposite neighbors
         flipPieces(row, col);
@@ -203,6 +318,7 @@ public class Reversi {
      *
      * @return whether the game is over or not
      */
+    @Override
     public boolean gameOver() {
         return this.numMoves == this.rows * this.cols;
     }
@@ -213,6 +329,7 @@ public class Reversi {
      * @rit.pre The game must be over.
      * @return The winner.
      */
+    @Override
     public Move getWinner() {
         // count the disks for each player
         int p1Disks = 0;
@@ -16,7 +16,14 @@ public interface ReversiProtocol {
      * understands the {@link ReversiProtocol protocol}.  The dimensions
      * of the board are sent in the request.<P>
      *
-     *  For example if there were 6 rows and 7 columns: CONNECT 6 7\n
+     *  For example if there were 6 rows and 7 columns: CONNECT 6 7\n<P>
+     *
+     *  A server which plays several games on a connection (see {@link #NEXT_GAME})
+     *  sends CONNECT at the start of each, followed by NEXT_GAME when the client may
+     *  ask for another game after this one.  It may arrive in the middle of a game
+     *  whose opponent hung up: that game is dropped and the new one begins.<P>
+     *
+     *  For example (with another game on offer): CONNECT 6 7 NEXT_GAME\n
      */
     public static final String CONNECT = "CONNECT";
 
@@ -37,12 +44,53 @@ public interface ReversiProtocol {
 
     /**
      * Request sent from the reversi.server to the client when either player has moved.
-     * The request will include the row and column in which the player moved.<P>
+     * The request will include the row and column in which the player moved, followed
+     * by the hash of the server's board after the move (see
+     * {@link reversi.Board#getHash()}) in hexadecimal.  A client whose own board
+     * hashes differently should send {@link #RESYNC}.<P>
      *
-     * For example (if a move was made in (3,2)): MOVE_MADE 3 2\n
+     * For example (if a move was made in (3,2)): MOVE_MADE 3 2 5f1c0a93e2b7d604\n
      */
     public static final String MOVE_MADE = "MOVE_MADE";
 
+    /**
+     * Request sent from the client to the reversi.server when the client's copy of the
+     * board no longer matches the server's.  The server answers with {@link #BOARD}
+     * the next time it reads from the client, which is no later than its next
+     * {@link #MAKE_MOVE}.  The client should ignore {@link #MOVE_MADE} until then.
+     */
+    public static final String RESYNC = "RESYNC";
+
+    /**
+     * Response sent from the reversi.server to the client in response to a
+     * {@link #RESYNC} request.  The response includes the whole board, encoded with
+     * {@link reversi.Position#toBytes()} and then Base64.<P>
+     *
+     * For example (for the starting 4x4 board): BOARD AAQABCAEQAI=\n
+     */
+    public static final String BOARD = "BOARD";
+
+    /**
+     * Request sent from the client to the reversi.server, in place of a {@link #MOVE}, to
+     * ask for the best move in the current position.  It may include how many moves
+     * to look ahead.  The server answers with {@link #ANALYSIS} and then waits for the
+     * client's move as before.<P>
+     *
+     * For example (to look 4 moves ahead): ANALYZE 4\n
+     */
+    public static final String ANALYZE = "ANALYZE";
+
+    /**
+     * Response sent from the reversi.server to the client in response to an
+     * {@link #ANALYZE} request.  The response includes the row and column of the best
+     * move and its score (the expected final disc differential for the client), or
+     * NONE if the server could not analyze the position.  On large boards, or if the
+     * search runs out of time, the server may look fewer moves ahead than asked.<P>
+     *
+     * For example (if (3,2) is best and should win by 6): ANALYSIS 3 2 6.0\n
+     */
+    public static final String ANALYSIS = "ANALYSIS";
+
     /**
      * Request sent from the reversi.server to the client when the client has won the
      * game.
@@ -61,6 +109,37 @@ public interface ReversiProtocol {
      */
     public static final String GAME_TIED = "GAME_TIED";
 
+    /**
+     * Request sent from the client to the reversi.server after a game has ended, to
+     * play another game on the same connection.  The server answers with
+     * {@link #CONNECT} when the next game begins, which may be after waiting for an
+     * opponent.  It should only be sent if the game's {@link #CONNECT} offered it; a
+     * server which did not offer another game closes the connection instead.
+     * Until the client answers, the server still answers {@link #RESYNC} (with the
+     * final board) and {@link #ANALYZE} (with ANALYSIS NONE).
+     */
+    public static final String NEXT_GAME = "NEXT_GAME";
+
+    /**
+     * Request sent from the client to the reversi.server, whenever the server is
+     * reading from it, to play a number of further games without being asked in
+     * between.  After each game the server goes straight on to the next as if
+     * {@link #NEXT_GAME} had been sent, until the count runs out.  Sent after a game
+     * has ended, it also starts the first of them.  QUEUE 0 cancels the games still
+     * queued.  Queued games are only played while {@link #CONNECT} offers NEXT_GAME;
+     * otherwise the connection is closed when the game ends.<P>
+     *
+     * For example (to play 10 more games): QUEUE 10
+
+     */
+    public static final String QUEUE = "QUEUE";
+
+    /**
+     * Request sent from the client to the reversi.server after a game has ended, when
+     * it does not want another game.  The server closes the connection.
+     */
+    public static final String QUIT = "QUIT";
+
     /**
      * Request sent from the reversi.server to the client when any kind of error has
      * resulted from a bad client response. No response is expected from the
@@ -0,0 +1,43 @@
+package reversi;
+
+/**
+ * The whole-board step of {@link BitRowReversi}: working out every legal
+ * move at once from the bit rows of both players.  There is a plain
+ * implementation and one using the incubating Vector API; see
+ * {@link BitRowReversi} for how one is chosen.<br>
+ * <br>
+ * The arrays are laid out as <tt>rows + 2</tt> rows of <tt>stride</tt>
+ * longs, where bit <tt>c % 64</tt> of word <tt>c / 64 + 1</tt> of a row is
+ * column <tt>c</tt>.  The first and last rows and the first and last word
+ * of every row are padding and always zero.  Because of the padding, a
+ * kernel can treat the rows of the board as one long run of words: the
+ * word above any word is <tt>stride</tt> words back, the word to its left
+ * is the word before it, and bits carried across the end of a row land in
+ * padding, which is masked off.
+ *
+ * @author Kevin Becker
+ */
+interface RowKernel {
+    /**
+     * Find every empty cell with an occupied neighbor, which under our
+     * relaxed rules is every legal move.
+     *
+     * @param player1 player one's discs
+     * @param player2 player two's discs
+     * @param columns the cells which are on the board
+     * @param scratch working space the size of the board, whose padding
+     *                rows must be zero
+     * @param moves where the legal moves are written
+     * @param rows number of rows on the board
+     * @param stride longs per row, including the two padding words
+     */
+    void legalMoves(long[] player1, long[] player2, long[] columns, long[] scratch, long[] moves,
+                    int rows, int stride);
+
+    /**
+     * Get a short name for the kernel, for reports.
+     *
+     * @return the name
+     */
+    String getName();
+}
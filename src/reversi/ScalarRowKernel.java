@@ -0,0 +1,43 @@
+package reversi;
+
+/**
+ * The plain {@link RowKernel}, a word at a time.  It is used whenever the
+ * Vector API is unavailable.
+ *
+ * @author Kevin Becker
+ */
+final class ScalarRowKernel implements RowKernel {
+    /** the kernel has no state, so one is shared */
+    static final ScalarRowKernel INSTANCE = new ScalarRowKernel();
+
+    /**
+     * Only {@link #INSTANCE} is needed.
+     */
+    private ScalarRowKernel() {
+    }
+
+    @Override
+    public void legalMoves(long[] player1, long[] player2, long[] columns, long[] scratch, long[] moves,
+                           int rows, int stride) {
+        int start = stride;
+        int end = (rows + 1) * stride;
+
+        // spread every disc up and down: the rows above, at and below each cell
+        for (int p=start; p<end; ++p) {
+            scratch[p] = player1[p - stride] | player2[p - stride] | player1[p] | player2[p] |
+                    player1[p + stride] | player2[p + stride];
+        }
+
+        // then left and right, carrying bits across words, and keep the empty cells
+        for (int p=start; p<end; ++p) {
+            long near = scratch[p];
+            near |= (near << 1) | (scratch[p - 1] >>> 63) | (near >>> 1) | (scratch[p + 1] << 63);
+            moves[p] = near & ~(player1[p] | player2[p]) & columns[p];
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
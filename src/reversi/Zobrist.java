@@ -0,0 +1,56 @@
+package reversi;
+
+import reversi.Reversi.Move;
+
+/**
+ * Zobrist hashing of boards.  The hash of a board is the XOR of one key per
+ * occupied cell, so engines can keep it up to date as discs are placed and
+ * flipped instead of rescanning the board.<br>
+ * <br>
+ * Keys are computed from the cell index rather than looked up in a random
+ * table, so every process (server and clients alike) agrees on them without
+ * sharing any state, whatever the size of the board.
+ *
+ * @author Kevin Becker
+ */
+final class Zobrist {
+    /**
+     * The class only holds static helpers.
+     */
+    private Zobrist() {
+    }
+
+    /**
+     * Get the key of a disc.
+     *
+     * @param cell the cell, as <tt>row * cols + col</tt>
+     * @param player who owns the disc
+     * @return the key, or 0 for an empty cell
+     */
+    static long key(int cell, Move player) {
+        if (player == Move.NONE) {
+            return 0;
+        }
+        // splitmix64 of a distinct input per (cell, player)
+        long z = (2L * cell + (player == Move.PLAYER_ONE ? 1 : 2)) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Compute the hash of a board from scratch.
+     *
+     * @param game the board
+     * @return the hash
+     */
+    static long hash(Board game) {
+        long hash = 0;
+        for (int row=0, cell=0; row<game.getRows(); ++row) {
+            for (int col=0; col<game.getCols(); ++col, ++cell) {
+                hash ^= key(cell, game.getCell(row, col));
+            }
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,414 @@
+package reversi.analytics;
+
+import reversi.archive.ArchiveTool;
+import reversi.archive.GameReader;
+import reversi.archive.GameRecord;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongPredicate;
+import java.util.stream.LongStream;
+
+
+/**
+ * Answers questions about a {@link GameStore}, such as the win rate of each opening line, the average result for
+ * each board size or how long each player takes over their moves. Every query is a filter over the games followed by
+ * a group-by: the games are scanned in parallel across all cores, each thread grouping into a map of its own, and the
+ * maps are merged at the end, so no query needs a lock or an object per game.<br><br>
+ *
+ * The command line builds a store from archives (any format {@link ArchiveTool} reads) and runs queries on it:
+ * <br><br><tt>
+ *     build store_dir archive...<br>
+ *     openings store_dir [plies] [filters]<br>
+ *     sizes store_dir [filters]<br>
+ *     movetimes store_dir [filters]</tt><br><br>
+ * where the filters are {@code size=RxC}, {@code player=name} and {@code finished}.
+ *
+ * @author Kevin Becker
+ */
+public class Analytics
+{
+    /** the number of groups printed by default. */
+    private static final int DEFAULT_LIMIT = 20;
+
+    /** the number of buckets of a move time histogram. */
+    static final int TIME_BUCKETS = 16 + 27 * 8;
+
+    /**
+     * Builds a store or runs a query.
+     *
+     * @param args The arguments, as described above.
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 2)
+        {
+            usage();
+        }
+
+        try
+        {
+            if (args[0].equals("build"))
+            {
+                build(args);
+                return;
+            }
+
+            try (GameStore store = new GameStore(Paths.get(args[1])))
+            {
+                int plies = 4;
+                int first = 2;
+                if (args[0].equals("openings") && args.length > 2 && args[2].matches("\\d+"))
+                {
+                    plies = Integer.parseInt(args[2]);
+                    first = 3;
+                }
+                LongPredicate filter = filter(store, args, first);
+
+                long start = System.nanoTime();
+                List<String> lines;
+                switch (args[0])
+                {
+                    case "openings":
+                        lines = openings(store, plies, filter);
+                        break;
+                    case "sizes":
+                        lines = sizes(store, filter);
+                        break;
+                    case "movetimes":
+                        lines = moveTimes(store, filter);
+                        break;
+                    default:
+                        usage();
+                        return;
+                }
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                lines.forEach(System.out::println);
+                System.out.printf("%,d games and %,d moves in the store, query took %.2f s%n", store.getGameCount(),
+                        store.getMoveCount(), seconds);
+            }
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An error has occurred while reading the store.");
+        }
+        catch (IllegalArgumentException iae)
+        {
+            System.out.println("Invalid query - " + iae.getMessage());
+        }
+    }
+
+    /**
+     * Finds the win rate of every opening line: the first few moves of each game.
+     *
+     * @param store The games.
+     * @param plies The number of moves in a line.
+     * @param filter Which games to include.
+     *
+     * @return The most played lines, most played first, one per line of text.
+     */
+    public static List<String> openings(GameStore store, int plies, LongPredicate filter)
+    {
+        // a line is packed into a long, several bits per move, so every game's board has to be the same size
+        int [] size = new int[2];
+        LongStream.range(0, store.getGameCount()).filter(filter).findFirst().ifPresent(game -> {
+            size[0] = store.getRows(game);
+            size[1] = store.getCols(game);
+        });
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(1, (long) size[0] * size[1] - 1));
+        if (plies < 1 || plies * bits > 63)
+        {
+            throw new IllegalArgumentException("lines of " + plies + " moves are too long for " + size[0] + "x" +
+                    size[1] + " boards");
+        }
+
+        Map<Long, long []> groups = LongStream.range(0, store.getGameCount()).parallel()
+                .filter(game -> store.getMoveCount(game) >= plies && filter.test(game))
+                .collect(HashMap::new, (map, game) -> {
+                    if (store.getRows(game) != size[0] || store.getCols(game) != size[1])
+                    {
+                        throw new IllegalArgumentException("the games have different board sizes; add size=RxC");
+                    }
+                    long line = 0;
+                    long first = store.getFirstMove(game);
+                    for (int i = 0; i < plies; ++i)
+                    {
+                        line = line << bits | store.getSquare(first + i);
+                    }
+                    addResult(map.computeIfAbsent(line, key -> new long[5]), store.getResult(game));
+                }, Analytics::merge);
+
+        List<Map.Entry<Long, long []>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-" + Math.max(8, 4 * plies) + "s %10s %8s %8s %8s", "line", "games", "p1 win",
+                "draw", "avg diff"));
+        for (Map.Entry<Long, long []> group : sorted.subList(0, Math.min(DEFAULT_LIMIT, sorted.size())))
+        {
+            StringBuilder line = new StringBuilder();
+            for (int i = plies - 1; i >= 0; --i)
+            {
+                int square = (int) (group.getKey() >>> (i * bits) & ((1L << bits) - 1));
+                int othello = GameRecord.toOthello(size[1], square);
+                line.append((char) ('a' + othello % size[1])).append(othello / size[1] + 1).append(' ');
+            }
+            lines.add(String.format("%-" + Math.max(8, 4 * plies) + "s %s", line.toString().trim(),
+                    formatResults(group.getValue())));
+        }
+        return lines;
+    }
+
+    /**
+     * Finds how games go on each size of board.
+     *
+     * @param store The games.
+     * @param filter Which games to include.
+     *
+     * @return One line of text per board size, smallest first.
+     */
+    public static List<String> sizes(GameStore store, LongPredicate filter)
+    {
+        Map<Long, long []> groups = LongStream.range(0, store.getGameCount()).parallel()
+                .filter(filter)
+                .collect(HashMap::new, (map, game) -> {
+                    long [] stats = map.computeIfAbsent((long) store.getRows(game) << 16 | store.getCols(game),
+                            key -> new long[6]);
+                    addResult(stats, store.getResult(game));
+                    stats[5] += store.getMoveCount(game);
+                }, Analytics::merge);
+
+        List<Map.Entry<Long, long []>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.sort(Map.Entry.comparingByKey());
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-9s %10s %8s %8s %8s %9s", "size", "games", "p1 win", "draw", "avg diff",
+                "avg moves"));
+        for (Map.Entry<Long, long []> group : sorted)
+        {
+            long [] stats = group.getValue();
+            lines.add(String.format("%-9s %s %9.1f", (group.getKey() >>> 16) + "x" + (group.getKey() & 0xffff),
+                    formatResults(stats), (double) stats[5] / stats[0]));
+        }
+        return lines;
+    }
+
+    /**
+     * Finds how long each player takes over their moves.
+     *
+     * @param store The games.
+     * @param filter Which games to include.
+     *
+     * @return One line of text per player, the players with the most timed moves first.
+     */
+    public static List<String> moveTimes(GameStore store, LongPredicate filter)
+    {
+        // per player: a histogram of move times, then the number of moves, their total and the longest
+        Map<Integer, long []> groups = LongStream.range(0, store.getGameCount()).parallel()
+                .filter(filter)
+                .collect(HashMap::new, (map, game) -> {
+                    long [] one = map.computeIfAbsent(store.getPlayer1(game), key -> new long[TIME_BUCKETS + 3]);
+                    long [] two = map.computeIfAbsent(store.getPlayer2(game), key -> new long[TIME_BUCKETS + 3]);
+                    long first = store.getFirstMove(game);
+                    int moves = store.getMoveCount(game);
+                    for (int i = 0; i < moves; ++i)
+                    {
+                        int millis = store.getMillis(first + i);
+                        if (millis < 0) continue;
+
+                        long [] stats = i % 2 == 0 ? one : two;
+                        ++stats[bucket(millis)];
+                        ++stats[TIME_BUCKETS];
+                        stats[TIME_BUCKETS + 1] += millis;
+                        stats[TIME_BUCKETS + 2] = Math.max(stats[TIME_BUCKETS + 2], millis);
+                    }
+                }, (a, b) -> b.forEach((player, stats) -> a.merge(player, stats, (x, y) -> {
+                    for (int i = 0; i < x.length; ++i)
+                    {
+                        x[i] = i == TIME_BUCKETS + 2 ? Math.max(x[i], y[i]) : x[i] + y[i];
+                    }
+                    return x;
+                })));
+
+        List<Map.Entry<Integer, long []>> sorted = new ArrayList<>(groups.entrySet());
+        sorted.removeIf(group -> group.getValue()[TIME_BUCKETS] == 0);
+        sorted.sort((a, b) -> Long.compare(b.getValue()[TIME_BUCKETS], a.getValue()[TIME_BUCKETS]));
+
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-24s %10s %9s %9s %9s %9s %9s", "player", "moves", "mean ms", "p50 ms", "p90 ms",
+                "p99 ms", "max ms"));
+        for (Map.Entry<Integer, long []> group : sorted.subList(0, Math.min(DEFAULT_LIMIT, sorted.size())))
+        {
+            long [] stats = group.getValue();
+            long count = stats[TIME_BUCKETS];
+            lines.add(String.format("%-24s %,10d %9.1f %9d %9d %9d %9d", store.getPlayerName(group.getKey()), count,
+                    (double) stats[TIME_BUCKETS + 1] / count, percentile(stats, 0.5), percentile(stats, 0.9),
+                    percentile(stats, 0.99), stats[TIME_BUCKETS + 2]));
+        }
+        if (sorted.isEmpty()) lines.add("(no timed moves)");
+        return lines;
+    }
+
+    /**
+     * Finds the histogram bucket of a move time: exact below 16 ms, then eight buckets per doubling, so every
+     * bucket is within 12.5% of the times it holds.
+     *
+     * @param millis The time in milliseconds.
+     *
+     * @return The bucket.
+     */
+    static int bucket(int millis)
+    {
+        if (millis < 16) return millis;
+        int exponent = 31 - Integer.numberOfLeadingZeros(millis);
+        return 16 + (exponent - 4) * 8 + ((millis >>> (exponent - 3)) & 7);
+    }
+
+    /**
+     * Finds the largest time a bucket holds.
+     */
+    private static long bucketLimit(int bucket)
+    {
+        if (bucket < 16) return bucket;
+        int exponent = (bucket - 16) / 8 + 4;
+        long sub = (bucket - 16) % 8;
+        return ((8 + sub + 1) << (exponent - 3)) - 1;
+    }
+
+    /**
+     * Estimates a percentile from a histogram (to within its bucket).
+     */
+    private static long percentile(long [] stats, double fraction)
+    {
+        long wanted = (long) Math.ceil(stats[TIME_BUCKETS] * fraction);
+        long seen = 0;
+        for (int bucket = 0; bucket < TIME_BUCKETS; ++bucket)
+        {
+            seen += stats[bucket];
+            if (seen >= wanted) return Math.min(bucketLimit(bucket), stats[TIME_BUCKETS + 2]);
+        }
+        return stats[TIME_BUCKETS + 2];
+    }
+
+    /**
+     * Adds a game's result to a group: games, then finished games, player one wins, draws and the total differential
+     * of the finished games.
+     */
+    private static void addResult(long [] stats, int result)
+    {
+        ++stats[0];
+        if (result == GameStore.UNFINISHED) return;
+        ++stats[1];
+        if (result > 0) ++stats[2];
+        else if (result == 0) ++stats[3];
+        stats[4] += result;
+    }
+
+    /**
+     * Formats a group's results. The rates and the average are of the finished games.
+     */
+    private static String formatResults(long [] stats)
+    {
+        long finished = Math.max(1, stats[1]);
+        return String.format("%,10d %7.1f%% %7.1f%% %+8.2f", stats[0], 100.0 * stats[2] / finished,
+                100.0 * stats[3] / finished, (double) stats[4] / finished);
+    }
+
+    /**
+     * Merges one thread's groups into another's by adding their counts.
+     */
+    private static <K> void merge(Map<K, long []> into, Map<K, long []> from)
+    {
+        from.forEach((key, stats) -> into.merge(key, stats, (a, b) -> {
+            for (int i = 0; i < a.length; ++i)
+            {
+                a[i] += b[i];
+            }
+            return a;
+        }));
+    }
+
+    /**
+     * Builds the filter given on the command line.
+     *
+     * @param store The games.
+     * @param args The command line.
+     * @param first Where the filters start.
+     *
+     * @return The filter.
+     */
+    private static LongPredicate filter(GameStore store, String [] args, int first)
+    {
+        LongPredicate filter = game -> true;
+        for (int i = first; i < args.length; ++i)
+        {
+            String arg = args[i];
+            if (arg.equals("finished"))
+            {
+                filter = filter.and(game -> store.getResult(game) != GameStore.UNFINISHED);
+            }
+            else if (arg.startsWith("size="))
+            {
+                String [] size = arg.substring(5).split("x");
+                if (size.length != 2) throw new IllegalArgumentException("size must be RxC, not " + arg.substring(5));
+                int rows = Integer.parseInt(size[0]);
+                int cols = Integer.parseInt(size[1]);
+                filter = filter.and(game -> store.getRows(game) == rows && store.getCols(game) == cols);
+            }
+            else if (arg.startsWith("player="))
+            {
+                int player = store.findPlayer(arg.substring(7));
+                filter = filter.and(game -> store.getPlayer1(game) == player || store.getPlayer2(game) == player);
+            }
+            else
+            {
+                throw new IllegalArgumentException("unknown filter " + arg);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Builds a store from archives.
+     *
+     * @param args The command line: "build", the store directory, then the archives.
+     */
+    private static void build(String [] args) throws IOException
+    {
+        long start = System.nanoTime();
+        try (GameStore.Writer writer = new GameStore.Writer(Paths.get(args[1])))
+        {
+            for (int i = 2; i < args.length; ++i)
+            {
+                try (GameReader reader = ArchiveTool.openReader(Paths.get(args[i])))
+                {
+                    GameRecord game;
+                    while ((game = reader.next()) != null)
+                    {
+                        writer.add(game);
+                    }
+                }
+            }
+            System.out.printf("%,d games stored, %,d left out, %.1f s%n", writer.getGames(), writer.getSkipped(),
+                    (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    /**
+     * Prints how to use the command line and exits.
+     */
+    private static void usage()
+    {
+        System.out.println("Invalid arguments.\nUsage: java Analytics build store_dir archive...\n" +
+                "       java Analytics openings store_dir [plies] [size=RxC] [player=name] [finished]\n" +
+                "       java Analytics sizes store_dir [size=RxC] [player=name] [finished]\n" +
+                "       java Analytics movetimes store_dir [size=RxC] [player=name] [finished]");
+        System.exit(1);
+    }
+}
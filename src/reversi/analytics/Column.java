@@ -0,0 +1,120 @@
+package reversi.analytics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * One field of a {@link GameStore}: a file of fixed-size little endian values, memory-mapped in segments (a mapping
+ * cannot exceed 2GB). Reading a value is a bounds check and a load, so scanning a column runs at memory speed and
+ * any number of threads may read at once.
+ *
+ * @author Kevin Becker
+ */
+class Column implements Closeable
+{
+    /** the bytes mapped at a time: a power of two, and a multiple of every value size. */
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    /** the open file. */
+    private final FileChannel channel;
+
+    /** the mapped file, in segments. */
+    private final MappedByteBuffer [] segments;
+
+    /** the number of values in the column. */
+    private final long size;
+
+    /**
+     * Maps a column file.
+     *
+     * @param file The column file.
+     * @param valueBytes The size of each value in bytes.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    Column(Path file, int valueBytes) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        long bytes = channel.size();
+        this.size = bytes / valueBytes;
+
+        int numSegments = (int) ((bytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        this.segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; ++i)
+        {
+            long start = i * SEGMENT_BYTES;
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(SEGMENT_BYTES, bytes - start));
+            segments[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Gets the number of values in the column.
+     *
+     * @return The number of values.
+     */
+    long size()
+    {
+        return size;
+    }
+
+    /**
+     * Reads a value of a column of shorts.
+     *
+     * @param index Which value.
+     *
+     * @return The value.
+     */
+    short getShort(long index)
+    {
+        long offset = index << 1;
+        return segment(offset).getShort((int) (offset & (SEGMENT_BYTES - 1)));
+    }
+
+    /**
+     * Reads a value of a column of ints.
+     *
+     * @param index Which value.
+     *
+     * @return The value.
+     */
+    int getInt(long index)
+    {
+        long offset = index << 2;
+        return segment(offset).getInt((int) (offset & (SEGMENT_BYTES - 1)));
+    }
+
+    /**
+     * Reads a value of a column of longs.
+     *
+     * @param index Which value.
+     *
+     * @return The value.
+     */
+    long getLong(long index)
+    {
+        long offset = index << 3;
+        return segment(offset).getLong((int) (offset & (SEGMENT_BYTES - 1)));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Finds the segment holding a byte of the file.
+     */
+    private ByteBuffer segment(long offset)
+    {
+        return segments[(int) (offset / SEGMENT_BYTES)];
+    }
+}
@@ -0,0 +1,540 @@
+package reversi.analytics;
+
+import reversi.*;
+import reversi.Reversi.Move;
+import reversi.archive.GameRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Recorded games laid out by column for fast scans. Every field has a file of its own holding one primitive value per
+ * game (or per move), memory-mapped when the store is opened, so a query only touches the fields it needs and never
+ * builds an object per game. The per-game columns are:<br><br><tt>
+ *     game_rows, game_cols (short), game_player1, game_player2 (int, see players.txt),<br>
+ *     game_result (short: player one's discs less player two's, {@link #UNFINISHED} if the board was not full),<br>
+ *     game_first_move (long, an index into the move columns), game_moves (int)</tt><br><br>
+ * and the per-move columns are {@code move_square} (int, row * cols + col) and {@code move_millis} (int, -1 if
+ * unknown). A {@link Writer} builds a store from {@link GameRecord}s.
+ *
+ * @author Kevin Becker
+ */
+public class GameStore implements Closeable
+{
+    /** the result of a game which did not fill the board. */
+    public static final short UNFINISHED = Short.MIN_VALUE;
+
+    /** the most rows or columns the short columns can hold (they are read back unsigned). */
+    static final int MAX_SIDE = 0xffff;
+
+    /** the file naming the players, one per line, numbered from 0. */
+    static final String PLAYERS_FILE = "players.txt";
+
+    /** the number of rows of each game. */
+    private final Column rows;
+    /** the number of columns of each game. */
+    private final Column cols;
+    /** the number of each game's player one. */
+    private final Column player1;
+    /** the number of each game's player two. */
+    private final Column player2;
+    /** each game's final disc differential for player one, or {@link #UNFINISHED}. */
+    private final Column result;
+    /** where each game's moves start in the move columns. */
+    private final Column firstMove;
+    /** the number of moves of each game. */
+    private final Column moveCount;
+    /** the square of each move. */
+    private final Column square;
+    /** how long each move took in milliseconds, or -1. */
+    private final Column millis;
+
+    /** the names of the players, by number. */
+    private final List<String> players;
+
+    /**
+     * Opens a store built by a {@link Writer}.
+     *
+     * @param directory The store directory.
+     *
+     * @throws IOException If the store cannot be read.
+     */
+    public GameStore(Path directory) throws IOException
+    {
+        this.rows = new Column(directory.resolve("game_rows"), Short.BYTES);
+        this.cols = new Column(directory.resolve("game_cols"), Short.BYTES);
+        this.player1 = new Column(directory.resolve("game_player1"), Integer.BYTES);
+        this.player2 = new Column(directory.resolve("game_player2"), Integer.BYTES);
+        this.result = new Column(directory.resolve("game_result"), Short.BYTES);
+        this.firstMove = new Column(directory.resolve("game_first_move"), Long.BYTES);
+        this.moveCount = new Column(directory.resolve("game_moves"), Integer.BYTES);
+        this.square = new Column(directory.resolve("move_square"), Integer.BYTES);
+        this.millis = new Column(directory.resolve("move_millis"), Integer.BYTES);
+        this.players = Files.readAllLines(directory.resolve(PLAYERS_FILE), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Gets the number of games in the store.
+     *
+     * @return The number of games.
+     */
+    public long getGameCount()
+    {
+        return rows.size();
+    }
+
+    /**
+     * Gets the number of moves in the store.
+     *
+     * @return The number of moves.
+     */
+    public long getMoveCount()
+    {
+        return square.size();
+    }
+
+    /**
+     * Gets the number of rows of a game.
+     *
+     * @param game Which game.
+     *
+     * @return The number of rows.
+     */
+    public int getRows(long game)
+    {
+        return rows.getShort(game) & 0xffff;
+    }
+
+    /**
+     * Gets the number of columns of a game.
+     *
+     * @param game Which game.
+     *
+     * @return The number of columns.
+     */
+    public int getCols(long game)
+    {
+        return cols.getShort(game) & 0xffff;
+    }
+
+    /**
+     * Gets the number of a game's player one.
+     *
+     * @param game Which game.
+     *
+     * @return The player's number (see {@link #getPlayerName(int)}).
+     */
+    public int getPlayer1(long game)
+    {
+        return player1.getInt(game);
+    }
+
+    /**
+     * Gets the number of a game's player two.
+     *
+     * @param game Which game.
+     *
+     * @return The player's number (see {@link #getPlayerName(int)}).
+     */
+    public int getPlayer2(long game)
+    {
+        return player2.getInt(game);
+    }
+
+    /**
+     * Gets a game's final disc differential for player one.
+     *
+     * @param game Which game.
+     *
+     * @return The differential, or {@link #UNFINISHED}.
+     */
+    public int getResult(long game)
+    {
+        return result.getShort(game);
+    }
+
+    /**
+     * Gets where a game's moves start in the move columns.
+     *
+     * @param game Which game.
+     *
+     * @return The index of the game's first move.
+     */
+    public long getFirstMove(long game)
+    {
+        return firstMove.getLong(game);
+    }
+
+    /**
+     * Gets the number of moves of a game.
+     *
+     * @param game Which game.
+     *
+     * @return The number of moves.
+     */
+    public int getMoveCount(long game)
+    {
+        return moveCount.getInt(game);
+    }
+
+    /**
+     * Gets the square of a move.
+     *
+     * @param move Which move, an index into the move columns.
+     *
+     * @return The square, row * cols + col.
+     */
+    public int getSquare(long move)
+    {
+        return square.getInt(move);
+    }
+
+    /**
+     * Gets how long a move took.
+     *
+     * @param move Which move, an index into the move columns.
+     *
+     * @return The time in milliseconds, or -1 if it is not known.
+     */
+    public int getMillis(long move)
+    {
+        return millis.getInt(move);
+    }
+
+    /**
+     * Gets the number of distinct players.
+     *
+     * @return The number of players.
+     */
+    public int getPlayerCount()
+    {
+        return players.size();
+    }
+
+    /**
+     * Gets a player's name.
+     *
+     * @param player The player's number.
+     *
+     * @return The name.
+     */
+    public String getPlayerName(int player)
+    {
+        return players.get(player);
+    }
+
+    /**
+     * Finds a player's number.
+     *
+     * @param name The player's name.
+     *
+     * @return The number, or -1 if no game has the player.
+     */
+    public int findPlayer(String name)
+    {
+        return players.indexOf(name);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        for (Column column : new Column[] { rows, cols, player1, player2, result, firstMove, moveCount, square, millis })
+        {
+            column.close();
+        }
+    }
+
+    /**
+     * Builds a store one game at a time. Each column is appended to its own file through a buffer, so a store of any
+     * size is built in constant memory (apart from the player names).
+     */
+    public static class Writer implements Closeable
+    {
+        /** where the store is built. */
+        private final Path directory;
+
+        /** every column file, so they can be closed together. */
+        private final List<ColumnWriter> columns = new ArrayList<>();
+
+        /** the number of rows of each game. */
+        private final ColumnWriter rows;
+        /** the number of columns of each game. */
+        private final ColumnWriter cols;
+        /** the number of each game's player one. */
+        private final ColumnWriter player1;
+        /** the number of each game's player two. */
+        private final ColumnWriter player2;
+        /** each game's final disc differential for player one. */
+        private final ColumnWriter result;
+        /** where each game's moves start. */
+        private final ColumnWriter firstMove;
+        /** the number of moves of each game. */
+        private final ColumnWriter moveCount;
+        /** the square of each move. */
+        private final ColumnWriter square;
+        /** how long each move took. */
+        private final ColumnWriter millis;
+
+        /** the numbers of the players seen so far. */
+        private final Map<String, Integer> players = new HashMap<>();
+
+        /** the players in the order they were numbered. */
+        private final List<String> playerNames = new ArrayList<>();
+
+        /** the number of moves written. */
+        private long moves;
+
+        /** the number of games written. */
+        private long games;
+
+        /** the number of games which could not be replayed, or did not fit the columns, and were left out. */
+        private long skipped;
+
+        /**
+         * Starts a new store, replacing any store already in the directory.
+         *
+         * @param directory The store directory, created if needed.
+         *
+         * @throws IOException If the store cannot be written.
+         */
+        public Writer(Path directory) throws IOException
+        {
+            this.directory = directory;
+            Files.createDirectories(directory);
+            this.rows = open("game_rows");
+            this.cols = open("game_cols");
+            this.player1 = open("game_player1");
+            this.player2 = open("game_player2");
+            this.result = open("game_result");
+            this.firstMove = open("game_first_move");
+            this.moveCount = open("game_moves");
+            this.square = open("move_square");
+            this.millis = open("move_millis");
+        }
+
+        /**
+         * Adds a game. Games which cannot be replayed are left out, as are games too big for the short columns: boards
+         * with more than {@link #MAX_SIDE} rows or columns, and differentials a short cannot hold without wrapping (or
+         * landing on {@link #UNFINISHED}).
+         *
+         * @param game The game.
+         *
+         * @throws IOException If the game cannot be written.
+         */
+        public void add(GameRecord game) throws IOException
+        {
+            if (game.getRows() > MAX_SIDE || game.getCols() > MAX_SIDE)
+            {
+                ++skipped;
+                return;
+            }
+
+            int differential;
+            try
+            {
+                Board end = game.replay();
+                differential = end.gameOver() ? differential(end) : UNFINISHED;
+            }
+            catch (ReversiException | RuntimeException e)
+            {
+                ++skipped;
+                return;
+            }
+            if (differential != UNFINISHED && Math.abs(differential) > Short.MAX_VALUE)
+            {
+                ++skipped;
+                return;
+            }
+
+            rows.putShort((short) game.getRows());
+            cols.putShort((short) game.getCols());
+            player1.putInt(playerNumber(game.getPlayer1()));
+            player2.putInt(playerNumber(game.getPlayer2()));
+            result.putShort((short) differential);
+            firstMove.putLong(moves);
+            moveCount.putInt(game.getMoveCount());
+            for (int i = 0; i < game.getMoveCount(); ++i)
+            {
+                square.putInt(game.getMove(i));
+                millis.putInt(game.getMoveMillis(i));
+            }
+            moves += game.getMoveCount();
+            ++games;
+        }
+
+        /**
+         * Gets the number of games added.
+         *
+         * @return The number of games.
+         */
+        public long getGames()
+        {
+            return games;
+        }
+
+        /**
+         * Gets the number of games which could not be replayed, or did not fit the columns, and were left out.
+         *
+         * @return The number of games.
+         */
+        public long getSkipped()
+        {
+            return skipped;
+        }
+
+        /**
+         * Finishes the store.
+         *
+         * @throws IOException If the store cannot be written.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            IOException failure = null;
+            for (ColumnWriter column : columns)
+            {
+                try
+                {
+                    column.close();
+                }
+                catch (IOException ioe)
+                {
+                    failure = ioe;
+                }
+            }
+            Files.write(directory.resolve(PLAYERS_FILE), playerNames, StandardCharsets.UTF_8);
+            if (failure != null) throw failure;
+        }
+
+        /**
+         * Numbers a player, giving new players the next number.
+         */
+        private int playerNumber(String name)
+        {
+            // names are one per line in the players file
+            String key = name == null ? "?" : name.replace('\n', ' ').replace('\r', ' ');
+            Integer number = players.get(key);
+            if (number == null)
+            {
+                number = playerNames.size();
+                players.put(key, number);
+                playerNames.add(key);
+            }
+            return number;
+        }
+
+        /**
+         * Opens a column file.
+         */
+        private ColumnWriter open(String name) throws IOException
+        {
+            ColumnWriter column = new ColumnWriter(directory.resolve(name));
+            columns.add(column);
+            return column;
+        }
+
+        /**
+         * Counts player one's discs less player two's.
+         */
+        private static int differential(Board game)
+        {
+            int difference = 0;
+            for (int row = 0; row < game.getRows(); ++row)
+            {
+                for (int col = 0; col < game.getCols(); ++col)
+                {
+                    Move cell = game.getCell(row, col);
+                    if (cell == Move.PLAYER_ONE) ++difference;
+                    else if (cell == Move.PLAYER_TWO) --difference;
+                }
+            }
+            return difference;
+        }
+    }
+
+    /**
+     * Appends little endian values to a column file through a buffer.
+     */
+    private static final class ColumnWriter implements Closeable
+    {
+        /** the column file. */
+        private final FileChannel channel;
+
+        /** values waiting to be written. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+
+        /**
+         * Creates a column file, replacing any file already there.
+         */
+        ColumnWriter(Path file) throws IOException
+        {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        /**
+         * Appends a short.
+         */
+        void putShort(short value) throws IOException
+        {
+            if (buffer.remaining() < Short.BYTES) flush();
+            buffer.putShort(value);
+        }
+
+        /**
+         * Appends an int.
+         */
+        void putInt(int value) throws IOException
+        {
+            if (buffer.remaining() < Integer.BYTES) flush();
+            buffer.putInt(value);
+        }
+
+        /**
+         * Appends a long.
+         */
+        void putLong(long value) throws IOException
+        {
+            if (buffer.remaining() < Long.BYTES) flush();
+            buffer.putLong(value);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            try
+            {
+                flush();
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+
+        /**
+         * Writes out the buffered values.
+         */
+        private void flush() throws IOException
+        {
+            buffer.flip();
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package reversi.archive;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Checks that {@link GameRecord#validate()} tells which Othello games mean the same thing under our rules. It writes a
+ * small WTHOR database of legal Othello games, reads it back through {@link WthorReader} and expects:<br><br><em>
+ *     a game with no pass which fills the board => accepted.<br>
+ *     the same game with a wrong score => rejected.<br>
+ *     the same game stopped two moves early => rejected (empty squares).<br>
+ *     a game in which white has to pass before move 37 => rejected (every later move would change hands).</em><br><br>
+ * Usage: <tt>java ArchiveCheck</tt> (the exit status is 1 if any game is judged wrongly).
+ *
+ * @author Kevin Becker
+ */
+public class ArchiveCheck
+{
+    /** a legal game with no pass, as WTHOR squares (10 * row + column from 1); black ends with 12 discs. */
+    private static final int [] NO_PASS = { 65, 64, 33, 46, 74, 53, 47, 37, 43, 57, 52, 73, 56, 51, 61, 84, 41, 76,
+            66, 34, 48, 23, 75, 35, 67, 86, 42, 32, 25, 58, 62, 36, 68, 77, 63, 71, 24, 14, 13, 12, 83, 22, 78, 88, 28,
+            31, 38, 18, 26, 27, 16, 17, 85, 87, 21, 11, 72, 82, 81, 15 };
+
+    /** black's final disc count in {@link #NO_PASS}. */
+    private static final int NO_PASS_SCORE = 12;
+
+    /** a legal game in which white passes after move 36 and black plays on; black ends with 22 discs. */
+    private static final int [] WITH_PASS = { 34, 33, 56, 66, 65, 64, 77, 57, 74, 88, 32, 73, 58, 83, 75, 67, 76, 46,
+            87, 47, 63, 86, 36, 78, 85, 38, 48, 35, 25, 84, 82, 37, 28, 81, 68, 18, 26, 16, 31, 43, 42, 24, 14, 23, 52,
+            21, 13, 61, 62, 72, 41, 53, 15, 22, 12, 51, 17, 71, 11, 27 };
+
+    /** black's final disc count in {@link #WITH_PASS}. */
+    private static final int WITH_PASS_SCORE = 22;
+
+    /**
+     * Runs the check.
+     *
+     * @param args Not used.
+     */
+    public static void main(String [] args)
+    {
+        int [] early = new int[NO_PASS.length - 2];
+        System.arraycopy(NO_PASS, 0, early, 0, early.length);
+
+        Path file = null;
+        try
+        {
+            file = Files.createTempFile("archive-check", ".wtb");
+            Files.write(file, database(new int [][] { NO_PASS, NO_PASS, early, WITH_PASS },
+                    new int [] { NO_PASS_SCORE, NO_PASS_SCORE + 1, NO_PASS_SCORE, WITH_PASS_SCORE }));
+
+            String [] names = { "no pass", "wrong score", "stopped early", "pass" };
+            boolean [] valid = { true, false, false, false };
+            int wrong = 0;
+            try (WthorReader reader = new WthorReader(file))
+            {
+                for (int i = 0; i < names.length; ++i)
+                {
+                    String problem = reader.next().validate();
+                    boolean right = (problem == null) == valid[i];
+                    if (!right) ++wrong;
+                    System.out.printf("%-14s %-9s %s%n", names[i], right ? "ok" : "WRONG",
+                            problem == null ? "accepted" : "rejected: " + problem);
+                }
+            }
+            if (wrong > 0) System.exit(1);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.exit(1);
+        }
+        finally
+        {
+            try
+            {
+                if (file != null) Files.deleteIfExists(file);
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("I/O Error - " + ioe.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Lays out games as a WTHOR database.
+     *
+     * @param games The moves of each game, as WTHOR squares.
+     * @param scores Black's final disc count in each game.
+     *
+     * @return The file's contents.
+     */
+    private static byte [] database(int [][] games, int [] scores)
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(WthorReader.HEADER_SIZE + games.length * WthorReader.RECORD_SIZE);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(4, games.length);
+        buffer.put(12, (byte) WthorReader.SIZE);
+        for (int g = 0; g < games.length; ++g)
+        {
+            int base = WthorReader.HEADER_SIZE + g * WthorReader.RECORD_SIZE;
+            buffer.put(base + 6, (byte) scores[g]);
+            buffer.put(base + 7, (byte) scores[g]);
+            for (int m = 0; m < games[g].length; ++m)
+            {
+                buffer.put(base + 8 + m, (byte) games[g][m]);
+            }
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,199 @@
+package reversi.archive;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+
+/**
+ * Validates and converts game archives. The format of a file is chosen by its extension: {@code .wtb} is WTHOR,
+ * {@code .ggf} is GGF and anything else is one of our own games files.<br><br>
+ *
+ * Records are read in batches on one thread while the previous batch is replayed in parallel across all cores, so
+ * reading and validating overlap. Every game is replayed through our rules and rejected if a move is invalid or the
+ * final score disagrees with the one recorded; a converted archive only holds the games which passed (and which its
+ * format can represent), in their original order.
+ *
+ * @author Kevin Becker
+ */
+public class ArchiveTool
+{
+    /** the number of games validated together. */
+    private static final int BATCH = 8192;
+
+    /** the number of rejections which are printed. */
+    private static final int REPORTED_REJECTIONS = 10;
+
+    /**
+     * Validates or converts archives.
+     *
+     * @param args The arguments:<br><br><em>
+     *             0 => "validate" or "convert".<br>
+     *             validate: 1... => The archives to check.<br>
+     *             convert: 1 => The archive to read. 2 => The archive to write.</em>
+     */
+    public static void main(String [] args)
+    {
+        boolean validate = args.length >= 2 && args[0].equals("validate");
+        boolean convert = args.length == 3 && args[0].equals("convert");
+        if (!validate && !convert)
+        {
+            System.out.println("Invalid arguments.\nUsage: java ArchiveTool validate archive...\n" +
+                    "       java ArchiveTool convert in_archive out_archive");
+            System.exit(1);
+        }
+
+        try
+        {
+            if (validate)
+            {
+                for (int i = 1; i < args.length; ++i)
+                {
+                    process(Paths.get(args[i]), null);
+                }
+            }
+            else
+            {
+                try (GameWriter writer = openWriter(Paths.get(args[2]), false))
+                {
+                    process(Paths.get(args[1]), writer);
+                }
+            }
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An error has occurred while processing the archive.");
+        }
+    }
+
+    /**
+     * Opens an archive for reading, choosing the format by the file's extension.
+     *
+     * @param file The archive.
+     *
+     * @return The reader.
+     *
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static GameReader openReader(Path file) throws IOException
+    {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".wtb")) return new WthorReader(file);
+        if (name.endsWith(".ggf")) return new GgfReader(file);
+        return new GamesFileReader(file);
+    }
+
+    /**
+     * Opens an archive for writing, choosing the format by the file's extension.
+     *
+     * @param file The archive.
+     * @param append Whether to add to an existing archive (WTHOR databases are always replaced).
+     *
+     * @return The writer.
+     *
+     * @throws IOException If the archive cannot be opened.
+     */
+    public static GameWriter openWriter(Path file, boolean append) throws IOException
+    {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".wtb"))
+        {
+            if (append) throw new IOException("cannot append to a WTHOR database");
+            return new WthorWriter(file);
+        }
+        if (name.endsWith(".ggf")) return new GgfWriter(file, append);
+        return new GamesFileWriter(file, append);
+    }
+
+    /**
+     * Validates every game of an archive, optionally writing the valid ones to another, and reports how it went.
+     *
+     * @param file The archive.
+     * @param writer Where valid games are written, or null.
+     */
+    private static void process(Path file, GameWriter writer) throws IOException
+    {
+        long start = System.nanoTime();
+        long games = 0;
+        long rejected = 0;
+        long unwritable = 0;
+        int reported = 0;
+
+        try (GameReader reader = openReader(file))
+        {
+            List<GameRecord> batch = readBatch(reader);
+            while (!batch.isEmpty())
+            {
+                List<GameRecord> current = batch;
+                CompletableFuture<String []> verdicts = CompletableFuture.supplyAsync(() ->
+                        current.parallelStream().map(GameRecord::validate).toArray(String[]::new));
+
+                // read the next batch while this one is replayed
+                batch = readBatch(reader);
+
+                String [] reasons = join(verdicts);
+                for (int i = 0; i < reasons.length; ++i)
+                {
+                    if (reasons[i] == null)
+                    {
+                        if (writer == null) continue;
+                        if (writer.canWrite(current.get(i))) writer.write(current.get(i));
+                        else ++unwritable;
+                        continue;
+                    }
+
+                    ++rejected;
+                    if (reported < REPORTED_REJECTIONS)
+                    {
+                        System.out.println(file + " game " + (games + i + 1) + " rejected: " + reasons[i]);
+                        ++reported;
+                    }
+                }
+                games += reasons.length;
+            }
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%s: %,d games, %,d valid, %,d rejected, %,d unreadable records, %.2f s (%,.0f games/s)%n",
+                    file, games, games - rejected, rejected, reader.getMalformed(), seconds,
+                    games / Math.max(seconds, 1e-9));
+            if (unwritable > 0)
+            {
+                System.out.printf("%,d valid games could not be represented in the output format%n", unwritable);
+            }
+        }
+    }
+
+    /**
+     * Reads up to a batch of games.
+     */
+    private static List<GameRecord> readBatch(GameReader reader) throws IOException
+    {
+        List<GameRecord> batch = new ArrayList<>(BATCH);
+        GameRecord game;
+        while (batch.size() < BATCH && (game = reader.next()) != null)
+        {
+            batch.add(game);
+        }
+        return batch;
+    }
+
+    /**
+     * Waits for the verdicts on a batch.
+     */
+    private static String [] join(CompletableFuture<String []> verdicts)
+    {
+        try
+        {
+            return verdicts.join();
+        }
+        catch (CompletionException ce)
+        {
+            throw ce.getCause() instanceof RuntimeException ? (RuntimeException) ce.getCause() : ce;
+        }
+    }
+}
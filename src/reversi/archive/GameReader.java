@@ -0,0 +1,30 @@
+package reversi.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Reads games one at a time from an archive, so archives of any size can be processed in constant memory.
+ *
+ * @author Kevin Becker
+ */
+public interface GameReader extends Closeable
+{
+    /**
+     * Reads the next game.
+     *
+     * @return The game, or null at the end of the archive.
+     *
+     * @throws IOException If the archive cannot be read or is malformed.
+     */
+    GameRecord next() throws IOException;
+
+    /**
+     * Gets the number of records skipped because they could not be parsed or cannot be played by our rules (passes,
+     * other variants, other starting positions).
+     *
+     * @return The number of records.
+     */
+    long getMalformed();
+}
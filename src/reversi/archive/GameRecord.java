@@ -0,0 +1,365 @@
+package reversi.archive;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+
+/**
+ * One recorded game: the board size, the players and the moves in order. Moves are stored in our own coordinates
+ * (row * cols + col on a {@link Reversi} board).<br><br>
+ *
+ * Our starting position is the standard Othello one reflected left to right (player one sits where black would) and
+ * player one moves first, so player one is black. A move at Othello square (row, col) is therefore our
+ * (row, cols - 1 - col); {@link #fromOthello} and {@link #toOthello} convert between the two.<br><br>
+ *
+ * Our rules have no passes and play on until the board is full, so a game from an Othello archive only means the
+ * same thing here if it needed no pass and filled the board. {@link #validate()} rejects the others rather than
+ * importing them with the players swapped after the pass, or with a score for a board we would not have stopped at.
+ *
+ * @author Kevin Becker
+ */
+public final class GameRecord
+{
+    /** the value of {@link #getRecordedScore()} when the source did not record one. */
+    public static final int NO_SCORE = -1;
+
+    /** the row steps of the eight directions. */
+    private static final int [] ROW_STEPS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    /** the column steps of the eight directions. */
+    private static final int [] COL_STEPS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /** the number of rows. */
+    private final int rows;
+    /** the number of columns. */
+    private final int cols;
+    /** the moves, each row * cols + col. */
+    private final int [] moves;
+    /** the name of player one (black). */
+    private final String player1;
+    /** the name of player two (white). */
+    private final String player2;
+    /** player one's final disc count according to the source, or {@link #NO_SCORE}. */
+    private final int recordedScore;
+    /** how long each move took in milliseconds, or null if the source did not record it. */
+    private final int [] moveMillis;
+
+    /**
+     * Creates a game record.
+     *
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param moves The moves, each row * cols + col (the array becomes owned by the record).
+     * @param player1 The name of player one (black).
+     * @param player2 The name of player two (white).
+     * @param recordedScore Player one's final disc count according to the source, or {@link #NO_SCORE}.
+     */
+    public GameRecord(int rows, int cols, int [] moves, String player1, String player2, int recordedScore)
+    {
+        this(rows, cols, moves, player1, player2, recordedScore, null);
+    }
+
+    /**
+     * Creates a game record which includes how long each move took.
+     *
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param moves The moves, each row * cols + col (the array becomes owned by the record).
+     * @param player1 The name of player one (black).
+     * @param player2 The name of player two (white).
+     * @param recordedScore Player one's final disc count according to the source, or {@link #NO_SCORE}.
+     * @param moveMillis How long each move took in milliseconds, or null if unknown (the array becomes owned by the
+     *                   record).
+     */
+    public GameRecord(int rows, int cols, int [] moves, String player1, String player2, int recordedScore,
+                      int [] moveMillis)
+    {
+        this.rows = rows;
+        this.cols = cols;
+        this.moves = moves;
+        this.player1 = player1;
+        this.player2 = player2;
+        this.recordedScore = recordedScore;
+        this.moveMillis = moveMillis;
+    }
+
+    /**
+     * Gets the number of rows.
+     *
+     * @return The number of rows.
+     */
+    public int getRows()
+    {
+        return rows;
+    }
+
+    /**
+     * Gets the number of columns.
+     *
+     * @return The number of columns.
+     */
+    public int getCols()
+    {
+        return cols;
+    }
+
+    /**
+     * Gets the number of moves.
+     *
+     * @return The number of moves.
+     */
+    public int getMoveCount()
+    {
+        return moves.length;
+    }
+
+    /**
+     * Gets a move.
+     *
+     * @param index Which move, from 0.
+     *
+     * @return The move, row * cols + col.
+     */
+    public int getMove(int index)
+    {
+        return moves[index];
+    }
+
+    /**
+     * Checks whether the record includes how long each move took.
+     *
+     * @return Whether the move times are known.
+     */
+    public boolean hasMoveTimes()
+    {
+        return moveMillis != null;
+    }
+
+    /**
+     * Gets how long a move took.
+     *
+     * @param index Which move, from 0.
+     *
+     * @return The time in milliseconds, or -1 if it is not known.
+     */
+    public int getMoveMillis(int index)
+    {
+        return moveMillis == null ? -1 : moveMillis[index];
+    }
+
+    /**
+     * Gets the name of player one (black).
+     *
+     * @return The name.
+     */
+    public String getPlayer1()
+    {
+        return player1;
+    }
+
+    /**
+     * Gets the name of player two (white).
+     *
+     * @return The name.
+     */
+    public String getPlayer2()
+    {
+        return player2;
+    }
+
+    /**
+     * Gets player one's final disc count according to the source.
+     *
+     * @return The disc count, or {@link #NO_SCORE}.
+     */
+    public int getRecordedScore()
+    {
+        return recordedScore;
+    }
+
+    /**
+     * Replays the game from the start.
+     *
+     * @return The final position.
+     *
+     * @throws ReversiException If a move is invalid.
+     */
+    public Board replay() throws ReversiException
+    {
+        Board game = Board.create(rows, cols);
+        for (int move : moves)
+        {
+            game.makeMove(move / cols, move % cols);
+        }
+        return game;
+    }
+
+    /**
+     * Checks that the game can be replayed under our rules and agrees with its recorded score. A game is rejected if:
+     * <ul>
+     *     <li>a move is not valid;</li>
+     *     <li>it was played by Othello's rules (every move flipping a disc) up to a point where the player to move
+     *     could flip nothing while the move recorded there flips for their opponent: the game passed, and every
+     *     move after it belongs to the other player here;</li>
+     *     <li>it ends with empty squares (a pass by both players, a resignation or a timeout), since our games only
+     *     end on a full board;</li>
+     *     <li>its recorded score differs from the replay's.</li>
+     * </ul>
+     * A game played by our rules which happens to look exactly like a pass is rejected too, since the record cannot
+     * tell them apart.
+     *
+     * @return Null if the game is valid, otherwise why it was rejected.
+     */
+    public String validate()
+    {
+        if (rows < 2 || cols < 2) return "bad board size " + rows + "x" + cols;
+
+        try
+        {
+            Board game = Board.create(rows, cols);
+            boolean othello = true;
+            for (int i = 0; i < moves.length; ++i)
+            {
+                int row = moves[i] / cols;
+                int col = moves[i] % cols;
+                Move mover = game.getCurrentPlayer();
+                // once a move has flipped nothing the game was not played by Othello's rules, so it cannot pass
+                if (othello && !flips(game, row, col, mover))
+                {
+                    if (!hasFlippingMove(game, mover) && flips(game, row, col, opponent(mover)))
+                    {
+                        return "move " + (i + 1) + " follows a pass, which these rules do not have";
+                    }
+                    othello = false;
+                }
+                game.makeMove(row, col);
+            }
+
+            if (!game.gameOver())
+            {
+                return "the game ends with " + (rows * cols - game.getNumMoves()) +
+                        " empty squares, and these rules play until the board is full";
+            }
+            if (recordedScore != NO_SCORE && countDiscs(game, Move.PLAYER_ONE) != recordedScore)
+            {
+                return "recorded score " + recordedScore + " does not match the replay";
+            }
+            return null;
+        }
+        catch (ReversiException re)
+        {
+            return re.getMessage();
+        }
+        catch (RuntimeException re)
+        {
+            return "bad move: " + re;
+        }
+    }
+
+    /**
+     * Converts an Othello square to one of our moves.
+     *
+     * @param cols The number of columns.
+     * @param row The Othello row, from 0 (row 1).
+     * @param col The Othello column, from 0 (column a).
+     *
+     * @return The move, row * cols + col.
+     */
+    public static int fromOthello(int cols, int row, int col)
+    {
+        return row * cols + (cols - 1 - col);
+    }
+
+    /**
+     * Converts one of our moves to an Othello square.
+     *
+     * @param cols The number of columns.
+     * @param move The move, row * cols + col.
+     *
+     * @return The Othello square, row * cols + col with row 1 and column a as 0.
+     */
+    public static int toOthello(int cols, int move)
+    {
+        return (move / cols) * cols + (cols - 1 - move % cols);
+    }
+
+    /**
+     * Checks whether a move would flip any discs for a player, as Othello requires of every move.
+     *
+     * @param game The position.
+     * @param row The row of the move.
+     * @param col The column of the move.
+     * @param player The player making the move.
+     *
+     * @return Whether the move flips at least one disc.
+     */
+    private static boolean flips(Board game, int row, int col, Move player)
+    {
+        Move other = opponent(player);
+        for (int d = 0; d < ROW_STEPS.length; ++d)
+        {
+            int r = row + ROW_STEPS[d];
+            int c = col + COL_STEPS[d];
+            int run = 0;
+            while (r >= 0 && r < game.getRows() && c >= 0 && c < game.getCols() && game.getCell(r, c) == other)
+            {
+                r += ROW_STEPS[d];
+                c += COL_STEPS[d];
+                ++run;
+            }
+            if (run > 0 && r >= 0 && r < game.getRows() && c >= 0 && c < game.getCols() &&
+                    game.getCell(r, c) == player)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether a player has any move which flips discs, that is, whether Othello would let them move.
+     *
+     * @param game The position.
+     * @param player The player.
+     *
+     * @return Whether the player has a move.
+     */
+    private static boolean hasFlippingMove(Board game, Move player)
+    {
+        // every move which flips is next to a disc, so it is one of our valid moves
+        for (int move : game.getValidMoves())
+        {
+            if (flips(game, move / game.getCols(), move % game.getCols(), player)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the other player.
+     */
+    private static Move opponent(Move player)
+    {
+        return player == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+    }
+
+    /**
+     * Counts a player's discs.
+     *
+     * @param game The position.
+     * @param player The player.
+     *
+     * @return The number of discs.
+     */
+    static int countDiscs(Board game, Move player)
+    {
+        int discs = 0;
+        for (int row = 0; row < game.getRows(); ++row)
+        {
+            for (int col = 0; col < game.getCols(); ++col)
+            {
+                if (game.getCell(row, col) == player) ++discs;
+            }
+        }
+        return discs;
+    }
+}
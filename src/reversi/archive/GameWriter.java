@@ -0,0 +1,32 @@
+package reversi.archive;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+
+/**
+ * Writes games one at a time to an archive.
+ *
+ * @author Kevin Becker
+ */
+public interface GameWriter extends Closeable
+{
+    /**
+     * Writes a game.
+     *
+     * @param game The game.
+     *
+     * @throws IOException If the game cannot be written, or cannot be represented in the archive's format (see
+     * {@link #canWrite}).
+     */
+    void write(GameRecord game) throws IOException;
+
+    /**
+     * Checks whether a game can be represented in the archive's format.
+     *
+     * @param game The game.
+     *
+     * @return Whether {@link #write} would accept the game.
+     */
+    boolean canWrite(GameRecord game);
+}
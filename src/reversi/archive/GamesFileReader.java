@@ -0,0 +1,96 @@
+package reversi.archive;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * Reads our own games files, the format read by {@link reversi.eval.PatternTrainer} and
+ * {@link reversi.book.DedupIndex}: one game per line as {@code rows cols row col row col ...}. Blank lines and lines
+ * starting with '#' are skipped. The files name no players and record no score.
+ *
+ * @author Kevin Becker
+ */
+public class GamesFileReader implements GameReader
+{
+    /** the games file. */
+    private final BufferedReader in;
+
+    /** the number of lines which could not be parsed. */
+    private long malformed;
+
+    /**
+     * Opens a games file.
+     *
+     * @param file The games file.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    public GamesFileReader(Path file) throws IOException
+    {
+        this.in = Files.newBufferedReader(file, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public GameRecord next() throws IOException
+    {
+        String line;
+        while ((line = in.readLine()) != null)
+        {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+
+            GameRecord game = parse(line);
+            if (game != null) return game;
+            ++malformed;
+        }
+        return null;
+    }
+
+    @Override
+    public long getMalformed()
+    {
+        return malformed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Parses one line of a games file.
+     *
+     * @param line The line.
+     *
+     * @return The game, or null if the line is malformed.
+     */
+    static GameRecord parse(String line)
+    {
+        try
+        {
+            String [] tokens = line.split("\\s+");
+            int rows = Integer.parseInt(tokens[0]);
+            int cols = Integer.parseInt(tokens[1]);
+            if (rows < 2 || cols < 2 || tokens.length % 2 != 0) return null;
+
+            int [] moves = new int[tokens.length / 2 - 1];
+            for (int i = 0; i < moves.length; ++i)
+            {
+                int row = Integer.parseInt(tokens[2 + 2 * i]);
+                int col = Integer.parseInt(tokens[3 + 2 * i]);
+                if (row < 0 || row >= rows || col < 0 || col >= cols) return null;
+                moves[i] = row * cols + col;
+            }
+            return new GameRecord(rows, cols, moves, "?", "?", GameRecord.NO_SCORE);
+        }
+        catch (RuntimeException re)
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package reversi.archive;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Writes our own games files (see {@link GamesFileReader}), so imported archives can feed the trainer and the
+ * opening book.
+ *
+ * @author Kevin Becker
+ */
+public class GamesFileWriter implements GameWriter
+{
+    /** the games file. */
+    private final BufferedWriter out;
+
+    /**
+     * Opens a games file for writing.
+     *
+     * @param file The games file.
+     * @param append Whether to add to the end of an existing file rather than replace it.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public GamesFileWriter(Path file, boolean append) throws IOException
+    {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.US_ASCII, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(GameRecord game) throws IOException
+    {
+        StringBuilder line = new StringBuilder();
+        line.append(game.getRows()).append(' ').append(game.getCols());
+        for (int i = 0; i < game.getMoveCount(); ++i)
+        {
+            int move = game.getMove(i);
+            line.append(' ').append(move / game.getCols()).append(' ').append(move % game.getCols());
+        }
+        out.write(line.toString());
+        out.newLine();
+    }
+
+    @Override
+    public boolean canWrite(GameRecord game)
+    {
+        return true;
+    }
+
+    /**
+     * Writes out any buffered games.
+     *
+     * @throws IOException If the games cannot be written.
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+}
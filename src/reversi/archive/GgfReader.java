@@ -0,0 +1,329 @@
+package reversi.archive;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Reads games in the Generic Game Format used by GGS and most modern Othello archives. Each game is a list of
+ * properties between {@code (;} and {@code ;)}, for example
+ * <pre>
+ *     (;GM[Othello]PB[alice]PW[bob]RE[+6.000]TY[8]BO[8 -------- -------- -------- ---O*--- ---*O--- -------- --------
+ *     -------- *]B[d3//1.2]W[c5]...;)
+ * </pre>
+ * Games may span lines and a line may hold several games. The board is read top to bottom with {@code *} black,
+ * {@code O} white and {@code -} empty, followed by the side to move.<br><br>
+ *
+ * Only games our rules can replay are returned: the plain game type, the standard starting position with black to
+ * move, and strictly alternating moves. Games with a pass ({@code PA}) are skipped and counted by
+ * {@link #getMalformed()}. If every move carries a time ({@code B[d3/eval/seconds]}), the times are kept.
+ *
+ * @author Kevin Becker
+ */
+public class GgfReader implements GameReader
+{
+    /** the archive. */
+    private final BufferedReader in;
+
+    /** the text of the game being read. */
+    private final StringBuilder text = new StringBuilder();
+
+    /** the number of games which were skipped. */
+    private long malformed;
+
+    /**
+     * Opens an archive.
+     *
+     * @param file The archive.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    public GgfReader(Path file) throws IOException
+    {
+        this.in = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public GameRecord next() throws IOException
+    {
+        while (readGame())
+        {
+            GameRecord game = parse(text);
+            if (game != null) return game;
+            ++malformed;
+        }
+        return null;
+    }
+
+    @Override
+    public long getMalformed()
+    {
+        return malformed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+
+    /**
+     * Reads the text of the next game, between its {@code (;} and {@code ;)}, into {@link #text}.
+     *
+     * @return False at the end of the archive.
+     */
+    private boolean readGame() throws IOException
+    {
+        text.setLength(0);
+
+        // find the start of a game
+        int previous = -1;
+        int ch;
+        while ((ch = in.read()) != -1 && !(previous == '(' && ch == ';'))
+        {
+            previous = ch;
+        }
+        if (ch == -1) return false;
+
+        // gather everything up to the end of the game, ignoring markers inside property values
+        boolean inValue = false;
+        previous = -1;
+        while ((ch = in.read()) != -1)
+        {
+            if (inValue)
+            {
+                if (ch == '\\')
+                {
+                    text.append((char) ch);
+                    ch = in.read();
+                    if (ch == -1) break;
+                }
+                else if (ch == ']')
+                {
+                    inValue = false;
+                }
+            }
+            else if (ch == '[')
+            {
+                inValue = true;
+            }
+            else if (previous == ';' && ch == ')')
+            {
+                text.setLength(text.length() - 1);
+                return true;
+            }
+            text.append((char) ch);
+            previous = ch;
+        }
+
+        // an unterminated game at the end of the file still counts as a (bad) record
+        text.setLength(0);
+        return true;
+    }
+
+    /**
+     * Parses the text of one game.
+     *
+     * @param game The properties of the game.
+     *
+     * @return The game, or null if it is malformed or cannot be played by our rules.
+     */
+    static GameRecord parse(CharSequence game)
+    {
+        Map<String, String> properties = new HashMap<>();
+        int [] moves = new int[64];
+        int [] millis = new int[64];
+        boolean timed = true;
+        int count = 0;
+        int size = -1;
+        boolean blackNext = true;
+
+        int i = 0;
+        int length = game.length();
+        while (i < length)
+        {
+            char ch = game.charAt(i);
+            if (!Character.isLetter(ch))
+            {
+                ++i;
+                continue;
+            }
+
+            // a property: a name followed by a value in brackets
+            int nameStart = i;
+            while (i < length && Character.isLetter(game.charAt(i))) ++i;
+            String name = game.subSequence(nameStart, i).toString().toUpperCase();
+            if (i >= length || game.charAt(i) != '[') return null;
+
+            StringBuilder value = new StringBuilder();
+            ++i;
+            while (i < length && game.charAt(i) != ']')
+            {
+                if (game.charAt(i) == '\\' && i + 1 < length) ++i;
+                value.append(game.charAt(i++));
+            }
+            if (i >= length) return null;
+            ++i;
+
+            switch (name)
+            {
+                case "B":
+                case "W":
+                    if (size < 0) return null;
+                    if (name.equals("B") != blackNext) return null;
+
+                    int move = parseMove(value.toString(), size);
+                    if (move < 0) return null;
+                    if (count == moves.length)
+                    {
+                        moves = Arrays.copyOf(moves, count * 2);
+                        millis = Arrays.copyOf(millis, count * 2);
+                    }
+                    millis[count] = parseMillis(value.toString());
+                    timed &= millis[count] >= 0;
+                    moves[count++] = move;
+                    blackNext = !blackNext;
+                    break;
+                case "BO":
+                    size = parseBoard(value.toString());
+                    if (size < 0) return null;
+                    break;
+                default:
+                    properties.put(name, value.toString().trim());
+                    break;
+            }
+        }
+
+        String type = properties.get("GM");
+        if (type != null && !type.equalsIgnoreCase("Othello")) return null;
+        if (size < 0 || !String.valueOf(size).equals(properties.getOrDefault("TY", String.valueOf(size)))) return null;
+
+        return new GameRecord(size, size, Arrays.copyOf(moves, count), properties.getOrDefault("PB", "?"),
+                properties.getOrDefault("PW", "?"), parseScore(properties.get("RE"), size),
+                timed && count > 0 ? Arrays.copyOf(millis, count) : null);
+    }
+
+    /**
+     * Parses a move such as "d3", "D3" or "d3/-2.50/1.7".
+     *
+     * @param value The value of the property.
+     * @param size The side of the board.
+     *
+     * @return The move in our coordinates, or -1 if it is a pass or not a square of the board.
+     */
+    private static int parseMove(String value, int size)
+    {
+        int slash = value.indexOf('/');
+        String square = (slash < 0 ? value : value.substring(0, slash)).trim().toLowerCase();
+        if (square.length() < 2) return -1;
+
+        int col = square.charAt(0) - 'a';
+        int row;
+        try
+        {
+            row = Integer.parseInt(square.substring(1)) - 1;
+        }
+        catch (NumberFormatException nfe)
+        {
+            // "pa" (a pass) lands here as well
+            return -1;
+        }
+        if (row < 0 || row >= size || col < 0 || col >= size) return -1;
+        return GameRecord.fromOthello(size, row, col);
+    }
+
+    /**
+     * Parses the time of a move such as "d3/-2.50/1.7" (the third part, in seconds).
+     *
+     * @param value The value of the property.
+     *
+     * @return The time in milliseconds, or -1 if the move has no time.
+     */
+    private static int parseMillis(String value)
+    {
+        String [] parts = value.split("/");
+        if (parts.length < 3 || parts[2].trim().isEmpty()) return -1;
+        try
+        {
+            double seconds = Double.parseDouble(parts[2].trim());
+            return seconds < 0 ? -1 : (int) Math.min(Integer.MAX_VALUE, Math.round(seconds * 1000));
+        }
+        catch (NumberFormatException nfe)
+        {
+            return -1;
+        }
+    }
+
+    /**
+     * Parses the starting position and checks it is ours, with black to move.
+     *
+     * @param value The value of the BO property.
+     *
+     * @return The side of the board, or -1 if the position is not our starting position.
+     */
+    private static int parseBoard(String value)
+    {
+        String [] parts = value.trim().split("\\s+", 2);
+        if (parts.length < 2) return -1;
+
+        int size;
+        try
+        {
+            size = Integer.parseInt(parts[0]);
+        }
+        catch (NumberFormatException nfe)
+        {
+            return -1;
+        }
+        if (size < 2 || size > 26) return -1;
+
+        String cells = parts[1].replaceAll("\\s+", "");
+        if (cells.length() != size * size + 1 || cells.charAt(size * size) != '*') return -1;
+
+        Reversi start = new Reversi(size, size);
+        for (int row = 0; row < size; ++row)
+        {
+            for (int col = 0; col < size; ++col)
+            {
+                Move ours = start.getCell(row, size - 1 - col);
+                char expected = ours == Move.PLAYER_ONE ? '*' : ours == Move.PLAYER_TWO ? 'O' : '-';
+                char actual = cells.charAt(row * size + col);
+                if (Character.toUpperCase(actual) != expected) return -1;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Works out black's final disc count from a result such as "+6.000". Results which are not a plain disc
+     * difference (resignations, timeouts) are not scores.
+     *
+     * @param result The value of the RE property, or null.
+     * @param size The side of the board.
+     *
+     * @return Black's disc count on a full board, or {@link GameRecord#NO_SCORE}.
+     */
+    private static int parseScore(String result, int size)
+    {
+        if (result == null) return GameRecord.NO_SCORE;
+        try
+        {
+            double difference = Double.parseDouble(result);
+            int discs = (int) Math.round(difference) + size * size;
+            return discs % 2 == 0 && discs >= 0 ? discs / 2 : GameRecord.NO_SCORE;
+        }
+        catch (NumberFormatException nfe)
+        {
+            return GameRecord.NO_SCORE;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package reversi.archive;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+
+/**
+ * Writes games in the Generic Game Format read by {@link GgfReader}, one game per line. Only square boards of up to
+ * 26 columns can be written, since GGF names columns with letters.
+ *
+ * @author Kevin Becker
+ */
+public class GgfWriter implements GameWriter
+{
+    /** the archive. */
+    private final BufferedWriter out;
+
+    /**
+     * Opens an archive for writing.
+     *
+     * @param file The archive.
+     * @param append Whether to add to the end of an existing archive rather than replace it.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public GgfWriter(Path file, boolean append) throws IOException
+    {
+        this.out = Files.newBufferedWriter(file, StandardCharsets.ISO_8859_1, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public void write(GameRecord game) throws IOException
+    {
+        out.write(format(game));
+        out.newLine();
+    }
+
+    @Override
+    public boolean canWrite(GameRecord game)
+    {
+        return game.getRows() == game.getCols() && game.getRows() <= 26;
+    }
+
+    /**
+     * Writes out any buffered games, so an archive which is appended to over a long time stays readable.
+     *
+     * @throws IOException If the games cannot be written.
+     */
+    public void flush() throws IOException
+    {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    /**
+     * Formats a game.
+     *
+     * @param game The game.
+     *
+     * @return The game in GGF.
+     *
+     * @throws IOException If the game cannot be written in GGF.
+     */
+    static String format(GameRecord game) throws IOException
+    {
+        int size = game.getRows();
+        if (size != game.getCols() || size > 26)
+        {
+            throw new IOException("GGF cannot hold a " + game.getRows() + "x" + game.getCols() + " game");
+        }
+
+        StringBuilder text = new StringBuilder("(;GM[Othello]PC[Reversi]");
+        text.append("PB[").append(escape(game.getPlayer1())).append(']');
+        text.append("PW[").append(escape(game.getPlayer2())).append(']');
+
+        try
+        {
+            Board end = game.replay();
+            if (end.gameOver())
+            {
+                int difference = 2 * GameRecord.countDiscs(end, Move.PLAYER_ONE) - size * size;
+                text.append("RE[").append(difference > 0 ? "+" : "").append(difference).append(".000]");
+            }
+        }
+        catch (ReversiException re)
+        {
+            throw new IOException("game cannot be replayed: " + re.getMessage());
+        }
+
+        // the starting position, seen from the Othello side of the board
+        Reversi start = new Reversi(size, size);
+        text.append("TY[").append(size).append("]BO[").append(size);
+        for (int row = 0; row < size; ++row)
+        {
+            text.append(' ');
+            for (int col = 0; col < size; ++col)
+            {
+                Move cell = start.getCell(row, size - 1 - col);
+                text.append(cell == Move.PLAYER_ONE ? '*' : cell == Move.PLAYER_TWO ? 'O' : '-');
+            }
+        }
+        text.append(" *]");
+
+        for (int i = 0; i < game.getMoveCount(); ++i)
+        {
+            int square = GameRecord.toOthello(size, game.getMove(i));
+            text.append(i % 2 == 0 ? "B[" : "W[").append((char) ('a' + square % size)).append(square / size + 1);
+            if (game.hasMoveTimes())
+            {
+                text.append("//").append(String.format(Locale.ROOT, "%.3f", game.getMoveMillis(i) / 1000.0));
+            }
+            text.append(']');
+        }
+        return text.append(";)").toString();
+    }
+
+    /**
+     * Escapes the characters which would end a property value.
+     */
+    private static String escape(String value)
+    {
+        return value == null ? "?" : value.replace("\\", "\\\\").replace("]", "\\]");
+    }
+}
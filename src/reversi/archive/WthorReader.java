@@ -0,0 +1,173 @@
+package reversi.archive;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Reads a WTHOR database (the French federation's {@code .wtb} format). The file is a 16-byte header followed by
+ * fixed-size 68-byte records:
+ * <pre>
+ *     0  tournament number (2 bytes, little endian)
+ *     2  black player number (2 bytes)
+ *     4  white player number (2 bytes)
+ *     6  black's final disc count
+ *     7  black's theoretical score
+ *     8  60 moves, each 10 * row + column counting from 1 (a1 = 11, h8 = 88), 0 once the game is over
+ * </pre>
+ * Players are only numbered in the file (their names live in a separate {@code .JOU} file), so the records name
+ * them "#number".<br><br>
+ *
+ * The file is memory-mapped a window at a time rather than read into the heap, so any size of database streams
+ * through in constant memory. Only 8x8 databases are supported.
+ *
+ * @author Kevin Becker
+ */
+public class WthorReader implements GameReader
+{
+    /** the size of the file header in bytes. */
+    static final int HEADER_SIZE = 16;
+
+    /** the size of one game record in bytes. */
+    static final int RECORD_SIZE = 68;
+
+    /** the number of moves stored in a record. */
+    static final int MOVES = 60;
+
+    /** the side of the board. */
+    static final int SIZE = 8;
+
+    /** the number of records mapped at a time. */
+    private static final int WINDOW_RECORDS = 1 << 16;
+
+    /** the database. */
+    private final FileChannel channel;
+
+    /** the number of records in the file. */
+    private final long records;
+
+    /** the records currently mapped. */
+    private MappedByteBuffer window;
+
+    /** the index of the first record in the window. */
+    private long windowStart;
+
+    /** the index of the next record to read. */
+    private long next;
+
+    /** the number of records which could not be decoded. */
+    private long malformed;
+
+    /**
+     * Opens a database.
+     *
+     * @param file The database.
+     *
+     * @throws IOException If the file cannot be read or is not an 8x8 WTHOR database.
+     */
+    public WthorReader(Path file) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try
+        {
+            if (channel.size() < HEADER_SIZE) throw new IOException(file + " is too short to be a WTHOR database");
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            int boardSize = header.get(12);
+            if (boardSize != 0 && boardSize != SIZE)
+            {
+                throw new IOException(file + " holds " + boardSize + "x" + boardSize + " games; only 8x8 is supported");
+            }
+
+            // trust the file length over the header's count, which some tools leave at zero
+            this.records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        }
+        catch (IOException ioe)
+        {
+            channel.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Gets the number of records in the database.
+     *
+     * @return The number of records.
+     */
+    public long getRecordCount()
+    {
+        return records;
+    }
+
+    @Override
+    public GameRecord next() throws IOException
+    {
+        while (next < records)
+        {
+            if (window == null || next - windowStart >= WINDOW_RECORDS)
+            {
+                windowStart = next;
+                long count = Math.min(WINDOW_RECORDS, records - windowStart);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE + windowStart * RECORD_SIZE,
+                        count * RECORD_SIZE);
+                window.order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            int base = (int) (next - windowStart) * RECORD_SIZE;
+            ++next;
+
+            GameRecord game = decode(base);
+            if (game != null) return game;
+            ++malformed;
+        }
+        return null;
+    }
+
+    @Override
+    public long getMalformed()
+    {
+        return malformed;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        window = null;
+        channel.close();
+    }
+
+    /**
+     * Decodes the record at an offset in the window.
+     *
+     * @param base The offset of the record.
+     *
+     * @return The game, or null if a move is not a square of the board.
+     */
+    private GameRecord decode(int base)
+    {
+        int black = window.getShort(base + 2) & 0xffff;
+        int white = window.getShort(base + 4) & 0xffff;
+        int score = window.get(base + 6) & 0xff;
+
+        int [] moves = new int[MOVES];
+        int count = 0;
+        while (count < MOVES)
+        {
+            int square = window.get(base + 8 + count) & 0xff;
+            if (square == 0) break;
+
+            int row = square / 10 - 1;
+            int col = square % 10 - 1;
+            if (row < 0 || row >= SIZE || col < 0 || col >= SIZE) return null;
+            moves[count++] = GameRecord.fromOthello(SIZE, row, col);
+        }
+
+        return new GameRecord(SIZE, SIZE, Arrays.copyOf(moves, count), "#" + black, "#" + white, score);
+    }
+}
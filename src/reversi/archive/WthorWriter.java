@@ -0,0 +1,167 @@
+package reversi.archive;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+
+/**
+ * Writes a WTHOR database in the layout described by {@link WthorReader}. Records are gathered in a buffer and
+ * written in large blocks; the header's record count is filled in when the writer is closed. Player names of the form
+ * "#number" keep their number, any other name is written as player 0.
+ *
+ * @author Kevin Becker
+ */
+public class WthorWriter implements GameWriter
+{
+    /** the number of records gathered before they are written. */
+    private static final int BUFFER_RECORDS = 4096;
+
+    /** the database. */
+    private final FileChannel channel;
+
+    /** records waiting to be written. */
+    private final ByteBuffer buffer;
+
+    /** the number of records written. */
+    private int records;
+
+    /**
+     * Creates a database, replacing any file already there.
+     *
+     * @param file The database.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public WthorWriter(Path file) throws IOException
+    {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * WthorReader.RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        channel.position(WthorReader.HEADER_SIZE);
+    }
+
+    @Override
+    public void write(GameRecord game) throws IOException
+    {
+        if (!canWrite(game))
+        {
+            throw new IOException("WTHOR only holds 8x8 games of at most 60 moves");
+        }
+
+        Board end;
+        try
+        {
+            end = game.replay();
+        }
+        catch (ReversiException re)
+        {
+            throw new IOException("game cannot be replayed: " + re.getMessage());
+        }
+        int score = GameRecord.countDiscs(end, Move.PLAYER_ONE);
+
+        if (!buffer.hasRemaining()) flush();
+        buffer.putShort((short) 0);
+        buffer.putShort((short) playerNumber(game.getPlayer1()));
+        buffer.putShort((short) playerNumber(game.getPlayer2()));
+        buffer.put((byte) score);
+        buffer.put((byte) score);
+        for (int i = 0; i < WthorReader.MOVES; ++i)
+        {
+            if (i < game.getMoveCount())
+            {
+                int square = GameRecord.toOthello(WthorReader.SIZE, game.getMove(i));
+                buffer.put((byte) ((square / WthorReader.SIZE + 1) * 10 + square % WthorReader.SIZE + 1));
+            }
+            else
+            {
+                buffer.put((byte) 0);
+            }
+        }
+        ++records;
+    }
+
+    @Override
+    public boolean canWrite(GameRecord game)
+    {
+        return game.getRows() == WthorReader.SIZE && game.getCols() == WthorReader.SIZE &&
+                game.getMoveCount() <= WthorReader.MOVES;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try
+        {
+            flush();
+
+            LocalDate today = LocalDate.now();
+            ByteBuffer header = ByteBuffer.allocate(WthorReader.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.put((byte) (today.getYear() / 100));
+            header.put((byte) (today.getYear() % 100));
+            header.put((byte) today.getMonthValue());
+            header.put((byte) today.getDayOfMonth());
+            header.putInt(records);
+            header.putShort((short) 0);
+            header.putShort((short) today.getYear());
+            header.put((byte) WthorReader.SIZE);
+            header.put((byte) 0);
+            header.put((byte) 0);
+            header.put((byte) 0);
+            header.flip();
+            long offset = 0;
+            while (header.hasRemaining())
+            {
+                offset += channel.write(header, offset);
+            }
+        }
+        finally
+        {
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes out the records gathered so far.
+     */
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Recovers a player's number from a name written by {@link WthorReader}.
+     *
+     * @param name The name.
+     *
+     * @return The number, or 0 if the name is not of the form "#number".
+     */
+    private static int playerNumber(String name)
+    {
+        if (name != null && name.startsWith("#"))
+        {
+            try
+            {
+                int number = Integer.parseInt(name.substring(1));
+                if (number >= 0 && number <= 0xffff) return number;
+            }
+            catch (NumberFormatException nfe)
+            {
+                // fall through to the anonymous player
+            }
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,142 @@
+package reversi.book;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+
+/**
+ * A bloom filter over 128-bit keys (the two bitboards of an 8x8 position). It answers "definitely absent" or
+ * "maybe present" using a fixed number of bits, so the {@link DedupIndex} can rule out most lookups without touching
+ * the disk.
+ *
+ * @author Kevin Becker
+ */
+class BloomFilter
+{
+    /** the bits of the filter. */
+    private final long [] bits;
+
+    /** the number of bits probed per key. */
+    private final int numHashes;
+
+    /**
+     * Creates an empty filter sized for a number of keys at a target false positive rate.
+     *
+     * @param expectedKeys The number of keys that will be added.
+     * @param falsePositiveRate The acceptable chance of a false "maybe present".
+     */
+    BloomFilter(long expectedKeys, double falsePositiveRate)
+    {
+        long numBits = (long) Math.ceil(-Math.max(1, expectedKeys) * Math.log(falsePositiveRate) /
+                (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.min(Integer.MAX_VALUE - 8, (numBits + 63) >>> 6)];
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / Math.max(1, expectedKeys) * Math.log(2)));
+    }
+
+    /**
+     * Creates a filter from its saved state.
+     */
+    private BloomFilter(long [] bits, int numHashes)
+    {
+        this.bits = bits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Adds a key.
+     *
+     * @param high The first half of the key.
+     * @param low The second half of the key.
+     */
+    void add(long high, long low)
+    {
+        long hash1 = mix(high ^ mix(low));
+        long hash2 = mix(hash1 ^ low) | 1;
+        long numBits = (long) bits.length << 6;
+        for (int i = 0; i < numHashes; ++i)
+        {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether a key may have been added.
+     *
+     * @param high The first half of the key.
+     * @param low The second half of the key.
+     *
+     * @return False if the key was definitely never added, true if it may have been.
+     */
+    boolean mightContain(long high, long low)
+    {
+        long hash1 = mix(high ^ mix(low));
+        long hash2 = mix(hash1 ^ low) | 1;
+        long numBits = (long) bits.length << 6;
+        for (int i = 0; i < numHashes; ++i)
+        {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the filter to a file.
+     *
+     * @param file The file.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    void save(Path file) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file))))
+        {
+            out.writeInt(numHashes);
+            out.writeInt(bits.length);
+            for (long word : bits)
+            {
+                out.writeLong(word);
+            }
+        }
+    }
+
+    /**
+     * Reads a filter written by {@link #save(Path)}.
+     *
+     * @param file The file.
+     *
+     * @return The filter.
+     *
+     * @throws IOException If the file cannot be read.
+     */
+    static BloomFilter load(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            int numHashes = in.readInt();
+            long [] bits = new long[in.readInt()];
+            for (int i = 0; i < bits.length; ++i)
+            {
+                bits[i] = in.readLong();
+            }
+            return new BloomFilter(bits, numHashes);
+        }
+    }
+
+    /**
+     * Scrambles a long (the splitmix64 finalizer).
+     */
+    private static long mix(long z)
+    {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
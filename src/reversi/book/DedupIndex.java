@@ -0,0 +1,528 @@
+package reversi.book;
+
+import reversi.*;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+/**
+ * An on-disk set of distinct 8x8 positions, with rotations and reflections folded together. The index is a single
+ * file of canonical positions (two longs each) in sorted order, plus a bloom filter so most lookups of absent
+ * positions never touch the file.<br><br>
+ *
+ * A {@link Writer} builds the index in bounded memory: positions are collected into a buffer which is sorted,
+ * de-duplicated and spilled to a run file whenever it fills up, and the runs are merged (dropping duplicates) when the
+ * writer finishes. This lets it ingest far more positions than fit in memory.
+ *
+ * @author Kevin Becker
+ */
+public class DedupIndex implements Closeable
+{
+    /** the name of the sorted positions file inside the index directory. */
+    public static final String POSITIONS_FILE = "positions.bin";
+
+    /** the name of the bloom filter file inside the index directory. */
+    public static final String BLOOM_FILE = "positions.bloom";
+
+    /** the bytes used by each position in the positions file. */
+    private static final int RECORD_BYTES = 16;
+
+    /** the number of records mapped at a time (a mapping cannot exceed 2GB). */
+    private static final int SEGMENT_RECORDS = 1 << 26;
+
+    /** the false positive rate of the bloom filter. */
+    private static final double BLOOM_FALSE_POSITIVES = 0.01;
+
+    /** the default number of positions buffered before spilling a run. */
+    private static final int DEFAULT_BUFFER_POSITIONS = 1 << 22;
+
+    /** the memory mapped positions file, in segments. */
+    private final MappedByteBuffer [] segments;
+
+    /** the number of positions in the index. */
+    private final long size;
+
+    /** the bloom filter over every position in the index. */
+    private final BloomFilter bloom;
+
+    /** the open positions file. */
+    private final FileChannel channel;
+
+    /**
+     * Opens an index which was built by a {@link Writer}.
+     *
+     * @param directory The index directory.
+     *
+     * @throws IOException If the index cannot be read.
+     */
+    public DedupIndex(Path directory) throws IOException
+    {
+        this.channel = FileChannel.open(directory.resolve(POSITIONS_FILE), StandardOpenOption.READ);
+        this.size = channel.size() / RECORD_BYTES;
+        this.bloom = BloomFilter.load(directory.resolve(BLOOM_FILE));
+
+        int numSegments = (int) ((size + SEGMENT_RECORDS - 1) / SEGMENT_RECORDS);
+        this.segments = new MappedByteBuffer[numSegments];
+        for (int i = 0; i < numSegments; ++i)
+        {
+            long first = (long) i * SEGMENT_RECORDS;
+            long records = Math.min(SEGMENT_RECORDS, size - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * RECORD_BYTES, records * RECORD_BYTES);
+        }
+    }
+
+    /**
+     * Builds an index from games files (in the format read by {@link reversi.eval.PatternTrainer}), adding every
+     * position of every 8x8 game.
+     *
+     * @param args The arguments:<br><br><em>
+     *             0 => The index directory to create.<br>
+     *             1... => The games files.</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java DedupIndex index_dir games...");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        try (Writer writer = new Writer(Paths.get(args[0]), DEFAULT_BUFFER_POSITIONS))
+        {
+            for (int i = 1; i < args.length; ++i)
+            {
+                try (BufferedReader in = Files.newBufferedReader(Paths.get(args[i])))
+                {
+                    String line;
+                    while ((line = in.readLine()) != null)
+                    {
+                        addGame(writer, line.trim());
+                    }
+                }
+            }
+            long unique = writer.finish();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%,d positions added, %,d unique after folding symmetries (%.1f%%), %.1f s%n",
+                    writer.getAdded(), unique, 100.0 * unique / Math.max(1, writer.getAdded()), seconds);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An error has occurred while building the index.");
+        }
+    }
+
+    /**
+     * Replays a game and adds each of its positions. Lines which are not valid 8x8 games are ignored.
+     */
+    private static void addGame(Writer writer, String line) throws IOException
+    {
+        if (line.isEmpty() || line.startsWith("#")) return;
+
+        String [] tokens = line.split("\\s+");
+        try
+        {
+            Reversi game = new Reversi(Integer.parseInt(tokens[0]), Integer.parseInt(tokens[1]));
+            if (game.getRows() != Reversi.DIM || game.getCols() != Reversi.DIM) return;
+
+            writer.add(Position.of(game));
+            for (int i = 2; i + 1 < tokens.length; i += 2)
+            {
+                game.makeMove(Integer.parseInt(tokens[i]), Integer.parseInt(tokens[i + 1]));
+                writer.add(Position.of(game));
+            }
+        }
+        catch (ReversiException | RuntimeException e)
+        {
+            // the positions up to the bad move are still good
+        }
+    }
+
+    /**
+     * Gets the number of distinct positions in the index.
+     *
+     * @return The number of positions.
+     */
+    public long size()
+    {
+        return size;
+    }
+
+    /**
+     * Checks whether a position, or any rotation or reflection of it, is in the index.
+     *
+     * @param position The position, which must be 8x8.
+     *
+     * @return Whether the position is in the index.
+     */
+    public boolean contains(Position position)
+    {
+        Position canonical = Symmetry.canonical(checkSize(position));
+        long high = canonical.getPlayer1Word(0);
+        long low = canonical.getPlayer2Word(0);
+        if (!bloom.mightContain(high, low)) return false;
+
+        long lo = 0;
+        long hi = size - 1;
+        while (lo <= hi)
+        {
+            long mid = (lo + hi) >>> 1;
+            int compare = compare(high(mid), low(mid), high, low);
+            if (compare < 0) lo = mid + 1;
+            else if (compare > 0) hi = mid - 1;
+            else return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets a position by its place in the sorted order.
+     *
+     * @param index The index, from 0 to {@link #size()} - 1.
+     *
+     * @return The canonical position.
+     */
+    public Position get(long index)
+    {
+        return Position.fromBits(high(index), low(index));
+    }
+
+    /**
+     * Closes the positions file.
+     *
+     * @throws IOException If the file cannot be closed.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Reads the first half of a record.
+     */
+    private long high(long index)
+    {
+        return segments[(int) (index / SEGMENT_RECORDS)].getLong((int) (index % SEGMENT_RECORDS) * RECORD_BYTES);
+    }
+
+    /**
+     * Reads the second half of a record.
+     */
+    private long low(long index)
+    {
+        return segments[(int) (index / SEGMENT_RECORDS)].getLong((int) (index % SEGMENT_RECORDS) * RECORD_BYTES + 8);
+    }
+
+    /**
+     * Compares two keys as unsigned 128-bit numbers, which is the same order as {@link Position#compareTo}.
+     */
+    private static int compare(long high1, long low1, long high2, long low2)
+    {
+        int compare = Long.compareUnsigned(high1, high2);
+        return compare != 0 ? compare : Long.compareUnsigned(low1, low2);
+    }
+
+    /**
+     * Makes sure a position is 8x8, which is the only size the index stores.
+     */
+    private static Position checkSize(Position position)
+    {
+        if (position.getRows() != Reversi.DIM || position.getCols() != Reversi.DIM)
+        {
+            throw new IllegalArgumentException("Only " + Reversi.DIM + "x" + Reversi.DIM + " positions can be indexed");
+        }
+        return position;
+    }
+
+    /**
+     * Builds a {@link DedupIndex} from any number of positions using bounded memory.
+     */
+    public static class Writer implements Closeable
+    {
+        /** the index directory. */
+        private final Path directory;
+        /** the buffered keys, two longs per position. */
+        private final long [] buffer;
+        /** the number of longs in use in the buffer. */
+        private int buffered;
+        /** the run files spilled so far. */
+        private final List<Path> runs = new ArrayList<>();
+        /** the number of positions added. */
+        private long added;
+        /** the number of positions written to run files (after de-duplicating each run). */
+        private long spilled;
+        /** whether the index has been finished. */
+        private boolean finished;
+
+        /**
+         * Starts building an index.
+         *
+         * @param directory The index directory, which is created if needed.
+         * @param bufferPositions The number of positions held in memory before spilling a run.
+         *
+         * @throws IOException If the directory cannot be created.
+         */
+        public Writer(Path directory, int bufferPositions) throws IOException
+        {
+            this.directory = Files.createDirectories(directory);
+            this.buffer = new long[2 * bufferPositions];
+        }
+
+        /**
+         * Adds a position. Positions which are rotations or reflections of each other count as the same.
+         *
+         * @param position The position, which must be 8x8.
+         *
+         * @throws IOException If a run file cannot be written.
+         */
+        public void add(Position position) throws IOException
+        {
+            Position canonical = Symmetry.canonical(checkSize(position));
+            buffer[buffered++] = canonical.getPlayer1Word(0);
+            buffer[buffered++] = canonical.getPlayer2Word(0);
+            ++added;
+            if (buffered == buffer.length) spill();
+        }
+
+        /**
+         * Gets the number of positions added so far, duplicates included.
+         *
+         * @return The number of positions.
+         */
+        public long getAdded()
+        {
+            return added;
+        }
+
+        /**
+         * Merges every run into the final index and writes its bloom filter.
+         *
+         * @return The number of distinct positions in the index.
+         *
+         * @throws IOException If the index cannot be written.
+         */
+        public long finish() throws IOException
+        {
+            if (buffered > 0 || runs.isEmpty()) spill();
+
+            BloomFilter bloom = new BloomFilter(spilled, BLOOM_FALSE_POSITIVES);
+            PriorityQueue<Run> queue = new PriorityQueue<>();
+            long unique = 0;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(directory.resolve(POSITIONS_FILE)), 1 << 16)))
+            {
+                for (Path run : runs)
+                {
+                    Run cursor = new Run(run);
+                    if (cursor.advance()) queue.add(cursor);
+                    else cursor.close();
+                }
+
+                boolean first = true;
+                long lastHigh = 0;
+                long lastLow = 0;
+                while (!queue.isEmpty())
+                {
+                    Run run = queue.poll();
+                    if (first || run.high != lastHigh || run.low != lastLow)
+                    {
+                        out.writeLong(run.high);
+                        out.writeLong(run.low);
+                        bloom.add(run.high, run.low);
+                        lastHigh = run.high;
+                        lastLow = run.low;
+                        first = false;
+                        ++unique;
+                    }
+                    if (run.advance()) queue.add(run);
+                    else run.close();
+                }
+            }
+            finally
+            {
+                for (Run run : queue)
+                {
+                    run.close();
+                }
+            }
+
+            bloom.save(directory.resolve(BLOOM_FILE));
+            for (Path run : runs)
+            {
+                Files.deleteIfExists(run);
+            }
+            runs.clear();
+            finished = true;
+            return unique;
+        }
+
+        /**
+         * Removes any run files left behind if the writer was not finished.
+         *
+         * @throws IOException If a run file cannot be deleted.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            if (!finished)
+            {
+                for (Path run : runs)
+                {
+                    Files.deleteIfExists(run);
+                }
+            }
+        }
+
+        /**
+         * Sorts the buffer, drops duplicates and writes it out as a run.
+         */
+        private void spill() throws IOException
+        {
+            sortPairs(buffer, 0, buffered / 2 - 1);
+            Path run = directory.resolve("run-" + runs.size() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(run), 1 << 16)))
+            {
+                for (int i = 0; i < buffered; i += 2)
+                {
+                    if (i > 0 && buffer[i] == buffer[i - 2] && buffer[i + 1] == buffer[i - 1]) continue;
+                    out.writeLong(buffer[i]);
+                    out.writeLong(buffer[i + 1]);
+                    ++spilled;
+                }
+            }
+            runs.add(run);
+            buffered = 0;
+        }
+
+        /**
+         * Sorts pairs of longs (as unsigned 128-bit numbers) with a quicksort, recursing into the smaller side.
+         *
+         * @param pairs The pairs, stored high then low.
+         * @param left The first pair to sort.
+         * @param right The last pair to sort.
+         */
+        private static void sortPairs(long [] pairs, int left, int right)
+        {
+            while (right - left > 16)
+            {
+                int middle = (left + right) >>> 1;
+                long pivotHigh = pairs[2 * middle];
+                long pivotLow = pairs[2 * middle + 1];
+                int i = left;
+                int j = right;
+                while (i <= j)
+                {
+                    while (compare(pairs[2 * i], pairs[2 * i + 1], pivotHigh, pivotLow) < 0) ++i;
+                    while (compare(pairs[2 * j], pairs[2 * j + 1], pivotHigh, pivotLow) > 0) --j;
+                    if (i <= j) swap(pairs, i++, j--);
+                }
+                if (j - left < right - i)
+                {
+                    sortPairs(pairs, left, j);
+                    left = i;
+                }
+                else
+                {
+                    sortPairs(pairs, i, right);
+                    right = j;
+                }
+            }
+
+            // finish small ranges with an insertion sort
+            for (int i = left + 1; i <= right; ++i)
+            {
+                for (int j = i; j > left &&
+                        compare(pairs[2 * j - 2], pairs[2 * j - 1], pairs[2 * j], pairs[2 * j + 1]) > 0; --j)
+                {
+                    swap(pairs, j, j - 1);
+                }
+            }
+        }
+
+        /**
+         * Swaps two pairs.
+         */
+        private static void swap(long [] pairs, int a, int b)
+        {
+            long high = pairs[2 * a];
+            long low = pairs[2 * a + 1];
+            pairs[2 * a] = pairs[2 * b];
+            pairs[2 * a + 1] = pairs[2 * b + 1];
+            pairs[2 * b] = high;
+            pairs[2 * b + 1] = low;
+        }
+    }
+
+    /**
+     * A cursor over a run file during the merge, ordered by its current key.
+     */
+    private static final class Run implements Comparable<Run>, Closeable
+    {
+        /** the run file. */
+        private final DataInputStream in;
+        /** the first half of the current key. */
+        private long high;
+        /** the second half of the current key. */
+        private long low;
+
+        /**
+         * Opens a run file.
+         */
+        Run(Path file) throws IOException
+        {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        }
+
+        /**
+         * Reads the next key.
+         *
+         * @return False if the run is exhausted.
+         */
+        boolean advance() throws IOException
+        {
+            try
+            {
+                high = in.readLong();
+                low = in.readLong();
+                return true;
+            }
+            catch (EOFException eofe)
+            {
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run other)
+        {
+            return compare(high, low, other.high, other.low);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            in.close();
+        }
+    }
+}
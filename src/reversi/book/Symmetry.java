@@ -0,0 +1,300 @@
+package reversi.book;
+
+import reversi.*;
+
+
+/**
+ * The symmetries of a Reversi board and the canonical form they define. A square board has eight symmetries (the
+ * rotations and reflections of a square); a board with rows != cols only keeps the four which do not swap its
+ * dimensions ({@link #IDENTITY}, {@link #FLIP_VERTICAL}, {@link #MIRROR} and {@link #ROTATE_180}).<br><br>
+ *
+ * 8x8 positions are transformed with bit twiddling on the 64-bit bitboards; every other size falls back to moving
+ * cells one at a time. Each symmetry moves the contents of cell (row, col) to {@link #transformCell}.
+ *
+ * @author Kevin Becker
+ */
+public final class Symmetry
+{
+    /** leaves the board alone: (r, c) -> (r, c). */
+    public static final int IDENTITY = 0;
+    /** reflects along the main diagonal: (r, c) -> (c, r). */
+    public static final int TRANSPOSE = 1;
+    /** reverses the order of the rows: (r, c) -> (n-1-r, c). */
+    public static final int FLIP_VERTICAL = 2;
+    /** reverses the order of the columns: (r, c) -> (r, n-1-c). */
+    public static final int MIRROR = 3;
+    /** turns the board half way around: (r, c) -> (n-1-r, n-1-c). */
+    public static final int ROTATE_180 = 4;
+    /** turns the board a quarter clockwise: (r, c) -> (c, n-1-r). */
+    public static final int ROTATE_90 = 5;
+    /** turns the board a quarter counter-clockwise: (r, c) -> (n-1-c, r). */
+    public static final int ROTATE_270 = 6;
+    /** reflects along the anti-diagonal: (r, c) -> (n-1-c, n-1-r). */
+    public static final int ANTI_TRANSPOSE = 7;
+
+    /** the number of symmetries of a square board. */
+    public static final int COUNT = 8;
+
+    /** the symmetries which keep the dimensions of a non-square board. */
+    private static final int [] RECTANGLE_SYMMETRIES = {IDENTITY, FLIP_VERTICAL, MIRROR, ROTATE_180};
+
+    /**
+     * The class only holds static helpers.
+     */
+    private Symmetry()
+    {
+    }
+
+    /**
+     * Checks whether a symmetry can be applied to a board of the given size.
+     *
+     * @param symmetry The symmetry.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     *
+     * @return Whether the board keeps its dimensions under the symmetry.
+     */
+    public static boolean appliesTo(int symmetry, int rows, int cols)
+    {
+        return rows == cols || symmetry == IDENTITY || symmetry == FLIP_VERTICAL || symmetry == MIRROR ||
+                symmetry == ROTATE_180;
+    }
+
+    /**
+     * Gets the symmetry which undoes another.
+     *
+     * @param symmetry The symmetry.
+     *
+     * @return Its inverse.
+     */
+    public static int inverse(int symmetry)
+    {
+        // everything except the quarter turns is its own inverse
+        if (symmetry == ROTATE_90) return ROTATE_270;
+        if (symmetry == ROTATE_270) return ROTATE_90;
+        return symmetry;
+    }
+
+    /**
+     * Finds where a symmetry moves a cell.
+     *
+     * @param symmetry The symmetry.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param row The row of the cell.
+     * @param col The column of the cell.
+     *
+     * @return The new cell, packed as row * cols + col.
+     */
+    public static int transformCell(int symmetry, int rows, int cols, int row, int col)
+    {
+        int lastRow = rows - 1;
+        int lastCol = cols - 1;
+        switch (symmetry)
+        {
+            case TRANSPOSE:
+                return col * cols + row;
+            case FLIP_VERTICAL:
+                return (lastRow - row) * cols + col;
+            case MIRROR:
+                return row * cols + (lastCol - col);
+            case ROTATE_180:
+                return (lastRow - row) * cols + (lastCol - col);
+            case ROTATE_90:
+                return col * cols + (lastRow - row);
+            case ROTATE_270:
+                return (lastCol - col) * cols + row;
+            case ANTI_TRANSPOSE:
+                return (lastCol - col) * cols + (lastRow - row);
+            default:
+                return row * cols + col;
+        }
+    }
+
+    /**
+     * Applies a symmetry to a position.
+     *
+     * @param position The position.
+     * @param symmetry The symmetry, which must apply to the position's dimensions.
+     *
+     * @return The transformed position.
+     */
+    public static Position transform(Position position, int symmetry)
+    {
+        int rows = position.getRows();
+        int cols = position.getCols();
+        if (!appliesTo(symmetry, rows, cols))
+        {
+            throw new IllegalArgumentException("Symmetry " + symmetry + " does not apply to " + rows + "x" + cols);
+        }
+
+        if (rows == Reversi.DIM && cols == Reversi.DIM)
+        {
+            return Position.fromBits(transform(position.getPlayer1Word(0), symmetry),
+                    transform(position.getPlayer2Word(0), symmetry));
+        }
+
+        // the general case moves every disc one at a time
+        long [] player1 = new long[position.getWordCount()];
+        long [] player2 = new long[player1.length];
+        for (int row = 0, bit = 0; row < rows; ++row)
+        {
+            for (int col = 0; col < cols; ++col, ++bit)
+            {
+                long mask = 1L << bit;
+                if (((position.getPlayer1Word(bit >>> 6) | position.getPlayer2Word(bit >>> 6)) & mask) == 0)
+                {
+                    continue;
+                }
+                int to = transformCell(symmetry, rows, cols, row, col);
+                if ((position.getPlayer1Word(bit >>> 6) & mask) != 0) player1[to >>> 6] |= 1L << to;
+                else player2[to >>> 6] |= 1L << to;
+            }
+        }
+        return Position.fromBits(rows, cols, player1, player2);
+    }
+
+    /**
+     * Applies a symmetry to an 8x8 bitboard (bit row * 8 + col).
+     *
+     * @param bits The bitboard.
+     * @param symmetry The symmetry.
+     *
+     * @return The transformed bitboard.
+     */
+    public static long transform(long bits, int symmetry)
+    {
+        switch (symmetry)
+        {
+            case TRANSPOSE:
+                return transpose(bits);
+            case FLIP_VERTICAL:
+                return flipVertical(bits);
+            case MIRROR:
+                return mirror(bits);
+            case ROTATE_180:
+                return Long.reverse(bits);
+            case ROTATE_90:
+                return mirror(transpose(bits));
+            case ROTATE_270:
+                return flipVertical(transpose(bits));
+            case ANTI_TRANSPOSE:
+                return Long.reverse(transpose(bits));
+            default:
+                return bits;
+        }
+    }
+
+    /**
+     * Finds the canonical form of a position: the smallest (by {@link Position#compareTo}) of all of its symmetric
+     * images. Positions which are rotations or reflections of each other share a canonical form.
+     *
+     * @param position The position.
+     *
+     * @return The canonical form.
+     */
+    public static Position canonical(Position position)
+    {
+        return transform(position, canonicalSymmetry(position));
+    }
+
+    /**
+     * Finds the symmetry which takes a position to its canonical form.
+     *
+     * @param position The position.
+     *
+     * @return The symmetry.
+     */
+    public static int canonicalSymmetry(Position position)
+    {
+        int rows = position.getRows();
+        int cols = position.getCols();
+
+        if (rows == Reversi.DIM && cols == Reversi.DIM)
+        {
+            // compare the raw bitboards, which avoids building seven throwaway positions
+            long player1 = position.getPlayer1Word(0);
+            long player2 = position.getPlayer2Word(0);
+            int best = IDENTITY;
+            long bestPlayer1 = player1;
+            long bestPlayer2 = player2;
+            for (int symmetry = 1; symmetry < COUNT; ++symmetry)
+            {
+                long candidate1 = transform(player1, symmetry);
+                int compare = Long.compareUnsigned(candidate1, bestPlayer1);
+                if (compare > 0) continue;
+
+                long candidate2 = transform(player2, symmetry);
+                if (compare < 0 || Long.compareUnsigned(candidate2, bestPlayer2) < 0)
+                {
+                    best = symmetry;
+                    bestPlayer1 = candidate1;
+                    bestPlayer2 = candidate2;
+                }
+            }
+            return best;
+        }
+
+        int best = IDENTITY;
+        Position bestPosition = position;
+        for (int symmetry : rows == cols ? allSymmetries() : RECTANGLE_SYMMETRIES)
+        {
+            if (symmetry == IDENTITY) continue;
+
+            Position candidate = transform(position, symmetry);
+            if (candidate.compareTo(bestPosition) < 0)
+            {
+                best = symmetry;
+                bestPosition = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets every symmetry of a square board.
+     */
+    private static int [] allSymmetries()
+    {
+        int [] symmetries = new int[COUNT];
+        for (int i = 0; i < COUNT; ++i)
+        {
+            symmetries[i] = i;
+        }
+        return symmetries;
+    }
+
+    /**
+     * Reverses the order of the rows of a bitboard. Each row is one byte.
+     */
+    private static long flipVertical(long bits)
+    {
+        return Long.reverseBytes(bits);
+    }
+
+    /**
+     * Reverses the order of the columns of a bitboard by reversing the bits within each byte.
+     */
+    private static long mirror(long bits)
+    {
+        bits = ((bits >>> 1) & 0x5555555555555555L) | ((bits & 0x5555555555555555L) << 1);
+        bits = ((bits >>> 2) & 0x3333333333333333L) | ((bits & 0x3333333333333333L) << 2);
+        bits = ((bits >>> 4) & 0x0f0f0f0f0f0f0f0fL) | ((bits & 0x0f0f0f0f0f0f0f0fL) << 4);
+        return bits;
+    }
+
+    /**
+     * Swaps rows and columns of a bitboard with three rounds of delta swaps (2x2, then 4x4 blocks, then halves).
+     */
+    private static long transpose(long bits)
+    {
+        long t;
+        t = 0x0f0f0f0f00000000L & (bits ^ (bits << 28));
+        bits ^= t ^ (t >>> 28);
+        t = 0x3333000033330000L & (bits ^ (bits << 14));
+        bits ^= t ^ (t >>> 14);
+        t = 0x5500550055005500L & (bits ^ (bits << 7));
+        bits ^= t ^ (t >>> 7);
+        return bits;
+    }
+}
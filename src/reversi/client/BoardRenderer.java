@@ -0,0 +1,390 @@
+package reversi.client;
+
+import reversi.*;
+
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.util.Arrays;
+
+
+/**
+ * Draws the client's board to the terminal. The board is laid out the same way as {@link Reversi#toString()}, but
+ * it is built in a buffer which is allocated once and reused for every draw.<br><br>
+ *
+ * On a terminal which understands ANSI escape codes the whole board is only drawn once; after that each update moves
+ * the cursor straight to the cells which changed (the placed disc and the discs it flipped) and rewrites just those.
+ * The flipped discs are found by walking out from the placed disc, so an update costs as much as the move did and not
+ * the size of the board. The client's messages go in the area below the board, through {@link #println(String)} and
+ * {@link #prompt(String)}, which count the lines they take; a message which would scroll the screen (and so move
+ * every cell away from its cursor position) first redraws the board, which clears the messages. When the output is
+ * not a terminal, the board does not fit on the screen (cursor positions would be off it) or the reversi.render
+ * system property is "plain", the renderer falls back to printing the whole board every time.
+ *
+ * @author Kevin Becker
+ */
+class BoardRenderer
+{
+    /** the escape sequence which starts every ANSI control code. */
+    private static final String CSI = "\u001b[";
+
+    /** the size assumed for a terminal which does not say, in lines and columns. */
+    private static final int [] DEFAULT_TERMINAL = { 24, 80 };
+
+    /** the fewest lines below the board worth using ANSI mode for: a move, a prompt, a hint and the prompt again. */
+    private static final int MESSAGE_LINES = 4;
+
+    /** the row steps of the eight directions. */
+    private static final int [] ROW_STEPS = { -1, -1, -1, 0, 0, 1, 1, 1 };
+
+    /** the column steps of the eight directions. */
+    private static final int [] COL_STEPS = { -1, 0, 1, -1, 1, -1, 0, 1 };
+
+    /** the game being drawn. */
+    private final Board game;
+
+    /** where the board is drawn. */
+    private final PrintWriter out;
+
+    /** whether ANSI cursor positioning is used. */
+    private final boolean ansi;
+
+    /** the lines of the terminal below the board. */
+    private final int freeLines;
+
+    /** the width of the terminal in columns. */
+    private final int columns;
+
+    /** the lines taken by messages since the area below the board was last cleared. */
+    private int messageLines;
+
+    /** the symbol last drawn in each cell (row-major), so updates know what changed. */
+    private final char [] drawn;
+
+    /** the reusable output buffer. */
+    private char [] buffer;
+
+    /** the number of chars in use in the buffer. */
+    private int length;
+
+    /**
+     * Creates a renderer for a game which draws to standard output, choosing the ANSI or plain mode automatically.
+     *
+     * @param game The game to draw.
+     */
+    BoardRenderer(Board game)
+    {
+        this(game, System.out, useAnsi() && fitsTerminal(game));
+    }
+
+    /**
+     * Creates a renderer for a game.
+     *
+     * @param game The game to draw.
+     * @param stream Where to draw it.
+     * @param ansi Whether to use ANSI cursor positioning.
+     */
+    BoardRenderer(Board game, PrintStream stream, boolean ansi)
+    {
+        this.game = game;
+        this.out = new PrintWriter(new OutputStreamWriter(stream), false);
+        this.ansi = ansi;
+        this.freeLines = environmentInt("LINES", DEFAULT_TERMINAL[0]) - game.getRows() - 1;
+        this.columns = environmentInt("COLUMNS", DEFAULT_TERMINAL[1]);
+        this.drawn = new char[game.getRows() * game.getCols()];
+        this.buffer = new char[fullBoardLength() + 64];
+    }
+
+    /**
+     * Decides whether standard output can take ANSI escape codes.
+     *
+     * @return Whether to use ANSI mode.
+     */
+    private static boolean useAnsi()
+    {
+        String mode = System.getProperty("reversi.render");
+        if (mode != null) return mode.equalsIgnoreCase("ansi");
+
+        String term = System.getenv("TERM");
+        return System.console() != null && term != null && !term.equals("dumb");
+    }
+
+    /**
+     * Decides whether the whole board fits on the terminal, with room for messages below it. Neither the column
+     * header nor any row may wrap, since that would push the rows below it down a line. The size is taken from the
+     * LINES and COLUMNS environment variables, or the usual 24x80 if they are not set.
+     *
+     * @param game The game to draw.
+     *
+     * @return Whether every cell has a position on the screen.
+     */
+    private static boolean fitsTerminal(Board game)
+    {
+        int lines = environmentInt("LINES", DEFAULT_TERMINAL[0]);
+        int columns = environmentInt("COLUMNS", DEFAULT_TERMINAL[1]);
+        return game.getRows() + 1 + MESSAGE_LINES <= lines &&
+                Math.max(headerWidth(game), rowWidth(game, game.getRows() - 1)) <= columns;
+    }
+
+    /**
+     * Reads a positive number from an environment variable.
+     *
+     * @param name The variable.
+     * @param otherwise The value if it is not set or not a positive number.
+     */
+    private static int environmentInt(String name, int otherwise)
+    {
+        try
+        {
+            int value = Integer.parseInt(System.getenv().getOrDefault(name, ""));
+            return value > 0 ? value : otherwise;
+        }
+        catch (NumberFormatException nfe)
+        {
+            return otherwise;
+        }
+    }
+
+    /**
+     * Draws the whole board. In ANSI mode the screen is cleared first and the cursor is left below the board.
+     */
+    void drawFull()
+    {
+        length = 0;
+        messageLines = 0;
+        if (ansi)
+        {
+            // clear the screen and go to the top left corner
+            append(CSI).append("2J").append(CSI).append('H');
+        }
+
+        // build the top row with column numbers
+        append(' ');
+        for (int c = 0; c < game.getCols(); ++c)
+        {
+            append(' ').append(c).append(' ');
+        }
+        append('\n');
+
+        // build remaining rows with row numbers and column values
+        for (int r = 0; r < game.getRows(); ++r)
+        {
+            append(r);
+            for (int c = 0; c < game.getCols(); ++c)
+            {
+                char symbol = game.getCell(r, c).getSymbol();
+                drawn[r * game.getCols() + c] = symbol;
+                append('[').append(symbol).append(']');
+            }
+            append('\n');
+        }
+        if (!ansi)
+        {
+            // keep a blank line between boards, like println of the game did
+            append('\n');
+        }
+        flush();
+    }
+
+    /**
+     * Brings the drawing up to date with the game after a move. In ANSI mode only the placed disc and the discs it
+     * flipped are redrawn, then the area below the board is cleared for the next messages; otherwise the whole board
+     * is printed again.
+     *
+     * @param row The row of the move that was made.
+     * @param col The column of the move that was made.
+     */
+    void update(int row, int col)
+    {
+        if (!ansi)
+        {
+            drawFull();
+            return;
+        }
+
+        length = 0;
+        messageLines = 0;
+        redraw(row, col);
+        // the flipped discs in each direction are a run starting next to the placed one
+        for (int d = 0; d < ROW_STEPS.length; ++d)
+        {
+            int r = row + ROW_STEPS[d];
+            int c = col + COL_STEPS[d];
+            while (r >= 0 && r < game.getRows() && c >= 0 && c < game.getCols() && redraw(r, c))
+            {
+                r += ROW_STEPS[d];
+                c += COL_STEPS[d];
+            }
+        }
+        // park the cursor below the board and clear the old messages
+        moveCursor(game.getRows() + 2, 1);
+        append(CSI).append('J');
+        flush();
+    }
+
+    /**
+     * Prints a line of the client's below the board.
+     *
+     * @param message The line.
+     */
+    void println(String message)
+    {
+        makeRoom(message);
+        out.println(message);
+        out.flush();
+    }
+
+    /**
+     * Prints a prompt below the board, to be answered on the same line. The answer's newline is counted as the end of
+     * the prompt's line.
+     *
+     * @param message The prompt.
+     */
+    void prompt(String message)
+    {
+        makeRoom(message);
+        out.print(message);
+        out.flush();
+    }
+
+    /**
+     * In ANSI mode, redraws the board if a message would not fit below it without scrolling the screen, then counts
+     * the lines the message takes (more than one if it wraps).
+     */
+    private void makeRoom(String message)
+    {
+        if (!ansi) return;
+
+        int lines = Math.max(1, (message.length() + columns - 1) / columns);
+        // the last line stays free for the cursor, which would scroll the screen if it went below it
+        if (messageLines + lines >= freeLines) drawFull();
+        messageLines += lines;
+    }
+
+    /**
+     * Redraws a cell if it has changed since it was drawn.
+     *
+     * @return Whether the cell had changed.
+     */
+    private boolean redraw(int r, int c)
+    {
+        char symbol = game.getCell(r, c).getSymbol();
+        int cell = r * game.getCols() + c;
+        if (drawn[cell] == symbol) return false;
+
+        drawn[cell] = symbol;
+        // the header is line 1 and each cell is 3 columns wide after the row label
+        moveCursor(r + 2, digits(r) + 3 * c + 2);
+        append(symbol);
+        return true;
+    }
+
+    /**
+     * Appends an ANSI code which moves the cursor to a (1-based) line and column.
+     */
+    private void moveCursor(int line, int column)
+    {
+        append(CSI).append(line).append(';').append(column).append('H');
+    }
+
+    /**
+     * Writes the buffer out.
+     */
+    private void flush()
+    {
+        out.write(buffer, 0, length);
+        out.flush();
+    }
+
+    /**
+     * Appends a char to the buffer, growing it if a large update does not fit.
+     */
+    private BoardRenderer append(char c)
+    {
+        if (length == buffer.length)
+        {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        buffer[length++] = c;
+        return this;
+    }
+
+    /**
+     * Appends a string of ANSI control characters to the buffer.
+     */
+    private BoardRenderer append(String s)
+    {
+        for (int i = 0; i < s.length(); ++i)
+        {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a non-negative number to the buffer without creating a string for it.
+     */
+    private BoardRenderer append(int n)
+    {
+        int digits = digits(n);
+        for (int i = 0; i < digits; ++i)
+        {
+            append('0');
+        }
+        for (int i = length - 1; i >= length - digits; --i)
+        {
+            buffer[i] = (char) ('0' + n % 10);
+            n /= 10;
+        }
+        return this;
+    }
+
+    /**
+     * Counts the digits of a non-negative number.
+     */
+    private static int digits(int n)
+    {
+        int digits = 1;
+        while (n >= 10)
+        {
+            n /= 10;
+            ++digits;
+        }
+        return digits;
+    }
+
+    /**
+     * Computes the number of chars in a full drawing of the board (without escape codes).
+     */
+    private int fullBoardLength()
+    {
+        int total = headerWidth(game) + 1;
+        for (int r = 0; r < game.getRows(); ++r)
+        {
+            total += rowWidth(game, r) + 1;
+        }
+        return total;
+    }
+
+    /**
+     * Computes the width of the column header: a space, then each column number with a space either side.
+     */
+    private static int headerWidth(Board game)
+    {
+        int width = 1;
+        for (int c = 0; c < game.getCols(); ++c)
+        {
+            width += 2 + digits(c);
+        }
+        return width;
+    }
+
+    /**
+     * Computes the width of a row: its number, then three chars per cell.
+     */
+    private static int rowWidth(Board game, int r)
+    {
+        return digits(r) + 3 * game.getCols();
+    }
+}
@@ -0,0 +1,450 @@
+package reversi.client;
+
+import reversi.*;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Plays many games against a {@link reversi.server.ReversiBackend} (directly or through a
+ * {@link reversi.gateway.ReversiGateway}) with bots that move at random, and measures how many games per second get
+ * played. Each bot plays its games in one of three ways:<br><br><em>
+ *     fresh => a new connection for every game, as clients did before connections could be kept.<br>
+ *     persistent => one connection, sending NEXT_GAME after each game.<br>
+ *     queued => one connection, sending QUEUE once so the server goes from game to game without waiting.</em><br><br>
+ * A persistent or queued bot whose server stops offering another game (CONNECT without NEXT_GAME), or closes the
+ * connection between games, connects again for the rest. A bot whose connection is closed before its game begins
+ * (a backend with nobody for it to play gives up after a few seconds) connects again for the same game.<br><br>
+ * Given no mode, all three are run in turn and compared.
+ *
+ * @author Kevin Becker
+ */
+public class LoadGenerator implements ReversiProtocol
+{
+    /** how long a bot waits for the server before giving up, in milliseconds. */
+    private static final int READ_TIMEOUT = 10_000;
+
+    /** how often a bot waiting for a game checks whether anyone is left to play it, in milliseconds. */
+    private static final int POLL_INTERVAL = 100;
+
+    /** how many times in a row a bot connects again after being closed before its game began. */
+    private static final int MAX_RECONNECTS = 10;
+
+    /** the ways a bot can play its games. */
+    private static final String [] MODES = { "fresh", "persistent", "queued" };
+
+    /** the server. */
+    private final InetSocketAddress server;
+
+    /** the number of bots playing at once (an even number, since they play each other). */
+    private final int bots;
+
+    /** the number of games each bot plays. */
+    private final int gamesPerBot;
+
+    /** the number of games the bots finished, counting each game once for each of its two bots. */
+    private final LongAdder botGames = new LongAdder();
+
+    /** the number of moves the bots made. */
+    private final LongAdder moves = new LongAdder();
+
+    /** the time the bots spent connecting and waiting for CONNECT, in nanoseconds. */
+    private final LongAdder setupNanos = new LongAdder();
+
+    /** the number of bots which stopped early because of an error or a server which stopped answering. */
+    private final AtomicLong failures = new AtomicLong();
+
+    /** the number of bots which stopped early because every other bot had played all its games. */
+    private final AtomicLong stranded = new AtomicLong();
+
+    /** the number of bots which still have games to play. */
+    private final AtomicInteger playing = new AtomicInteger();
+
+    /** how long the last run took, in seconds. */
+    private double seconds;
+
+    /**
+     * Creates a load generator.
+     *
+     * @param server The server.
+     * @param bots The number of bots playing at once.
+     * @param gamesPerBot The number of games each bot plays.
+     */
+    public LoadGenerator(InetSocketAddress server, int bots, int gamesPerBot)
+    {
+        this.server = server;
+        this.bots = bots;
+        this.gamesPerBot = gamesPerBot;
+    }
+
+    /**
+     * Runs the load generator.
+     *
+     * @param args The arguments that are used for the load generator.
+     *             The arguments should have the following:<br><br><em>
+     *             0 => The host of the server.<br>
+     *             1 => The port of the server.<br>
+     *             2 => The number of bots playing at once (even).<br>
+     *             3 => The number of games each bot plays.<br>
+     *             4 => (optional) fresh, persistent or queued (all three by default).</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length != 4 && args.length != 5)
+        {
+            System.out.println("Invalid number of arguments.\n" +
+                    "Usage: java LoadGenerator host port bots games_per_bot [fresh|persistent|queued]");
+            System.exit(1);
+        }
+
+        InetSocketAddress server = new InetSocketAddress(args[0], Integer.parseInt(args[1]));
+        int bots = Integer.parseInt(args[2]);
+        int gamesPerBot = Integer.parseInt(args[3]);
+        if (bots < 2 || bots % 2 != 0 || gamesPerBot < 1)
+        {
+            System.out.println("The number of bots must be even and at least 2, and each must play at least one game.");
+            System.exit(1);
+        }
+
+        String [] modes = args.length == 5 ? new String[] { args[4] } : MODES;
+        double baseline = 0;
+        for (String mode : modes)
+        {
+            LoadGenerator generator = new LoadGenerator(server, bots, gamesPerBot);
+            double rate = generator.run(mode);
+            if (baseline == 0) baseline = rate;
+            System.out.printf("%-10s %,8d games in %s: %,9.1f games/s, %,10.0f moves/s, %6.2f ms setup per game" +
+                            "%s%s%s%n", mode, generator.games(), generator.elapsed(), rate,
+                    generator.moves.sum() / generator.seconds, generator.setupMillisPerGame(),
+                    mode.equals(modes[0]) ? "" : String.format(" (%.2fx)", rate / baseline),
+                    generator.failures.get() == 0 ? "" : ", " + generator.failures.get() + " bots failed",
+                    generator.stranded.get() == 0 ? "" : ", " + generator.stranded.get() + " left without an opponent");
+        }
+    }
+
+    /**
+     * Plays every bot's games and waits for them to finish.
+     *
+     * @param mode fresh, persistent or queued.
+     *
+     * @return The games finished per second.
+     */
+    public double run(String mode)
+    {
+        List<Thread> threads = new ArrayList<>();
+        playing.set(bots);
+        long start = System.nanoTime();
+        for (int i = 0; i < bots; ++i)
+        {
+            SplittableRandom random = new SplittableRandom(i);
+            Thread bot = new Thread(() -> {
+                try
+                {
+                    switch (mode)
+                    {
+                        case "fresh":
+                            playFresh(random);
+                            break;
+                        case "persistent":
+                            playPersistent(random, false);
+                            break;
+                        case "queued":
+                            playPersistent(random, true);
+                            break;
+                        default:
+                            throw new IllegalArgumentException("Unknown mode " + mode);
+                    }
+                }
+                catch (IOException | ReversiException | RuntimeException e)
+                {
+                    failures.incrementAndGet();
+                    System.err.println("Bot failed - " + e);
+                }
+                finally
+                {
+                    playing.decrementAndGet();
+                }
+            }, "reversi-bot-" + i);
+            threads.add(bot);
+            bot.start();
+        }
+
+        for (Thread bot : threads)
+        {
+            try
+            {
+                bot.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        seconds = (System.nanoTime() - start) / 1e9;
+        return games() / seconds;
+    }
+
+    /**
+     * Plays each game on a new connection.
+     */
+    private void playFresh(SplittableRandom random) throws IOException, ReversiException
+    {
+        int played = 0;
+        int reconnects = 0;
+        while (played < gamesPerBot)
+        {
+            try (Connection conn = new Connection(server))
+            {
+                if (!playGame(conn, random, System.nanoTime())) return;
+                ++played;
+                reconnects = 0;
+            }
+            catch (EOFException eofe)
+            {
+                if (++reconnects > MAX_RECONNECTS) throw eofe;
+            }
+        }
+    }
+
+    /**
+     * Plays every game on one connection, asking for each game in turn or queueing them all at once. If the server
+     * will not play another game on the connection, the rest are played on a new one.
+     */
+    private void playPersistent(SplittableRandom random, boolean queue) throws IOException, ReversiException
+    {
+        int played = 0;
+        int reconnects = 0;
+        while (played < gamesPerBot)
+        {
+            try (Connection conn = new Connection(server))
+            {
+                // the server reads the queue with our first move, and plays the rest without asking
+                int left = gamesPerBot - played;
+                if (queue && left > 1) conn.send(QUEUE + " " + (left - 1));
+                for (int game = 0; game < left; ++game)
+                {
+                    try
+                    {
+                        if (!playGame(conn, random, System.nanoTime())) return;
+                    }
+                    catch (EOFException eofe)
+                    {
+                        // closed between games, or before a new connection's first game, so connect again
+                        if (game == 0 && ++reconnects > MAX_RECONNECTS) throw eofe;
+                        break;
+                    }
+                    ++played;
+                    reconnects = 0;
+
+                    if (played == gamesPerBot) conn.send(QUIT);
+                    else if (!conn.nextGameOffered) break;
+                    else if (!queue) conn.send(NEXT_GAME);
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for the server to start a game and plays it to its end, moving at random.
+     *
+     * @param conn The connection.
+     * @param random Chooses the moves.
+     * @param setupStart When the bot began waiting for the game, from {@link System#nanoTime()}.
+     *
+     * @return True if the game was played, false if the bot gave up waiting because no other bot has games left.
+     *
+     * @throws EOFException If the server hung up before the game began.
+     */
+    private boolean playGame(Connection conn, SplittableRandom random, long setupStart)
+            throws IOException, ReversiException
+    {
+        Board board = null;
+        while (true)
+        {
+            String [] message;
+            try
+            {
+                message = read(conn, board == null);
+            }
+            catch (EOFException eofe)
+            {
+                if (board == null) throw eofe;
+                throw new IOException("The server hung up in the middle of a game");
+            }
+            if (message == null)
+            {
+                stranded.incrementAndGet();
+                return false;
+            }
+
+            switch (message[0])
+            {
+                // a CONNECT in the middle of a game means our opponent hung up, and a new game has begun
+                case CONNECT:
+                    board = Board.create(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+                    conn.nextGameOffered = message.length > 3 && NEXT_GAME.equals(message[3]);
+                    if (setupStart != 0) setupNanos.add(System.nanoTime() - setupStart);
+                    setupStart = 0;
+                    break;
+                case MAKE_MOVE:
+                    if (board == null) throw new IOException("The server asked for a move before CONNECT");
+                    int [] valid = board.getValidMoves();
+                    int move = valid[random.nextInt(valid.length)];
+                    conn.send(MOVE + " " + move / board.getCols() + " " + move % board.getCols());
+                    moves.increment();
+                    break;
+                case MOVE_MADE:
+                    board.makeMove(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+                    break;
+                case GAME_WON:
+                case GAME_LOST:
+                case GAME_TIED:
+                    botGames.increment();
+                    return true;
+                default:
+                    throw new IOException("The server sent " + String.join(" ", message));
+            }
+        }
+    }
+
+    /**
+     * Reads a message from the server. A bot waiting for a game gives up once it is the only bot with games left,
+     * since it will never be given an opponent.
+     *
+     * @param conn The connection.
+     * @param waiting Whether the bot is waiting for a game to start.
+     *
+     * @return The message split by spaces, or null if the bot gave up waiting.
+     *
+     * @throws IOException If the server hangs up or does not answer in time.
+     */
+    private String [] read(Connection conn, boolean waiting) throws IOException
+    {
+        long deadline = System.nanoTime() + READ_TIMEOUT * 1_000_000L;
+        while (true)
+        {
+            try
+            {
+                // a whole message arrives at once, so polling while nothing is expected loses nothing
+                return conn.read(waiting ? POLL_INTERVAL : READ_TIMEOUT);
+            }
+            catch (SocketTimeoutException ste)
+            {
+                if (waiting && playing.get() <= 1) return null;
+                if (System.nanoTime() - deadline > 0)
+                {
+                    throw new IOException("The server did not answer within " + READ_TIMEOUT + " ms");
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of games finished in the last run.
+     */
+    private long games()
+    {
+        return botGames.sum() / 2;
+    }
+
+    /**
+     * Formats the length of the last run.
+     */
+    private String elapsed()
+    {
+        return String.format("%.2f s", seconds);
+    }
+
+    /**
+     * Gets the average time a bot spent connecting and waiting for CONNECT, per game it played.
+     */
+    private double setupMillisPerGame()
+    {
+        long finished = botGames.sum();
+        return finished == 0 ? 0 : setupNanos.sum() / 1e6 / finished;
+    }
+
+    /**
+     * A bot's connection to the server.
+     */
+    private static class Connection implements AutoCloseable
+    {
+        /** the socket. */
+        private final Socket socket;
+
+        /** reads from the server. */
+        private final BufferedReader in;
+
+        /** writes to the server. */
+        private final PrintWriter out;
+
+        /** whether the current game's CONNECT offered another game on this connection. */
+        boolean nextGameOffered;
+
+        /**
+         * Connects to the server.
+         *
+         * @param server The server.
+         *
+         * @throws IOException If the server cannot be reached.
+         */
+        Connection(InetSocketAddress server) throws IOException
+        {
+            socket = new Socket();
+            socket.connect(server, READ_TIMEOUT);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out = new PrintWriter(socket.getOutputStream(), true);
+        }
+
+        /**
+         * Reads a message from the server, split by spaces.
+         *
+         * @param timeout How long to wait for it, in milliseconds.
+         *
+         * @throws SocketTimeoutException If no message arrives in time.
+         * @throws EOFException If the server hangs up.
+         * @throws IOException If the message cannot be read.
+         */
+        String [] read(int timeout) throws IOException
+        {
+            socket.setSoTimeout(timeout);
+            String line = in.readLine();
+            if (line == null) throw new EOFException("The server hung up");
+            return line.split(" ");
+        }
+
+        /**
+         * Sends a message to the server.
+         *
+         * @param message The message.
+         */
+        void send(String message)
+        {
+            out.println(message);
+        }
+
+        @Override
+        public void close() throws IOException
+        {
+            socket.close();
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package reversi.client;
 
 import reversi.*;
+import reversi.eval.PatternEvaluator;
+import reversi.search.Ponderer;
+import reversi.search.SearchResult;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
@@ -9,11 +12,16 @@ import java.io.IOException;
 
 import java.net.Socket;
 
+import java.nio.BufferUnderflowException;
+
+import java.util.Base64;
 import java.util.Scanner;
 
 
 /**
- * The ReversiClient is used by an end-user and allows them to play the game of Reversi with another player.
+ * The ReversiClient is used by an end-user and allows them to play the game of Reversi with another player. It can
+ * also let the computer play instead, in which case the computer thinks during the other player's turns too (see
+ * {@link Ponderer}) and says how much that helped at the end of the game.
  *
  * @author Kevin Becker
  */
@@ -23,7 +31,10 @@ public class ReversiClient implements ReversiProtocol
     private static Scanner userIn;
 
     /** The client's dummy game that is just used for output. */
-    private static Reversi clientGame;
+    private static Board clientGame;
+
+    /** Draws the client's game to the screen. */
+    private static BoardRenderer renderer;
 
     /** The connection socket that connects the client and the server. */
     private static Socket conn;
@@ -34,23 +45,65 @@ public class ReversiClient implements ReversiProtocol
     /** The PrintWriter used for communication to the server. */
     private static PrintWriter connOut;
 
+    /** Whether the server said we may ask for another game when this one ends (CONNECT ... NEXT_GAME). */
+    private static boolean nextGameOffered;
+
+    /** Whether we have asked for another game and are waiting for it to begin. */
+    private static boolean waitingForNextGame;
+
+    /** Whether we have asked the server for its board and are waiting for it. */
+    private static boolean resyncPending;
+
+    /** Whether the server asked us to move while we were waiting for its board. */
+    private static boolean moveDeferred;
+
+    /** The number of entries in the computer's transposition table. */
+    private static final int TABLE_ENTRIES = 1 << 20;
+
+    /** How long the computer thinks about each move unless told otherwise, in milliseconds. */
+    private static final long DEFAULT_MOVE_MILLIS = 1000;
+
+    /** The computer player, or null if the user is playing. */
+    private static Ponderer computer;
+
+    /**
+     * How many times in a row the client connects again when the server closes the connection before a game begins
+     * (a backend does after a few seconds with nobody to play, and behind a gateway the next connection may find
+     * someone).
+     */
+    private static final int MAX_RECONNECTS = 60;
+
+    /** The host of the server, for connecting again. */
+    private static String host;
+
+    /** The port of the server, for connecting again. */
+    private static int port;
+
 
     /**
      * Begins execution of the Reversi game between a server and a client.
      * @param args The arguments that are used for the creation of a connection.
      *             The arguments should have the following:<br><br><em>
      *             0 => The location where the host can be found.<br>
-     *             1 => The port where the host can be found.</em>
+     *             1 => The port where the host can be found.<br>
+     *             2 => (optional) computer, to let the computer play.<br>
+     *             3 => (optional) How long the computer thinks about each move, in milliseconds.</em>
      */
     public static void main(String [] args)
     {
-        // if the number of arguments is not strictly 2, we exit because it could cause an issue.
-        if(args.length != 2)
+        // if the arguments aren't a host and port (and maybe the computer's settings) we exit
+        if(args.length < 2 || args.length > 4 || (args.length > 2 && !args[2].equals("computer")))
         {
-            System.out.println("Invalid number of arguments.\nUsage: java ReversiClient host port");
+            System.out.println("Invalid number of arguments.\nUsage: java ReversiClient host port [computer [ms_per_move]]");
             System.exit(1);
         }
 
+        if (args.length > 2)
+        {
+            computer = new Ponderer(PatternEvaluator.createDefault(), TABLE_ENTRIES,
+                    args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_MOVE_MILLIS);
+        }
+
         // this is used when its time to read in for a move
         userIn = new Scanner(System.in);
 
@@ -101,16 +154,56 @@ public class ReversiClient implements ReversiProtocol
      */
     private static void initializeClient(String host, int port) throws IOException, NumberFormatException
     {
-        // creates a new Socket connecting to host: host on port: port
-        conn = new Socket(host, port);
-        // creates a new BufferedReader reading in from the server
-        connIn = new BufferedReader( new InputStreamReader( conn.getInputStream() ) );
-        // creates a new PrintWriter sending to the server
-        connOut = new PrintWriter( conn.getOutputStream(), true );
-        // as soon as it connects it should immediately create the game so we can do that here
-        String [] connectMessage = connIn.readLine().split(" ");
+        ReversiClient.host = host;
+        ReversiClient.port = port;
         // creates the client Reversi game
-        clientGame = new Reversi(Integer.parseInt(connectMessage[1]), Integer.parseInt(connectMessage[2]));
+        startGame(connect());
+    }
+
+    /**
+     * Connects to the server and waits for a game to begin, connecting again (up to {@link #MAX_RECONNECTS} times) if
+     * the server closes the connection first.
+     *
+     * @return The server's CONNECT message, split by spaces.
+     *
+     * @throws IOException If the server can't be reached, or keeps closing the connection.
+     */
+    private static String [] connect() throws IOException
+    {
+        for (int attempt = 0; ; ++attempt)
+        {
+            closeConnection();
+            // creates a new Socket connecting to host: host on port: port
+            conn = new Socket(host, port);
+            // creates a new BufferedReader reading in from the server
+            connIn = new BufferedReader( new InputStreamReader( conn.getInputStream() ) );
+            // creates a new PrintWriter sending to the server
+            connOut = new PrintWriter( conn.getOutputStream(), true );
+            // as soon as it connects it should immediately create the game so we can do that here
+            String connectLine = connIn.readLine();
+            if (connectLine != null) return connectLine.split(" ");
+            if (attempt == MAX_RECONNECTS)
+            {
+                throw new IOException("The server closed the connection before the game began");
+            }
+            System.out.println("Nobody was found to play. Connecting again...");
+        }
+    }
+
+    /**
+     * Creates the client's copy of a new game from the server's CONNECT message.
+     *
+     * @param message The message that was received from the server.
+     */
+    private static void startGame(String [] message)
+    {
+        clientGame = Board.create(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+        renderer = new BoardRenderer(clientGame);
+        nextGameOffered = message.length > 3 && NEXT_GAME.equals(message[3]);
+        waitingForNextGame = false;
+        resyncPending = false;
+        moveDeferred = false;
+        if (computer != null) computer.newGame();
     }
 
     /**
@@ -121,7 +214,18 @@ public class ReversiClient implements ReversiProtocol
     private static void terminateClient() throws IOException
     {
         // closes all of the items
+        if (computer != null) computer.shutdown();
         if (userIn != null) userIn.close();
+        closeConnection();
+    }
+
+    /**
+     * Closes the connection to the server, if there is one.
+     *
+     * @throws IOException If there is an issue closing any of the IO-based items.
+     */
+    private static void closeConnection() throws IOException
+    {
         if (connIn != null) connIn.close();
         if (connOut != null) connOut.close();
         if (conn != null) conn.close();
@@ -142,29 +246,62 @@ public class ReversiClient implements ReversiProtocol
         try
         {
             // prints the initial game to the screen
-            System.out.println(clientGame);
+            renderer.drawFull();
 
             while (continueRunning)
             {
                 // reads in the server's message and splits it by spaces
-                message = connIn.readLine().split(" ");
+                String line = connIn.readLine();
+                if (line == null)
+                {
+                    if (!waitingForNextGame)
+                    {
+                        System.out.println("The server has closed the connection.");
+                        break;
+                    }
+                    // a server which found nobody for our next game (or is being taken down) closes the connection,
+                    // and another connection may be sent somewhere that has someone
+                    System.out.println("The server has closed the connection instead of starting another game. " +
+                            "Connecting again...");
+                    startGame(connect());
+                    renderer.drawFull();
+                    continue;
+                }
+                message = line.split(" ");
                 // has a switch on the keyword (the first index in the message array)
                 switch(message[0])
                 {
+                    // if the message is CONNECT, the next game on this connection has begun
+                    case CONNECT:
+                        startGame(message);
+                        renderer.drawFull();
+                        break;
                     // if the message is MAKE_MOVE, we call the makeMove method to perform further actions
                     // NO UPDATE IS MADE TO THE CLIENT GAME, WE ONLY MODIFY OUR VERSION WHEN THE SERVER TELLS US TO
                     case MAKE_MOVE:
-                        makeMove();
+                        // if our board is out of date, wait until the server's board arrives to move
+                        if (resyncPending) moveDeferred = true;
+                        else makeMove();
                         break;
                     // if the message is MOVE_MADE we call the moveMade method with the received message
                     case MOVE_MADE:
                         moveMade(message);
                         break;
+                    // if the message is BOARD, the server has answered our RESYNC
+                    case BOARD:
+                        resync(message);
+                        break;
+                    // if the message is ANALYSIS, the server has answered our hint request and still wants a move
+                    case ANALYSIS:
+                        showAnalysis(message);
+                        makeMove();
+                        break;
                     // if it isn't one of the upper two cases, we've hit an ending-case
-                    // which we do further inspection with a new, nested switch
+                    // which we do further inspection with a new, nested switch, then we may play another game on the
+                    // same connection
                     default:
                         endAction(message);
-                        continueRunning = false;
+                        continueRunning = !ERROR.equals(message[0]) && playAgain();
                         break;
                 }
             }
@@ -174,11 +311,11 @@ public class ReversiClient implements ReversiProtocol
             System.err.println("I/O Error - " + ioe.getMessage());
             System.out.println("An error has occurred while attempting to run the game. The client will now terminate.");
         }
-        // if we catch a ReversiException (somehow), we alert the user and exit the game.
+        // if we catch a ReversiException (the server sent a board we can't read), we alert the user and exit the game.
         catch (ReversiException re)
         {
             System.err.println("Reversi Error - " + re.getMessage());
-            System.out.println("We should never get here but the server has hit an error. The client will now terminate.");
+            System.out.println("We should never get here but the server sent a bad board. The client will now terminate.");
         }
     }
 
@@ -187,8 +324,73 @@ public class ReversiClient implements ReversiProtocol
      */
     private static void makeMove()
     {
-        System.out.print("It is your turn to move! Enter row column: ");
-        connOut.println(MOVE + " " +userIn.nextLine());
+        if (computer != null)
+        {
+            SearchResult result = null;
+            try
+            {
+                result = computer.chooseMove(clientGame);
+            }
+            // the board is too big for the computer to search, so it just plays the first move it finds
+            catch (IllegalArgumentException iae)
+            {
+                renderer.println(iae.getMessage() + ". The computer will play any valid move.");
+            }
+            // the server only asks for a move while the game is going, so there is always one to make
+            int move = result != null ? result.getRow() * clientGame.getCols() + result.getCol()
+                    : clientGame.getValidMoves()[0];
+            renderer.println("The computer moves to row " + move / clientGame.getCols() + " column " +
+                    move % clientGame.getCols() + (result != null ? " (depth " + result.getDepth() + ")" : ""));
+            connOut.println(MOVE + " " + move / clientGame.getCols() + " " + move % clientGame.getCols());
+            return;
+        }
+
+        renderer.prompt("It is your turn to move! Enter row column (or hint): ");
+        String input = userIn.nextLine();
+        // a hint asks the server to analyze the position, we are asked to move again once it answers
+        if (input.trim().equalsIgnoreCase("hint")) connOut.println(ANALYZE);
+        else connOut.println(MOVE + " " + input);
+    }
+
+    /**
+     * Asks the user whether they want to play another game, and tells the server. Nothing is asked if the server did
+     * not offer another game, since it will close the connection.
+     *
+     * @return True if another game was asked for.
+     */
+    private static boolean playAgain()
+    {
+        if (!nextGameOffered) return false;
+
+        // the computer plays one game
+        if (computer != null)
+        {
+            connOut.println(QUIT);
+            return false;
+        }
+
+        System.out.print("Play another game? (y/n): ");
+        if (userIn.hasNextLine() && userIn.nextLine().trim().toLowerCase().startsWith("y"))
+        {
+            connOut.println(NEXT_GAME);
+            waitingForNextGame = true;
+            System.out.println("Waiting for the next game...");
+            return true;
+        }
+        connOut.println(QUIT);
+        return false;
+    }
+
+    /**
+     * Tells the user what the server thinks the best move is.
+     *
+     * @param message The message that was received from the server.
+     */
+    private static void showAnalysis(String [] message)
+    {
+        if (message.length < 4) renderer.println("The server could not analyze this position.");
+        else renderer.println("Hint: row " + message[1] + " column " + message[2] +
+                    " (expected final disc difference " + message[3] + ")");
     }
 
     /**
@@ -196,14 +398,95 @@ public class ReversiClient implements ReversiProtocol
      *
      * @param message The message that was received from the server.
      */
-    private static void moveMade(String [] message) throws ReversiException
+    private static void moveMade(String [] message)
     {
-        // make the move (throw the error if somehow it happens)
-        clientGame.makeMove(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+        // our board is about to be replaced by the server's, so there is no point updating it
+        if (resyncPending) return;
+
+        try
+        {
+            // make the move
+            clientGame.makeMove(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+        }
+        // the server accepted a move our board rejects, so our board must have drifted
+        catch (ReversiException re)
+        {
+            requestResync("Move (" + message[1] + ", " + message[2] + ") is invalid on our board");
+            return;
+        }
+        // show the game so the user knows what's going on (only the changed cells are redrawn on a terminal)
+        renderer.update(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
         // alert the client to the new move
-        System.out.println("A move has been made in row: " + message[1] + " column: " + message[2]);
-        // show the game so the user knows what's going on
-        System.out.println(clientGame);
+        renderer.println("A move has been made in row: " + message[1] + " column: " + message[2]);
+
+        // the server sends the checksum of its board, which ours should match; it is checked before the computer
+        // starts thinking, since a search of a drifted board would be thrown away
+        if (message.length > 3)
+        {
+            long hash;
+            try
+            {
+                hash = Long.parseUnsignedLong(message[3], 16);
+            }
+            // a damaged checksum can't vouch for our board, so we ask for the server's
+            catch (NumberFormatException nfe)
+            {
+                requestResync("The server sent a checksum which could not be read");
+                return;
+            }
+            if (hash != clientGame.getHash())
+            {
+                requestResync("Our board does not match the server's");
+                return;
+            }
+        }
+        // after its own move the computer starts thinking about the reply
+        if (computer != null) computer.moveMade(clientGame);
+    }
+
+    /**
+     * Asks the server for its copy of the board after ours has drifted from it.
+     *
+     * @param reason Why we need the server's board.
+     */
+    private static void requestResync(String reason)
+    {
+        // whatever the computer is thinking about is based on the wrong board
+        if (computer != null) computer.stop();
+        renderer.println(reason + ". Requesting the board from the server...");
+        connOut.println(RESYNC);
+        resyncPending = true;
+    }
+
+    /**
+     * Replaces our board with the server's and makes any move that was asked for while we were waiting for it.
+     *
+     * @param message The message that was received from the server.
+     *
+     * @throws ReversiException If the server's board can't be read.
+     */
+    private static void resync(String [] message) throws ReversiException
+    {
+        if (message.length < 2) throw new ReversiException("The server sent BOARD without a board");
+        try
+        {
+            clientGame = Position.fromBytes(Base64.getDecoder().decode(message[1])).toBoard();
+        }
+        // a damaged or cut off line is not valid Base64, or decodes to something that is not a position
+        catch (IllegalArgumentException | IndexOutOfBoundsException | BufferUnderflowException e)
+        {
+            throw new ReversiException("The server sent a board which could not be read: " + e.getMessage());
+        }
+        renderer = new BoardRenderer(clientGame);
+        renderer.drawFull();
+        renderer.println("The board has been resynchronized with the server.");
+        resyncPending = false;
+
+        if (moveDeferred)
+        {
+            moveDeferred = false;
+            makeMove();
+        }
     }
 
     /**
@@ -213,6 +496,11 @@ public class ReversiClient implements ReversiProtocol
      */
     private static void endAction(String [] message)
     {
+        if (computer != null)
+        {
+            computer.stop();
+            System.out.println(computer.getSummary());
+        }
         switch(message[0])
         {
             // if the message is GAME_WON, tell the user they won
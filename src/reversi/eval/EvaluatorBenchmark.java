@@ -0,0 +1,166 @@
+package reversi.eval;
+
+import reversi.*;
+
+import java.io.IOException;
+
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Measures how many positions per second a {@link PatternEvaluator} can evaluate, first on a single thread and then
+ * on every core.
+ *
+ * @author Kevin Becker
+ */
+public class EvaluatorBenchmark
+{
+    /** the number of distinct positions evaluated in a loop. */
+    private static final int NUM_POSITIONS = 4096;
+
+    /** how long each measurement runs for, in milliseconds. */
+    private static final long MEASURE_MILLIS = 3000;
+
+    /** sinks the evaluations so the JIT cannot drop them. */
+    private static volatile float sink;
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The arguments for the benchmark:<br><br><em>
+     *             0 => (optional) A weights file (the default weights are used otherwise).<br>
+     *             1 => (optional) The number of rows (8 by default).<br>
+     *             2 => (optional) The number of columns (8 by default).</em>
+     */
+    public static void main(String [] args)
+    {
+        try
+        {
+            PatternEvaluator evaluator = args.length > 0 ? PatternEvaluator.load(Paths.get(args[0]))
+                    : PatternEvaluator.createDefault();
+            int rows = args.length > 1 ? Integer.parseInt(args[1]) : Reversi.DIM;
+            int cols = args.length > 2 ? Integer.parseInt(args[2]) : Reversi.DIM;
+
+            Reversi [] positions = randomPositions(new Random(1), rows, cols, NUM_POSITIONS);
+            System.out.println("Benchmarking " + rows + "x" + cols + " evaluation over " + NUM_POSITIONS +
+                    " positions...");
+
+            // the first run just warms up the JIT
+            measure(evaluator, positions, 1);
+            double single = measure(evaluator, positions, 1);
+            System.out.printf("1 thread: %,.0f evaluations/s%n", single);
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            double all = measure(evaluator, positions, cores);
+            System.out.printf("%d threads: %,.0f evaluations/s (%.1fx)%n", cores, all, all / single);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("The weights file could not be read. The benchmark will now terminate.");
+        }
+        catch (NumberFormatException ne)
+        {
+            System.err.println("Number Format Error - " + ne.getMessage());
+            System.out.println("Usage: java EvaluatorBenchmark [weights] [rows cols]");
+        }
+    }
+
+    /**
+     * Evaluates positions on a number of threads for {@link #MEASURE_MILLIS} milliseconds.
+     *
+     * @param evaluator The evaluator.
+     * @param positions The positions to cycle through.
+     * @param threads The number of threads evaluating.
+     *
+     * @return The total number of evaluations per second.
+     */
+    private static double measure(PatternEvaluator evaluator, Reversi [] positions, int threads)
+    {
+        LongAdder evaluations = new LongAdder();
+        long deadline = System.currentTimeMillis() + MEASURE_MILLIS;
+        List<Thread> workers = new ArrayList<>();
+        long start = System.nanoTime();
+
+        for (int t = 0; t < threads; ++t)
+        {
+            Thread worker = new Thread(() -> {
+                float total = 0f;
+                long count = 0;
+                while (System.currentTimeMillis() < deadline)
+                {
+                    for (Reversi position : positions)
+                    {
+                        total += evaluator.evaluate(position);
+                    }
+                    count += positions.length;
+                }
+                evaluations.add(count);
+                sink = total;
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers)
+        {
+            try
+            {
+                worker.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return evaluations.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Creates positions by playing a random number of random moves from the start.
+     *
+     * @param random The source of randomness.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param count The number of positions.
+     *
+     * @return The positions.
+     */
+    static Reversi [] randomPositions(Random random, int rows, int cols, int count)
+    {
+        Reversi [] positions = new Reversi[count];
+        int [] moves = new int[rows * cols];
+        for (int i = 0; i < count; ++i)
+        {
+            Reversi game = new Reversi(rows, cols);
+            int plies = random.nextInt(rows * cols - 4);
+            for (int ply = 0; ply < plies; ++ply)
+            {
+                int numMoves = 0;
+                for (int row = 0; row < rows; ++row)
+                {
+                    for (int col = 0; col < cols; ++col)
+                    {
+                        if (game.isValidMove(row, col)) moves[numMoves++] = row * cols + col;
+                    }
+                }
+                int move = moves[random.nextInt(numMoves)];
+                try
+                {
+                    game.makeMove(move / cols, move % cols);
+                }
+                catch (ReversiException re)
+                {
+                    // only valid moves were picked
+                    throw new IllegalStateException(re);
+                }
+            }
+            positions[i] = game;
+        }
+        return positions;
+    }
+}
@@ -0,0 +1,447 @@
+package reversi.eval;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+
+/**
+ * A pattern-based position evaluator for Reversi. The board is looked at through a fixed set of patterns anchored at
+ * each of the four corners (the two edges leaving the corner, the diagonal leaving the corner and the 3x3 corner
+ * region). Each pattern instance is read as a ternary number (empty, own disc, opponent disc) which indexes straight
+ * into a table of weights. Two scalar features, mobility and parity, are added on top.<br><br>
+ *
+ * Scores are in units of final disc differential and are always from the point of view of the player whose turn it
+ * is (positive is good for the player to move). The weights are split into {@link #PHASES} game phases by how full
+ * the board is, since a pattern is worth very different amounts in the opening and in the endgame.
+ *
+ * @author Kevin Becker
+ */
+public class PatternEvaluator
+{
+    /** the number of cells read along an edge or diagonal. */
+    public static final int LINE_LENGTH = 8;
+
+    /** the width (and height) of the corner region. */
+    public static final int CORNER_SIZE = 3;
+
+    /** the number of game phases the weights are split into. */
+    public static final int PHASES = 4;
+
+    /** the number of distinct codes for an edge or diagonal (3^8). */
+    static final int LINE_CODES = pow3(LINE_LENGTH);
+
+    /** the number of distinct codes for a corner region (3^9). */
+    static final int CORNER_CODES = pow3(CORNER_SIZE * CORNER_SIZE);
+
+    /** offset of the edge table inside a phase block. */
+    static final int EDGE_OFFSET = 0;
+
+    /** offset of the diagonal table inside a phase block. */
+    static final int DIAGONAL_OFFSET = EDGE_OFFSET + LINE_CODES;
+
+    /** offset of the corner table inside a phase block. */
+    static final int CORNER_OFFSET = DIAGONAL_OFFSET + LINE_CODES;
+
+    /** offset of the mobility weight inside a phase block. */
+    static final int MOBILITY_OFFSET = CORNER_OFFSET + CORNER_CODES;
+
+    /** offset of the parity weight inside a phase block. */
+    static final int PARITY_OFFSET = MOBILITY_OFFSET + 1;
+
+    /** the number of weights used by a single phase. */
+    static final int BLOCK_SIZE = PARITY_OFFSET + 1;
+
+    /** the total number of weights. */
+    static final int NUM_WEIGHTS = PHASES * BLOCK_SIZE;
+
+    /** the most features a single position can produce (4 corners x 4 patterns plus 2 scalars). */
+    static final int MAX_FEATURES = 4 * 4 + 2;
+
+    /** marks the start of a weights file. */
+    private static final int MAGIC = 0x52504556;
+
+    /** the weights, indexed by phase block and then pattern code. */
+    final float[] weights;
+
+    /** the pattern cell layouts, cached per board size. */
+    private final ConcurrentHashMap<Long, int[][]> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an evaluator with the given weights.
+     *
+     * @param weights The weights, which must have {@link #NUM_WEIGHTS} entries.
+     */
+    PatternEvaluator(float[] weights)
+    {
+        if (weights.length != NUM_WEIGHTS)
+        {
+            throw new IllegalArgumentException("Expected " + NUM_WEIGHTS + " weights, got " + weights.length);
+        }
+        this.weights = weights;
+    }
+
+    /**
+     * Creates an evaluator with hand-tuned starting weights. These favour corners, punish the cells next to an empty
+     * corner and are what {@link PatternTrainer} starts from when no weights file is given.
+     *
+     * @return The new evaluator.
+     */
+    public static PatternEvaluator createDefault()
+    {
+        float[] weights = new float[NUM_WEIGHTS];
+        // the value of a cell in each kind of pattern, indexed by its position within the pattern
+        float[] lineValues = {4f, -1f, 0.5f, 0.25f, 0.25f, 0.5f, -1f, 4f};
+        float[] diagonalValues = {4f, -2f, 0.25f, 0.1f, 0.1f, 0.25f, -2f, 4f};
+        float[] cornerValues = {4f, -1f, 0.5f, -1f, -2f, 0f, 0.5f, 0f, 0f};
+
+        for (int phase = 0; phase < PHASES; ++phase)
+        {
+            int block = phase * BLOCK_SIZE;
+            fillPattern(weights, block + EDGE_OFFSET, lineValues);
+            fillPattern(weights, block + DIAGONAL_OFFSET, diagonalValues);
+            fillPattern(weights, block + CORNER_OFFSET, cornerValues);
+            // mobility matters most early, parity matters most late
+            weights[block + MOBILITY_OFFSET] = 0.3f * (PHASES - phase) / PHASES;
+            weights[block + PARITY_OFFSET] = 1.0f * (phase + 1) / PHASES;
+        }
+        return new PatternEvaluator(weights);
+    }
+
+    /**
+     * Loads an evaluator from a weights file written by {@link #save(Path)}.
+     *
+     * @param file The weights file.
+     *
+     * @return The loaded evaluator.
+     *
+     * @throws IOException If the file cannot be read or is not a weights file.
+     */
+    public static PatternEvaluator load(Path file) throws IOException
+    {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != PHASES || in.readInt() != BLOCK_SIZE)
+            {
+                throw new IOException("Not a weights file (or from an incompatible version): " + file);
+            }
+            float[] weights = new float[NUM_WEIGHTS];
+            for (int i = 0; i < NUM_WEIGHTS; ++i)
+            {
+                weights[i] = in.readFloat();
+            }
+            return new PatternEvaluator(weights);
+        }
+    }
+
+    /**
+     * Saves the weights of this evaluator so they can later be read back by {@link #load(Path)}.
+     *
+     * @param file The file to write to.
+     *
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException
+    {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file))))
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(PHASES);
+            out.writeInt(BLOCK_SIZE);
+            for (float weight : weights)
+            {
+                out.writeFloat(weight);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a position from the point of view of the player to move.
+     *
+     * @param game The position to evaluate.
+     *
+     * @return The expected final disc differential for the player to move.
+     */
+    public float evaluate(Board game)
+    {
+        return extract(game, null, null);
+    }
+
+    /**
+     * Reads the features of a position. Every feature is an index into {@link #weights} along with the value it is
+     * multiplied by, so the evaluation is the dot product of the two. When the output arrays are null only the
+     * evaluation is computed.
+     *
+     * @param game The position.
+     * @param indexes Receives the weight index of each feature (at least {@link #MAX_FEATURES} long), or null.
+     * @param values Receives the value of each feature (at least {@link #MAX_FEATURES} long), or null.
+     *
+     * @return The evaluation of the position.
+     */
+    float extract(Board game, int[] indexes, float[] values)
+    {
+        int rows = game.getRows();
+        int cols = game.getCols();
+        int[][] layout = layouts.computeIfAbsent(((long) rows << 32) | cols, key -> buildLayout(rows, cols));
+
+        Move me = game.getCurrentPlayer();
+        Move other = me == Move.PLAYER_ONE ? Move.PLAYER_TWO : Move.PLAYER_ONE;
+        int block = phase(game) * BLOCK_SIZE;
+        float score = 0f;
+        int count = 0;
+
+        // every corner has two edges, a diagonal and a corner region, in that order
+        for (int i = 0; i < layout.length; ++i)
+        {
+            int offset;
+            switch (i % 4)
+            {
+                case 2:
+                    offset = DIAGONAL_OFFSET;
+                    break;
+                case 3:
+                    offset = CORNER_OFFSET;
+                    break;
+                default:
+                    offset = EDGE_OFFSET;
+                    break;
+            }
+            int index = block + offset + code(game, layout[i], cols, me);
+            score += weights[index];
+            if (indexes != null)
+            {
+                indexes[count] = index;
+                values[count] = 1f;
+            }
+            ++count;
+        }
+
+        // mobility is the difference in the number of moves that would flip something
+        int [] validMoves = game.getValidMoves();
+        float mobility = mobility(game, validMoves, me, other) - mobility(game, validMoves, other, me);
+        score += weights[block + MOBILITY_OFFSET] * mobility;
+
+        // with no passing the player to move gets the last move exactly when an odd number of cells remain
+        float parity = (rows * cols - game.getNumMoves()) % 2 == 1 ? 1f : -1f;
+        score += weights[block + PARITY_OFFSET] * parity;
+
+        if (indexes != null)
+        {
+            indexes[count] = block + MOBILITY_OFFSET;
+            values[count] = mobility;
+            indexes[count + 1] = block + PARITY_OFFSET;
+            values[count + 1] = parity;
+        }
+        return score;
+    }
+
+    /**
+     * Determines which phase of the game a position belongs to, based on how full the board is.
+     *
+     * @param game The position.
+     *
+     * @return The phase, from 0 to {@link #PHASES} - 1.
+     */
+    static int phase(Board game)
+    {
+        int area = game.getRows() * game.getCols();
+        return Math.min(PHASES - 1, (int) ((long) game.getNumMoves() * PHASES / area));
+    }
+
+    /**
+     * Reads a pattern as a ternary number. Cells off the board read as empty.
+     *
+     * @param game The position.
+     * @param cells The packed cells of the pattern (row * cols + col), or -1 for off the board.
+     * @param cols The number of columns on the board.
+     * @param me The player to move.
+     *
+     * @return The code of the pattern.
+     */
+    private static int code(Board game, int[] cells, int cols, Move me)
+    {
+        int code = 0;
+        for (int cell : cells)
+        {
+            code *= 3;
+            if (cell >= 0)
+            {
+                Move move = game.getCell(cell / cols, cell % cols);
+                if (move != Move.NONE)
+                {
+                    code += move == me ? 1 : 2;
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Counts the moves available to a player that would flip at least one disc.
+     *
+     * @param game The position.
+     * @param validMoves The valid moves of the position (a move which flips has an occupied neighbour, so it is
+     *                   always among them).
+     * @param me The player moving.
+     * @param other The opponent.
+     *
+     * @return The number of such moves.
+     */
+    private static int mobility(Board game, int [] validMoves, Move me, Move other)
+    {
+        int cols = game.getCols();
+        int moves = 0;
+        for (int move : validMoves)
+        {
+            if (flipsAny(game, move / cols, move % cols, me, other))
+            {
+                ++moves;
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * Checks whether placing a disc would flip at least one of the opponent's discs.
+     *
+     * @param game The position.
+     * @param row The row of the disc.
+     * @param col The column of the disc.
+     * @param me The player placing the disc.
+     * @param other The opponent.
+     *
+     * @return Whether anything would be flipped.
+     */
+    private static boolean flipsAny(Board game, int row, int col, Move me, Move other)
+    {
+        for (int rd = -1; rd <= 1; ++rd)
+        {
+            for (int cd = -1; cd <= 1; ++cd)
+            {
+                if (rd == 0 && cd == 0) continue;
+
+                int r = row + rd;
+                int c = col + cd;
+                int run = 0;
+                while (r >= 0 && r < game.getRows() && c >= 0 && c < game.getCols() && game.getCell(r, c) == other)
+                {
+                    r += rd;
+                    c += cd;
+                    ++run;
+                }
+                if (run > 0 && r >= 0 && r < game.getRows() && c >= 0 && c < game.getCols() &&
+                        game.getCell(r, c) == me)
+                {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Builds the cells read by each pattern instance for a board size. Each corner contributes, in order, the edge
+     * along its row, the edge along its column, its diagonal and its corner region.
+     *
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     *
+     * @return The cells of each pattern instance.
+     */
+    private static int[][] buildLayout(int rows, int cols)
+    {
+        int[][] layout = new int[16][];
+        int[] cornerRows = {0, 0, rows - 1, rows - 1};
+        int[] cornerCols = {0, cols - 1, 0, cols - 1};
+
+        for (int corner = 0; corner < 4; ++corner)
+        {
+            int r0 = cornerRows[corner];
+            int c0 = cornerCols[corner];
+            int dr = r0 == 0 ? 1 : -1;
+            int dc = c0 == 0 ? 1 : -1;
+
+            int[] rowEdge = new int[LINE_LENGTH];
+            int[] colEdge = new int[LINE_LENGTH];
+            int[] diagonal = new int[LINE_LENGTH];
+            for (int i = 0; i < LINE_LENGTH; ++i)
+            {
+                rowEdge[i] = cell(rows, cols, r0, c0 + i * dc);
+                colEdge[i] = cell(rows, cols, r0 + i * dr, c0);
+                diagonal[i] = cell(rows, cols, r0 + i * dr, c0 + i * dc);
+            }
+
+            int[] region = new int[CORNER_SIZE * CORNER_SIZE];
+            for (int i = 0; i < CORNER_SIZE; ++i)
+            {
+                for (int j = 0; j < CORNER_SIZE; ++j)
+                {
+                    region[i * CORNER_SIZE + j] = cell(rows, cols, r0 + i * dr, c0 + j * dc);
+                }
+            }
+
+            layout[corner * 4] = rowEdge;
+            layout[corner * 4 + 1] = colEdge;
+            layout[corner * 4 + 2] = diagonal;
+            layout[corner * 4 + 3] = region;
+        }
+        return layout;
+    }
+
+    /**
+     * Packs a cell, or returns -1 if it is off the board.
+     */
+    private static int cell(int rows, int cols, int row, int col)
+    {
+        return row >= 0 && row < rows && col >= 0 && col < cols ? row * cols + col : -1;
+    }
+
+    /**
+     * Fills a pattern table with the sum of its cell values (own discs positive, opponent discs negative).
+     *
+     * @param weights The weights to fill.
+     * @param offset Where the table starts.
+     * @param cellValues The value of each cell of the pattern.
+     */
+    private static void fillPattern(float[] weights, int offset, float[] cellValues)
+    {
+        int codes = pow3(cellValues.length);
+        for (int code = 0; code < codes; ++code)
+        {
+            float value = 0f;
+            int rest = code;
+            // the last cell of the pattern is the least significant digit
+            for (int i = cellValues.length - 1; i >= 0; --i)
+            {
+                int digit = rest % 3;
+                rest /= 3;
+                if (digit == 1) value += cellValues[i];
+                else if (digit == 2) value -= cellValues[i];
+            }
+            weights[offset + code] = value;
+        }
+    }
+
+    /**
+     * Computes 3 to the given power.
+     */
+    private static int pow3(int n)
+    {
+        int result = 1;
+        for (int i = 0; i < n; ++i)
+        {
+            result *= 3;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,263 @@
+package reversi.eval;
+
+import reversi.*;
+import reversi.Reversi.Move;
+
+import java.io.IOException;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.Files;
+
+import java.util.stream.Stream;
+
+
+/**
+ * Fits the weights of a {@link PatternEvaluator} to recorded games by least squares regression. Every position of
+ * every game is labelled with the final disc differential (from the point of view of the player to move) and the
+ * weights are moved towards it by batch gradient descent.<br><br>
+ *
+ * The games file is streamed from disk once per epoch, so it never has to fit in memory, and the gradient of each
+ * epoch is computed in parallel across all cores. Each line of the games file is one game:<br><br><tt>
+ *     rows cols row col row col ...</tt><br><br>
+ * Blank lines and lines starting with '#' are skipped. Games which contain an invalid move are skipped.
+ *
+ * @author Kevin Becker
+ */
+public class PatternTrainer
+{
+    /** the default number of passes over the games file. */
+    private static final int DEFAULT_EPOCHS = 10;
+
+    /** the default step size of each update. */
+    private static final float DEFAULT_RATE = 0.05f;
+
+    /** the evaluator being trained. */
+    private final PatternEvaluator evaluator;
+
+    /**
+     * Creates a trainer which updates the weights of the given evaluator in place.
+     *
+     * @param evaluator The evaluator to train.
+     */
+    public PatternTrainer(PatternEvaluator evaluator)
+    {
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Trains weights from a games file and saves them.
+     *
+     * @param args The arguments for training:<br><br><em>
+     *             0 => The games file.<br>
+     *             1 => The file the trained weights are written to.<br>
+     *             2 => (optional) The number of epochs.<br>
+     *             3 => (optional) The learning rate.<br>
+     *             4 => (optional) A weights file to start from.</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 2 || args.length > 5)
+        {
+            System.out.println("Invalid number of arguments.\n" +
+                    "Usage: java PatternTrainer games weights [epochs] [rate] [initial_weights]");
+            System.exit(1);
+        }
+
+        try
+        {
+            int epochs = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_EPOCHS;
+            float rate = args.length > 3 ? Float.parseFloat(args[3]) : DEFAULT_RATE;
+            PatternEvaluator evaluator = args.length > 4 ? PatternEvaluator.load(Paths.get(args[4]))
+                    : PatternEvaluator.createDefault();
+
+            new PatternTrainer(evaluator).train(Paths.get(args[0]), epochs, rate);
+            evaluator.save(Paths.get(args[1]));
+            System.out.println("Weights saved to " + args[1]);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An error has occurred while training. The trainer will now terminate.");
+        }
+        catch (NumberFormatException ne)
+        {
+            System.err.println("Number Format Error - " + ne.getMessage());
+            System.out.println("Epochs must be an integer and rate must be a number.");
+        }
+    }
+
+    /**
+     * Runs a number of epochs of training over a games file.
+     *
+     * @param games The games file.
+     * @param epochs The number of passes to make over the file.
+     * @param rate The step size of each update.
+     *
+     * @throws IOException If the games file cannot be read.
+     */
+    public void train(Path games, int epochs, float rate) throws IOException
+    {
+        for (int epoch = 1; epoch <= epochs; ++epoch)
+        {
+            long start = System.nanoTime();
+            Gradient gradient;
+            try (Stream<String> lines = Files.lines(games))
+            {
+                gradient = lines.parallel().collect(Gradient::new, this::addGame, Gradient::merge);
+            }
+            gradient.apply(evaluator.weights, rate);
+
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Epoch %d: %d games (%d skipped), %d positions, rms error %.3f, %.1f positions/s%n",
+                    epoch, gradient.games, gradient.skipped, gradient.positions,
+                    Math.sqrt(gradient.squaredError / Math.max(1, gradient.positions)),
+                    gradient.positions / seconds);
+        }
+    }
+
+    /**
+     * Replays a game and adds the error gradient of each of its positions.
+     *
+     * @param gradient The gradient being accumulated.
+     * @param line The game, in the format of the games file.
+     */
+    private void addGame(Gradient gradient, String line)
+    {
+        line = line.trim();
+        if (line.isEmpty() || line.startsWith("#")) return;
+
+        try
+        {
+            String [] tokens = line.split("\\s+");
+            int rows = Integer.parseInt(tokens[0]);
+            int cols = Integer.parseInt(tokens[1]);
+
+            // play the game out once to find the final result
+            Reversi game = new Reversi(rows, cols);
+            for (int i = 2; i + 1 < tokens.length; i += 2)
+            {
+                game.makeMove(Integer.parseInt(tokens[i]), Integer.parseInt(tokens[i + 1]));
+            }
+            int p1Differential = discDifferential(game);
+
+            // then play it again, learning from every position along the way
+            game = new Reversi(rows, cols);
+            for (int i = 2; ; i += 2)
+            {
+                float target = game.getCurrentPlayer() == Move.PLAYER_ONE ? p1Differential : -p1Differential;
+                gradient.addPosition(evaluator, game, target);
+                if (i + 1 >= tokens.length) break;
+                game.makeMove(Integer.parseInt(tokens[i]), Integer.parseInt(tokens[i + 1]));
+            }
+            ++gradient.games;
+        }
+        catch (ReversiException | RuntimeException e)
+        {
+            // a bad record should not stop training
+            ++gradient.skipped;
+        }
+    }
+
+    /**
+     * Computes the number of player one's discs minus the number of player two's discs.
+     *
+     * @param game The position.
+     *
+     * @return The disc differential.
+     */
+    static int discDifferential(Reversi game)
+    {
+        int differential = 0;
+        for (int row = 0; row < game.getRows(); ++row)
+        {
+            for (int col = 0; col < game.getCols(); ++col)
+            {
+                Move move = game.getCell(row, col);
+                if (move == Move.PLAYER_ONE) ++differential;
+                else if (move == Move.PLAYER_TWO) --differential;
+            }
+        }
+        return differential;
+    }
+
+    /**
+     * The summed gradient of the squared error over part of the games file. Each parallel worker fills its own and
+     * they are merged at the end of the epoch.
+     */
+    private static final class Gradient
+    {
+        /** the sum of error * feature value for every weight. */
+        private final double[] sums = new double[PatternEvaluator.NUM_WEIGHTS];
+        /** the sum of feature value squared for every weight (the number of uses, for pattern weights). */
+        private final double[] scales = new double[PatternEvaluator.NUM_WEIGHTS];
+        /** scratch space for the features of a position. */
+        private final int[] indexes = new int[PatternEvaluator.MAX_FEATURES];
+        /** scratch space for the feature values of a position. */
+        private final float[] values = new float[PatternEvaluator.MAX_FEATURES];
+
+        /** the number of games used. */
+        private long games;
+        /** the number of games skipped because they were invalid. */
+        private long skipped;
+        /** the number of positions used. */
+        private long positions;
+        /** the sum of the squared errors. */
+        private double squaredError;
+
+        /**
+         * Adds the gradient of a single position.
+         *
+         * @param evaluator The evaluator being trained.
+         * @param game The position.
+         * @param target The final disc differential for the player to move.
+         */
+        void addPosition(PatternEvaluator evaluator, Reversi game, float target)
+        {
+            float error = target - evaluator.extract(game, indexes, values);
+            for (int i = 0; i < PatternEvaluator.MAX_FEATURES; ++i)
+            {
+                sums[indexes[i]] += error * values[i];
+                scales[indexes[i]] += values[i] * values[i];
+            }
+            squaredError += (double) error * error;
+            ++positions;
+        }
+
+        /**
+         * Adds another gradient into this one.
+         *
+         * @param other The gradient to add.
+         */
+        void merge(Gradient other)
+        {
+            for (int i = 0; i < sums.length; ++i)
+            {
+                sums[i] += other.sums[i];
+                scales[i] += other.scales[i];
+            }
+            games += other.games;
+            skipped += other.skipped;
+            positions += other.positions;
+            squaredError += other.squaredError;
+        }
+
+        /**
+         * Moves the weights along the gradient. Each weight's step is scaled by how much it was used, so rarely seen
+         * patterns learn as fast as common ones and the scalar features do not overshoot.
+         *
+         * @param weights The weights to update.
+         * @param rate The step size.
+         */
+        void apply(float[] weights, float rate)
+        {
+            for (int i = 0; i < weights.length; ++i)
+            {
+                if (scales[i] > 0)
+                {
+                    weights[i] += rate * (float) (sums[i] / scales[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package reversi.gateway;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * One {@link reversi.server.ReversiBackend} process as the gateway sees it: where it is, whether it passed its last
+ * health check, whether it is being drained and how many player connections are being relayed to it.
+ *
+ * @author Kevin Becker
+ */
+class Backend
+{
+    /** where players connect. */
+    private final InetSocketAddress address;
+
+    /** where health checks connect. */
+    private final InetSocketAddress healthAddress;
+
+    /** whether the backend passed its last health check. */
+    private volatile boolean healthy = true;
+
+    /** whether new players are kept away so the backend can be taken down. */
+    private volatile boolean draining;
+
+    /** the number of player connections being relayed to the backend. */
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    /** the number of player connections sent to the backend. */
+    private final AtomicLong totalConnections = new AtomicLong();
+
+    /**
+     * Creates a backend.
+     *
+     * @param address Where players connect.
+     * @param healthAddress Where health checks connect.
+     */
+    Backend(InetSocketAddress address, InetSocketAddress healthAddress)
+    {
+        this.address = address;
+        this.healthAddress = healthAddress;
+    }
+
+    /**
+     * Parses a backend given as host:port:health_port.
+     *
+     * @param spec The backend.
+     *
+     * @return The backend.
+     *
+     * @throws IllegalArgumentException If the backend is not of that form.
+     */
+    static Backend parse(String spec)
+    {
+        String [] parts = spec.split(":");
+        if (parts.length != 3) throw new IllegalArgumentException("expected host:port:health_port, not " + spec);
+
+        return new Backend(new InetSocketAddress(parts[0], Integer.parseInt(parts[1])),
+                new InetSocketAddress(parts[0], Integer.parseInt(parts[2])));
+    }
+
+    /**
+     * Checks whether new players may be sent to the backend.
+     *
+     * @return Whether the backend is healthy and not draining.
+     */
+    boolean isAvailable()
+    {
+        return healthy && !draining;
+    }
+
+    /**
+     * Gets where players connect.
+     *
+     * @return The address.
+     */
+    InetSocketAddress getAddress()
+    {
+        return address;
+    }
+
+    /**
+     * Gets where health checks connect.
+     *
+     * @return The address.
+     */
+    InetSocketAddress getHealthAddress()
+    {
+        return healthAddress;
+    }
+
+    /**
+     * Checks whether the backend passed its last health check.
+     *
+     * @return Whether the backend is healthy.
+     */
+    boolean isHealthy()
+    {
+        return healthy;
+    }
+
+    /**
+     * Records the result of a health check.
+     *
+     * @param healthy Whether the backend is healthy.
+     */
+    void setHealthy(boolean healthy)
+    {
+        this.healthy = healthy;
+    }
+
+    /**
+     * Checks whether new players are kept away from the backend.
+     *
+     * @return Whether the backend is draining.
+     */
+    boolean isDraining()
+    {
+        return draining;
+    }
+
+    /**
+     * Starts or stops draining the backend.
+     *
+     * @param draining Whether new players are kept away.
+     */
+    void setDraining(boolean draining)
+    {
+        this.draining = draining;
+    }
+
+    /**
+     * Records that a player's connection to the backend is being relayed.
+     */
+    void connectionOpened()
+    {
+        activeConnections.incrementAndGet();
+        totalConnections.incrementAndGet();
+    }
+
+    /**
+     * Records that a player's connection to the backend has closed.
+     *
+     * @return The number of connections still open.
+     */
+    int connectionClosed()
+    {
+        return activeConnections.decrementAndGet();
+    }
+
+    /**
+     * Gets the number of player connections being relayed to the backend.
+     *
+     * @return The number of connections.
+     */
+    int getActiveConnections()
+    {
+        return activeConnections.get();
+    }
+
+    /**
+     * Gets the number of player connections sent to the backend.
+     *
+     * @return The number of connections.
+     */
+    long getTotalConnections()
+    {
+        return totalConnections.get();
+    }
+
+    /**
+     * Names the backend by where players connect, which is also how it is placed on the hash ring.
+     */
+    @Override
+    public String toString()
+    {
+        return address.getHostString() + ":" + address.getPort();
+    }
+}
@@ -0,0 +1,102 @@
+package reversi.gateway;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+
+/**
+ * Assigns players to backends by consistent hashing. Each backend is placed on a ring of 64-bit hashes many times
+ * (virtual nodes, so the load spreads evenly) and a key goes to the first backend clockwise from its hash; players
+ * given the same key (the gateway keys each pair of clients alike) land on the same backend. A backend which is
+ * unhealthy or draining is simply stepped over, so only its own keys move, each to its neighbour on the ring, and
+ * they come back when it returns.
+ *
+ * @author Kevin Becker
+ */
+class HashRing
+{
+    /** the number of places each backend takes on the ring. */
+    static final int VIRTUAL_NODES = 128;
+
+    /** the backends, keyed by the hashes of their virtual nodes. */
+    private final TreeMap<Long, Backend> ring = new TreeMap<>();
+
+    /** the number of distinct backends. */
+    private final int backends;
+
+    /**
+     * Builds the ring.
+     *
+     * @param backends The backends.
+     */
+    HashRing(List<Backend> backends)
+    {
+        this.backends = backends.size();
+        for (Backend backend : backends)
+        {
+            for (int i = 0; i < VIRTUAL_NODES; ++i)
+            {
+                ring.put(hash(backend + "#" + i), backend);
+            }
+        }
+    }
+
+    /**
+     * Finds the backend for a key.
+     *
+     * @param key The key.
+     * @param eligible Which backends may take players.
+     *
+     * @return The backend, or null if none is eligible.
+     */
+    Backend route(String key, Predicate<Backend> eligible)
+    {
+        if (ring.isEmpty()) return null;
+
+        long hash = hash(key);
+        Map.Entry<Long, Backend> entry = ring.ceilingEntry(hash);
+        // at worst every virtual node is visited once, once the walk has wrapped around
+        for (int visited = 0; visited < ring.size(); ++visited)
+        {
+            if (entry == null) entry = ring.firstEntry();
+            if (eligible.test(entry.getValue())) return entry.getValue();
+            entry = ring.higherEntry(entry.getKey());
+        }
+        return null;
+    }
+
+    /**
+     * Gets the number of distinct backends on the ring.
+     *
+     * @return The number of backends.
+     */
+    int size()
+    {
+        return backends;
+    }
+
+    /**
+     * Hashes a string to a point on the ring (FNV-1a, then a splitmix64 finish so nearby strings land far apart).
+     *
+     * @param key The string.
+     *
+     * @return The hash.
+     */
+    static long hash(String key)
+    {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 30;
+        hash *= 0xbf58476d1ce4e5b9L;
+        hash ^= hash >>> 27;
+        hash *= 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
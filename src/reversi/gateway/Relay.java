@@ -0,0 +1,314 @@
+package reversi.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+
+
+/**
+ * Copies bytes both ways between every player and their backend, on one thread with a {@link Selector}. Each direction of each connection has a direct buffer, so the bytes go from one socket to the
+ * other without ever being copied onto the Java heap. (The JDK has no socket-to-socket transfer, so this is as close
+ * to zero-copy as a Java proxy gets.) The relay never looks at the bytes, so it works for any protocol.<br><br>
+ *
+ * Each player is a session of their own: their client connection paired with their backend connection. A player's
+ * connection may outlast many games, with opponents chosen by the backend, so the relay knows nothing of games. When
+ * one side finishes sending, the relay passes everything it has buffered on and then shuts down the other side's
+ * output, so the final messages always arrive. A session is closed once both directions have finished, or as soon as
+ * either connection fails; the player's opponent is not affected.
+ *
+ * @author Kevin Becker
+ */
+class Relay implements Runnable
+{
+    /** the size of each direction's buffer in bytes. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** watches every connection of every player. */
+    private final Selector selector;
+
+    /** sessions waiting to be registered with the selector. */
+    private final Queue<Session> added = new ConcurrentLinkedQueue<>();
+
+    /** told when a session has been closed. */
+    private final Consumer<Session> onClose;
+
+    /**
+     * Creates a relay. It does nothing until it is run.
+     *
+     * @param onClose Told when a session has been closed.
+     *
+     * @throws IOException If the selector cannot be opened.
+     */
+    Relay(Consumer<Session> onClose) throws IOException
+    {
+        this.selector = Selector.open();
+        this.onClose = onClose;
+    }
+
+    /**
+     * Starts relaying a player. Safe to call from any thread.
+     *
+     * @param client The player's connection from their client.
+     * @param backend The player's connection to the backend.
+     * @param attachment Anything the caller wants back when the session is closed.
+     */
+    void add(SocketChannel client, SocketChannel backend, Object attachment)
+    {
+        added.add(new Session(attachment, client, backend));
+        selector.wakeup();
+    }
+
+    /**
+     * Relays until the thread is interrupted.
+     */
+    @Override
+    public void run()
+    {
+        while (!Thread.currentThread().isInterrupted())
+        {
+            try
+            {
+                selector.select();
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("Relay error - " + ioe.getMessage());
+                return;
+            }
+
+            Session session;
+            while ((session = added.poll()) != null)
+            {
+                register(session);
+            }
+
+            for (SelectionKey key : selector.selectedKeys())
+            {
+                Endpoint endpoint = (Endpoint) key.attachment();
+                try
+                {
+                    if (key.isValid() && key.isReadable()) endpoint.in.fill();
+                    if (key.isValid() && key.isWritable()) endpoint.out.drain();
+                    endpoint.session.update();
+                }
+                catch (IOException ioe)
+                {
+                    endpoint.session.close();
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /**
+     * Registers the connections of a new session.
+     */
+    private void register(Session session)
+    {
+        try
+        {
+            for (Endpoint endpoint : session.endpoints)
+            {
+                endpoint.channel.configureBlocking(false);
+                endpoint.key = endpoint.channel.register(selector, SelectionKey.OP_READ, endpoint);
+            }
+        }
+        catch (IOException ioe)
+        {
+            session.close();
+        }
+    }
+
+    /**
+     * The two connections of one player: their client connection and their backend connection.
+     */
+    final class Session
+    {
+        /** what the caller attached to the session. */
+        private final Object attachment;
+
+        /** the connections: the client's, then the backend's. */
+        private final Endpoint [] endpoints;
+
+        /** the directions bytes flow in: client to backend, then back. */
+        private final Pipe [] pipes;
+
+        /** whether the session has been closed. */
+        private boolean closed;
+
+        /**
+         * Creates a session.
+         */
+        private Session(Object attachment, SocketChannel client, SocketChannel backend)
+        {
+            this.attachment = attachment;
+            this.endpoints = new Endpoint[] { new Endpoint(this, client), new Endpoint(this, backend) };
+            this.pipes = new Pipe[] { new Pipe(endpoints[0], endpoints[1]), new Pipe(endpoints[1], endpoints[0]) };
+        }
+
+        /**
+         * Gets what the caller attached to the session.
+         *
+         * @return The attachment.
+         */
+        Object getAttachment()
+        {
+            return attachment;
+        }
+
+        /**
+         * Finishes directions which are done, closes the session once both are, and otherwise sets what each
+         * connection waits for.
+         */
+        private void update() throws IOException
+        {
+            if (closed) return;
+
+            boolean finished = true;
+            for (Pipe pipe : pipes)
+            {
+                pipe.finishIfDone();
+                finished &= pipe.shutdown;
+            }
+            if (finished)
+            {
+                close();
+                return;
+            }
+
+            for (Endpoint endpoint : endpoints)
+            {
+                int ops = 0;
+                if (!endpoint.in.eof && endpoint.in.buffer.hasRemaining()) ops |= SelectionKey.OP_READ;
+                if (endpoint.out.buffer.position() > 0) ops |= SelectionKey.OP_WRITE;
+                if (endpoint.key != null && endpoint.key.isValid()) endpoint.key.interestOps(ops);
+            }
+        }
+
+        /**
+         * Closes both connections of the session.
+         */
+        private void close()
+        {
+            if (closed) return;
+            closed = true;
+
+            for (Endpoint endpoint : endpoints)
+            {
+                try
+                {
+                    endpoint.channel.close();
+                }
+                catch (IOException ioe)
+                {
+                    // closing anyway
+                }
+            }
+            onClose.accept(this);
+        }
+    }
+
+    /**
+     * One connection of a session.
+     */
+    private static final class Endpoint
+    {
+        /** the session. */
+        private final Session session;
+
+        /** the connection. */
+        private final SocketChannel channel;
+
+        /** the direction this connection reads into. */
+        private Pipe in;
+
+        /** the direction this connection writes out of. */
+        private Pipe out;
+
+        /** the connection's registration with the selector. */
+        private SelectionKey key;
+
+        /**
+         * Creates an endpoint.
+         */
+        private Endpoint(Session session, SocketChannel channel)
+        {
+            this.session = session;
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * One direction of a pair of connections: what is read from the source is written to the sink.
+     */
+    private static final class Pipe
+    {
+        /** where bytes come from. */
+        private final Endpoint source;
+
+        /** where bytes go. */
+        private final Endpoint sink;
+
+        /** bytes read but not yet written, kept ready for reading into. */
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        /** whether the source has finished sending. */
+        private boolean eof;
+
+        /** whether the sink's output has been shut down. */
+        private boolean shutdown;
+
+        /**
+         * Creates a direction and connects it to its endpoints.
+         */
+        private Pipe(Endpoint source, Endpoint sink)
+        {
+            this.source = source;
+            this.sink = sink;
+            source.in = this;
+            sink.out = this;
+        }
+
+        /**
+         * Reads what the source has sent and passes on as much as the sink will take.
+         */
+        private void fill() throws IOException
+        {
+            if (source.channel.read(buffer) < 0) eof = true;
+            drain();
+        }
+
+        /**
+         * Writes as much of the buffer as the sink will take.
+         */
+        private void drain() throws IOException
+        {
+            buffer.flip();
+            try
+            {
+                sink.channel.write(buffer);
+            }
+            finally
+            {
+                buffer.compact();
+            }
+        }
+
+        /**
+         * Shuts down the sink's output once the source has finished and everything has been passed on.
+         */
+        private void finishIfDone() throws IOException
+        {
+            if (eof && !shutdown && buffer.position() == 0)
+            {
+                shutdown = true;
+                sink.channel.shutdownOutput();
+            }
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package reversi.gateway;
+
+import reversi.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Spreads players over several {@link reversi.server.ReversiBackend} processes. Clients connect to the gateway exactly
+ * as they would to a {@link reversi.server.ReversiServer}. The gateway holds each client which arrives until the next
+ * one does, numbers the pair as a game, and sends both to the backend chosen by the game number's hash on a
+ * {@link HashRing} of the backends. Each client is given a connection of its own to the backend, and the gateway
+ * {@link Relay relays} the protocol between the two untouched. From then on the backend decides who plays whom:
+ * the pair meets in its lobby (unless someone is waiting there already), and a player may play many games on one
+ * connection. A player left alone in a backend's lobby is disconnected after a few seconds; they reconnect and are
+ * paired here with the next client to arrive, so two lone players on different backends soon meet.<br><br>
+ *
+ * Every backend's health port is checked every few seconds; players are not sent to a backend which fails its check
+ * until it passes again. A backend can also be drained from the console: the gateway sends it no new players and
+ * tells it to drain (see DRAIN on the backend's health port), so it disconnects each player when their game ends.
+ * Those players reconnect and are sent elsewhere, and the gateway says when the backend's last connection has closed
+ * so it can be redeployed. The console commands are:<br><br><tt>
+ *     status<br>
+ *     drain backend<br>
+ *     undrain backend</tt><br><br>
+ * where a backend is named by its number in the status list or by its host:port.
+ *
+ * @author Kevin Becker
+ */
+public class ReversiGateway implements ReversiProtocol
+{
+    /** how often the backends' health is checked, in milliseconds. */
+    private static final long HEALTH_INTERVAL = 2000;
+
+    /** how long a health check or a connection to a backend may take, in milliseconds. */
+    private static final int CONNECT_TIMEOUT = 1000;
+
+    /** the backends, in the order they were given. */
+    private final List<Backend> backends;
+
+    /** chooses a backend for each player. */
+    private final HashRing ring;
+
+    /** copies the bytes of every player. */
+    private final Relay relay;
+
+    /** opens the backend connections of new players, so slow backends do not hold up accepting clients. */
+    private final ExecutorService connector = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "reversi-gateway-connect");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** checks the backends' health. */
+    private final ScheduledExecutorService healthChecker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reversi-gateway-health");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** the number of pairs of clients sent to a backend, which numbers their games. */
+    private final AtomicLong games = new AtomicLong();
+
+    /**
+     * Creates a gateway.
+     *
+     * @param backends The backends.
+     *
+     * @throws IOException If the relay cannot be created.
+     */
+    ReversiGateway(List<Backend> backends) throws IOException
+    {
+        this.backends = backends;
+        this.ring = new HashRing(backends);
+        this.relay = new Relay(this::connectionClosed);
+    }
+
+    /**
+     * Runs the gateway until it is killed.
+     *
+     * @param args The arguments that are used for the gateway.
+     *             The arguments should have the following:<br><br><em>
+     *             0 => The port clients connect to.<br>
+     *             1... => The backends, each as host:port:health_port.</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 2)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java ReversiGateway port host:port:health_port...");
+            System.exit(1);
+        }
+
+        try
+        {
+            List<Backend> backends = new ArrayList<>();
+            for (int i = 1; i < args.length; ++i)
+            {
+                backends.add(Backend.parse(args[i]));
+            }
+            new ReversiGateway(backends).run(Integer.parseInt(args[0]));
+        }
+        catch (IllegalArgumentException iae)
+        {
+            System.out.println("Invalid backend - " + iae.getMessage());
+            System.exit(1);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An issue was encountered with IO. Terminating gateway.");
+        }
+    }
+
+    /**
+     * Accepts clients until the gateway is killed.
+     *
+     * @param port The port clients connect to.
+     *
+     * @throws IOException If clients cannot be accepted.
+     */
+    public void run(int port) throws IOException
+    {
+        Thread relayThread = new Thread(relay, "reversi-gateway-relay");
+        relayThread.setDaemon(true);
+        relayThread.start();
+
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, HEALTH_INTERVAL, TimeUnit.MILLISECONDS);
+        startConsole();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open())
+        {
+            server.bind(new InetSocketAddress(port));
+            System.out.println("Gateway listening on " + port + " for " + backends.size() + " backends.");
+
+            // the client waiting for someone to play, who goes with the next client to arrive
+            SocketChannel waiting = null;
+            while (true)
+            {
+                SocketChannel client = server.accept();
+                if (waiting == null)
+                {
+                    waiting = client;
+                    continue;
+                }
+
+                SocketChannel [] players = { waiting, client };
+                long game = games.incrementAndGet();
+                waiting = null;
+                connector.execute(() -> startGame(game, players));
+            }
+        }
+    }
+
+    /**
+     * Finds a backend for a pair of clients, connects both to it in the order they arrived and starts relaying. A backend which cannot be reached is marked unhealthy and the next one on the ring is tried.
+     *
+     * @param game The pair's game number, whose hash chooses the backend.
+     * @param players The clients' connections.
+     */
+    private void startGame(long game, SocketChannel [] players)
+    {
+        String name = "game-" + game;
+        try
+        {
+            // the relay passes MOVE_MADE and MAKE_MOVE on as they come, and neither may wait for an acknowledgement
+            for (SocketChannel player : players)
+            {
+                player.socket().setTcpNoDelay(true);
+            }
+        }
+        catch (IOException ioe)
+        {
+            // a client has already gone, and the other will find nobody in the backend's lobby and reconnect
+        }
+
+        for (int attempt = 0; attempt < ring.size(); ++attempt)
+        {
+            Backend backend = ring.route(name, Backend::isAvailable);
+            if (backend == null) break;
+
+            SocketChannel [] channels = new SocketChannel[players.length];
+            try
+            {
+                for (int i = 0; i < players.length; ++i)
+                {
+                    channels[i] = connect(backend);
+                }
+            }
+            catch (IOException ioe)
+            {
+                System.out.println(name + ": backend " + backend + " is unreachable (" + ioe.getMessage() + ")");
+                backend.setHealthy(false);
+                for (SocketChannel channel : channels)
+                {
+                    closeQuietly(channel);
+                }
+                continue;
+            }
+
+            for (int i = 0; i < players.length; ++i)
+            {
+                backend.connectionOpened();
+                relay.add(players[i], channels[i], backend);
+            }
+            System.out.println(name + " -> " + backend);
+            return;
+        }
+
+        // nowhere to play: tell the clients so they exit rather than wait forever
+        System.out.println(name + ": no backend is available");
+        for (SocketChannel player : players)
+        {
+            refuse(player);
+        }
+    }
+
+    /**
+     * Opens a connection to a backend.
+     */
+    private static SocketChannel connect(Backend backend) throws IOException
+    {
+        SocketChannel channel = SocketChannel.open();
+        try
+        {
+            channel.socket().connect(backend.getAddress(), CONNECT_TIMEOUT);
+            channel.socket().setTcpNoDelay(true);
+            return channel;
+        }
+        catch (IOException ioe)
+        {
+            channel.close();
+            throw ioe;
+        }
+    }
+
+    /**
+     * Called by the relay when a player's connection has been closed.
+     *
+     * @param session The player's connections.
+     */
+    private void connectionClosed(Relay.Session session)
+    {
+        Backend backend = (Backend) session.getAttachment();
+        int remaining = backend.connectionClosed();
+        if (backend.isDraining() && remaining == 0)
+        {
+            System.out.println("Backend " + backend + " is drained and may be taken down.");
+        }
+    }
+
+    /**
+     * Checks every backend's health port, reporting backends which go down or come back.
+     */
+    private void checkHealth()
+    {
+        for (Backend backend : backends)
+        {
+            boolean healthy;
+            try (Socket check = new Socket())
+            {
+                check.connect(backend.getHealthAddress(), CONNECT_TIMEOUT);
+                check.setSoTimeout(CONNECT_TIMEOUT);
+                String reply = new BufferedReader(new InputStreamReader(check.getInputStream(),
+                        StandardCharsets.US_ASCII)).readLine();
+                healthy = reply != null && reply.startsWith("OK");
+            }
+            catch (IOException ioe)
+            {
+                healthy = false;
+            }
+
+            if (healthy != backend.isHealthy())
+            {
+                System.out.println("Backend " + backend + " is " + (healthy ? "back up." : "down."));
+                backend.setHealthy(healthy);
+            }
+        }
+    }
+
+    /**
+     * Reads console commands on their own thread.
+     */
+    private void startConsole()
+    {
+        Thread console = new Thread(() -> {
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in)))
+            {
+                String line;
+                while ((line = in.readLine()) != null)
+                {
+                    command(line.trim().split("\\s+"));
+                }
+            }
+            catch (IOException ioe)
+            {
+                System.err.println("Console error - " + ioe.getMessage());
+            }
+        }, "reversi-gateway-console");
+        console.setDaemon(true);
+        console.start();
+    }
+
+    /**
+     * Carries out a console command.
+     *
+     * @param command The command, split by spaces.
+     */
+    private void command(String [] command)
+    {
+        switch (command[0])
+        {
+            case "":
+                break;
+            case "status":
+                for (int i = 0; i < backends.size(); ++i)
+                {
+                    Backend backend = backends.get(i);
+                    System.out.printf("%d %s %s%s, %d players connected, %d total%n", i, backend,
+                            backend.isHealthy() ? "up" : "down", backend.isDraining() ? " draining" : "",
+                            backend.getActiveConnections(), backend.getTotalConnections());
+                }
+                break;
+            case "drain":
+            case "undrain":
+                Backend backend = command.length == 2 ? find(command[1]) : null;
+                if (backend == null)
+                {
+                    System.out.println("Usage: " + command[0] + " backend_number|host:port");
+                    break;
+                }
+                backend.setDraining(command[0].equals("drain"));
+                // the backend must also let its players go, or they would keep playing there between games
+                String reply = tell(backend, backend.isDraining() ? "DRAIN" : "UNDRAIN");
+                if (reply == null)
+                {
+                    System.out.println("Backend " + backend + " could not be told to " + command[0] + ".");
+                }
+                System.out.println("Backend " + backend + (backend.isDraining() ? " is draining, " +
+                        backend.getActiveConnections() + " players connected." : " is taking players again."));
+                if (backend.isDraining() && backend.getActiveConnections() == 0)
+                {
+                    System.out.println("Backend " + backend + " is drained and may be taken down.");
+                }
+                break;
+            default:
+                System.out.println("Unknown command. Commands are: status, drain backend, undrain backend");
+                break;
+        }
+    }
+
+    /**
+     * Sends a command to a backend's health port.
+     *
+     * @param backend The backend.
+     * @param command The command.
+     *
+     * @return The backend's answer, or null if it could not be reached.
+     */
+    private static String tell(Backend backend, String command)
+    {
+        try (Socket check = new Socket())
+        {
+            check.connect(backend.getHealthAddress(), CONNECT_TIMEOUT);
+            check.setSoTimeout(CONNECT_TIMEOUT);
+            BufferedReader in = new BufferedReader(new InputStreamReader(check.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(check.getOutputStream(),
+                    StandardCharsets.US_ASCII), true);
+            // the health status comes first, then the answer to the command
+            if (in.readLine() == null) return null;
+            out.println(command);
+            return in.readLine();
+        }
+        catch (IOException ioe)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * Finds a backend by its number in the status list or its host:port.
+     */
+    private Backend find(String name)
+    {
+        for (int i = 0; i < backends.size(); ++i)
+        {
+            if (name.equals(String.valueOf(i)) || name.equals(backends.get(i).toString())) return backends.get(i);
+        }
+        return null;
+    }
+
+    /**
+     * Tells a client there is nowhere to play and hangs up.
+     */
+    private static void refuse(SocketChannel client)
+    {
+        try
+        {
+            client.write(ByteBuffer.wrap((ERROR + "\n").getBytes(StandardCharsets.US_ASCII)));
+        }
+        catch (IOException ioe)
+        {
+            // hanging up anyway
+        }
+        closeQuietly(client);
+    }
+
+    /**
+     * Closes a connection, ignoring errors.
+     */
+    private static void closeQuietly(SocketChannel channel)
+    {
+        if (channel == null) return;
+        try
+        {
+            channel.close();
+        }
+        catch (IOException ioe)
+        {
+            // nothing more to do
+        }
+    }
+}
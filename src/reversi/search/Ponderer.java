@@ -0,0 +1,256 @@
+package reversi.search;
+
+import reversi.*;
+import reversi.Reversi.Move;
+import reversi.eval.PatternEvaluator;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * A computer player which keeps thinking while its opponent does. After each of its moves it looks up the reply its
+ * own search expected (the best move stored in the {@link TranspositionTable} for the opponent's position) and
+ * searches the position that reply leads to on a background thread. When it is next asked for a move the background
+ * search is stopped: if the opponent played the predicted reply (a ponder hit), everything that search found is
+ * already in the shared table, so the move's own search starts from it and gets deeper in the same time. On a miss
+ * the work is simply left behind. With no prediction to go on it searches the opponent's position instead, which
+ * still fills the table for whatever reply comes.<br><br>
+ *
+ * Pondering can be turned off with <tt>-Dreversi.ponder=false</tt>, for comparison.
+ *
+ * @author Kevin Becker
+ */
+public class Ponderer
+{
+    /** the deepest search the table can record. */
+    private static final int MAX_DEPTH = 31;
+
+    /** how long to wait between attempts to stop the background search, in milliseconds. */
+    private static final long STOP_INTERVAL = 1;
+
+    /** whether to think during the opponent's turn. */
+    private final boolean enabled = !"false".equals(System.getProperty("reversi.ponder"));
+
+    /** remembers positions searched on either thread. */
+    private final TranspositionTable table;
+
+    /** searches our moves. */
+    private final Searcher searcher;
+
+    /** searches during the opponent's turn. */
+    private final Searcher ponderSearcher;
+
+    /** runs the background search. */
+    private final ExecutorService ponderThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "reversi-ponder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** how long each move's search may take, in nanoseconds. */
+    private final long moveNanos;
+
+    /** the player we are, once we have been asked for a move. */
+    private Move me = Move.NONE;
+
+    /** the background search, which gives the System.nanoTime() it ended at, or null if none is running. */
+    private Future<Long> pondering;
+
+    /** when the background search started, from System.nanoTime(). */
+    private long ponderStart;
+
+    /** the hash of the position the background search is for, or 0 if it searches all replies. */
+    private long predictedHash;
+
+    /** the number of our moves. */
+    private int moves;
+
+    /** the number of our moves for which a reply was predicted. */
+    private int predictions;
+
+    /** the number of predictions the opponent played. */
+    private int hits;
+
+    /** the time spent pondering the right position, in nanoseconds. */
+    private long savedNanos;
+
+    /** the sum of the depths reached by moves after a ponder hit. */
+    private long hitDepths;
+
+    /** the sum of the depths reached by the other moves. */
+    private long otherDepths;
+
+    /**
+     * Creates a computer player.
+     *
+     * @param evaluator Scores the leaves of its searches.
+     * @param tableEntries The size of its transposition table.
+     * @param moveMillis How long it may think about each move, in milliseconds.
+     */
+    public Ponderer(PatternEvaluator evaluator, int tableEntries, long moveMillis)
+    {
+        this.table = new TranspositionTable(tableEntries);
+        this.searcher = new Searcher(evaluator, table);
+        this.ponderSearcher = new Searcher(evaluator, table);
+        this.moveNanos = TimeUnit.MILLISECONDS.toNanos(moveMillis);
+    }
+
+    /**
+     * Chooses a move, after stopping the background search and checking whether it guessed the position.
+     *
+     * @param game The position, with us to move. It is not modified.
+     *
+     * @return The move, or null if the game is over.
+     *
+     * @throws IllegalArgumentException If the board is too large to search (see {@link Searcher#search(Board, int,
+     * long)}).
+     */
+    public SearchResult chooseMove(Board game)
+    {
+        long pondered = stop();
+        boolean hit = pondered > 0 && predictedHash != 0 && predictedHash == game.getHash();
+        if (pondered > 0 && predictedHash != 0) ++predictions;
+        if (hit)
+        {
+            ++hits;
+            savedNanos += pondered;
+        }
+
+        SearchResult result = searcher.search(game, maxDepth(game), moveNanos);
+        me = game.getCurrentPlayer();
+        if (result != null)
+        {
+            ++moves;
+            if (hit) hitDepths += result.getDepth();
+            else otherDepths += result.getDepth();
+        }
+        return result;
+    }
+
+    /**
+     * Tells the player a move has been made. After our own move it starts thinking about the opponent's reply.
+     *
+     * @param game The position after the move. It is copied, so the caller may keep playing on it.
+     */
+    public void moveMade(Board game)
+    {
+        // the opponent's moves are dealt with when we are next asked to move (and boards too big to search never
+        // get as far as setting who we are)
+        if (!enabled || me == Move.NONE || game.getCurrentPlayer() == me || game.gameOver()) return;
+        stop();
+
+        Board target = game.copy();
+        predictedHash = 0;
+        long entry = table.probe(game.getHash());
+        int reply = entry == 0 ? -1 : TranspositionTable.move(entry);
+        if (reply >= 0 && game.isValidMove(reply / game.getCols(), reply % game.getCols()))
+        {
+            try
+            {
+                target.makeMove(reply / game.getCols(), reply % game.getCols());
+                predictedHash = target.getHash();
+            }
+            catch (ReversiException re)
+            {
+                // the move was just checked
+                throw new IllegalStateException(re);
+            }
+            if (target.gameOver()) return;
+        }
+
+        ponderStart = System.nanoTime();
+        pondering = ponderThread.submit(() -> {
+            ponderSearcher.search(target, maxDepth(target), Long.MAX_VALUE);
+            return System.nanoTime();
+        });
+    }
+
+    /**
+     * Stops the background search, if one is running, and waits for it to finish.
+     *
+     * @return How long it ran for, in nanoseconds, or 0 if none was running.
+     */
+    public long stop()
+    {
+        if (pondering == null) return 0;
+
+        long end = System.nanoTime();
+        // a stop can land before the search has started (which clears it), so keep stopping until it has ended
+        while (true)
+        {
+            ponderSearcher.stop();
+            try
+            {
+                // the search may have finished before it was stopped
+                end = Math.min(end, pondering.get(STOP_INTERVAL, TimeUnit.MILLISECONDS));
+                break;
+            }
+            catch (TimeoutException te)
+            {
+                // try again
+            }
+            catch (ExecutionException ee)
+            {
+                throw new IllegalStateException("The background search failed", ee.getCause());
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pondering = null;
+        return end - ponderStart;
+    }
+
+    /**
+     * Forgets the current game, so the next one starts afresh. The table is kept.
+     */
+    public void newGame()
+    {
+        stop();
+        me = Move.NONE;
+    }
+
+    /**
+     * Stops the background thread. The player cannot be used afterwards.
+     */
+    public void shutdown()
+    {
+        stop();
+        ponderThread.shutdownNow();
+    }
+
+    /**
+     * Sums up how pondering has gone: the hit rate, the thinking time it gained and the depths reached.
+     *
+     * @return The summary.
+     */
+    public String getSummary()
+    {
+        if (!enabled)
+        {
+            return String.format("Pondering is off. %d moves searched to an average depth of %.1f.", moves,
+                    moves == 0 ? 0.0 : (double) otherDepths / moves);
+        }
+        return String.format("Ponder hits: %d of %d predictions (%.0f%%). Time saved: %.1f ms per move. " +
+                        "Average depth %.1f after a hit, %.1f otherwise.", hits, predictions,
+                predictions == 0 ? 0.0 : 100.0 * hits / predictions,
+                moves == 0 ? 0.0 : savedNanos / 1e6 / moves,
+                hits == 0 ? 0.0 : (double) hitDepths / hits,
+                moves == hits ? 0.0 : (double) otherDepths / (moves - hits));
+    }
+
+    /**
+     * Gets the deepest worthwhile search of a position: to the end of the game, as far as the table can record.
+     */
+    private static int maxDepth(Board game)
+    {
+        return Math.max(1, Math.min(MAX_DEPTH, game.getRows() * game.getCols() - game.getNumMoves()));
+    }
+}
@@ -0,0 +1,95 @@
+package reversi.search;
+
+
+/**
+ * The outcome of a search: the best move found and what it is worth.
+ *
+ * @author Kevin Becker
+ */
+public final class SearchResult
+{
+    /** the row of the best move. */
+    private final int row;
+    /** the column of the best move. */
+    private final int col;
+    /** the score of the best move, for the player to move. */
+    private final float score;
+    /** the depth that was completed. */
+    private final int depth;
+    /** the number of positions visited. */
+    private final long nodes;
+
+    /**
+     * Creates a search result.
+     *
+     * @param row The row of the best move.
+     * @param col The column of the best move.
+     * @param score The score of the best move, for the player to move.
+     * @param depth The depth that was completed.
+     * @param nodes The number of positions visited.
+     */
+    public SearchResult(int row, int col, float score, int depth, long nodes)
+    {
+        this.row = row;
+        this.col = col;
+        this.score = score;
+        this.depth = depth;
+        this.nodes = nodes;
+    }
+
+    /**
+     * Gets the row of the best move.
+     *
+     * @return The row.
+     */
+    public int getRow()
+    {
+        return row;
+    }
+
+    /**
+     * Gets the column of the best move.
+     *
+     * @return The column.
+     */
+    public int getCol()
+    {
+        return col;
+    }
+
+    /**
+     * Gets the score of the best move, in final discs for the player to move.
+     *
+     * @return The score.
+     */
+    public float getScore()
+    {
+        return score;
+    }
+
+    /**
+     * Gets the depth that was completed.
+     *
+     * @return The depth.
+     */
+    public int getDepth()
+    {
+        return depth;
+    }
+
+    /**
+     * Gets the number of positions visited.
+     *
+     * @return The number of positions.
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "(" + row + ", " + col + ") score " + score + " depth " + depth + " nodes " + nodes;
+    }
+}
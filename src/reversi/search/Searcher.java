@@ -0,0 +1,254 @@
+package reversi.search;
+
+import reversi.*;
+import reversi.Reversi.Move;
+import reversi.eval.PatternEvaluator;
+
+
+/**
+ * Finds good moves with an iterative deepening alpha-beta (negamax) search. Leaves are scored by a
+ * {@link PatternEvaluator}, finished games by their final disc differential, and every searched position is recorded
+ * in a {@link TranspositionTable} which also provides the first move to try on the next iteration.<br><br>
+ *
+ * A searcher is used by one thread at a time, but any number of searchers may share a table. A search can be
+ * stopped from another thread with {@link #stop()}, in which case it returns the result of the last depth it
+ * completed.
+ *
+ * @author Kevin Becker
+ */
+public class Searcher
+{
+    /** a score beyond any reachable evaluation. */
+    private static final float INFINITY = 1e9f;
+
+    /** how many positions are visited between checks of the stop flag and the deadline. */
+    private static final int CHECK_INTERVAL = 1024;
+
+    /** thrown to unwind a search which has been stopped. */
+    private static final SearchAborted ABORTED = new SearchAborted();
+
+    /** scores the leaves of the search. */
+    private final PatternEvaluator evaluator;
+
+    /** remembers positions which have been searched. */
+    private final TranspositionTable table;
+
+    /** set to stop the current search. */
+    private volatile boolean stopped;
+
+    /** the System.nanoTime() at which the current search gives up, or Long.MAX_VALUE. */
+    private long deadline;
+
+    /** the number of positions visited by the current search. */
+    private long nodes;
+
+    /** the best move at the root of the last completed iteration. */
+    private int rootMove;
+
+    /**
+     * Creates a searcher.
+     *
+     * @param evaluator Scores the leaves of the search.
+     * @param table Remembers positions which have been searched (may be shared with other searchers).
+     */
+    public Searcher(PatternEvaluator evaluator, TranspositionTable table)
+    {
+        this.evaluator = evaluator;
+        this.table = table;
+    }
+
+    /**
+     * Searches a position to a fixed depth.
+     *
+     * @param game The position, which is not modified.
+     * @param depth The number of moves to look ahead.
+     *
+     * @return The best move found, or null if the game is over.
+     *
+     * @throws IllegalArgumentException If the board has more than {@link TranspositionTable#MAX_CELLS} cells.
+     */
+    public SearchResult search(Board game, int depth)
+    {
+        return search(game, depth, Long.MAX_VALUE);
+    }
+
+    /**
+     * Searches a position one depth at a time until a maximum depth, a time limit or {@link #stop()}.
+     *
+     * @param game The position, which is not modified.
+     * @param maxDepth The deepest search to run.
+     * @param timeLimitNanos How long to search for, in nanoseconds (Long.MAX_VALUE for no limit).
+     *
+     * @return The result of the deepest search which completed, or null if the game is over or no search completed.
+     *
+     * @throws IllegalArgumentException If the board has more than {@link TranspositionTable#MAX_CELLS} cells.
+     */
+    public SearchResult search(Board game, int maxDepth, long timeLimitNanos)
+    {
+        if ((long) game.getRows() * game.getCols() > TranspositionTable.MAX_CELLS)
+        {
+            throw new IllegalArgumentException("Boards of more than " + TranspositionTable.MAX_CELLS +
+                    " cells cannot be searched");
+        }
+        stopped = false;
+        nodes = 0;
+        deadline = timeLimitNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + timeLimitNanos;
+        if (game.gameOver()) return null;
+
+        SearchResult best = null;
+        try
+        {
+            for (int depth = 1; depth <= maxDepth; ++depth)
+            {
+                float score = negamax(game, depth, -INFINITY, INFINITY, 0);
+                best = new SearchResult(rootMove / game.getCols(), rootMove % game.getCols(), score, depth, nodes);
+            }
+        }
+        catch (SearchAborted sa)
+        {
+            // keep the result of the last depth that finished
+        }
+        return best;
+    }
+
+    /**
+     * Stops the current search as soon as possible. Safe to call from any thread.
+     */
+    public void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Gets the number of positions visited by the last search so far.
+     *
+     * @return The number of positions.
+     */
+    public long getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Scores a position for the player to move.
+     *
+     * @param game The position.
+     * @param depth The number of moves left to look ahead.
+     * @param alpha The score the player to move is already sure of.
+     * @param beta The score the opponent is already sure of (from this player's point of view).
+     * @param ply How many moves from the root this position is.
+     *
+     * @return The score, exact if strictly between alpha and beta and a bound otherwise.
+     */
+    private float negamax(Board game, int depth, float alpha, float beta, int ply)
+    {
+        if (++nodes % CHECK_INTERVAL == 0 && (stopped || System.nanoTime() > deadline)) throw ABORTED;
+
+        if (game.gameOver()) return finalScore(game);
+        if (depth == 0) return evaluator.evaluate(game);
+
+        long hash = game.getHash();
+        long entry = table.probe(hash);
+        int firstMove = -1;
+        if (entry != 0)
+        {
+            firstMove = TranspositionTable.move(entry);
+            if (ply > 0 && TranspositionTable.depth(entry) >= depth)
+            {
+                float score = TranspositionTable.score(entry);
+                int bound = TranspositionTable.bound(entry);
+                if (bound == TranspositionTable.EXACT ||
+                        (bound == TranspositionTable.LOWER && score >= beta) ||
+                        (bound == TranspositionTable.UPPER && score <= alpha))
+                {
+                    return score;
+                }
+            }
+        }
+
+        int [] moves = game.getValidMoves();
+        // try the move that was best last time first, since it usually still is
+        for (int i = 1; i < moves.length && firstMove >= 0; ++i)
+        {
+            if (moves[i] == firstMove)
+            {
+                moves[i] = moves[0];
+                moves[0] = firstMove;
+                break;
+            }
+        }
+
+        int cols = game.getCols();
+        float originalAlpha = alpha;
+        float bestScore = -INFINITY;
+        int bestMove = -1;
+        for (int move : moves)
+        {
+            Board child = game.copy();
+            try
+            {
+                child.makeMove(move / cols, move % cols);
+            }
+            catch (ReversiException re)
+            {
+                // only valid moves were generated
+                throw new IllegalStateException(re);
+            }
+
+            float score = -negamax(child, depth - 1, -beta, -alpha, ply + 1);
+            if (score > bestScore)
+            {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) alpha = score;
+                if (alpha >= beta) break;
+            }
+        }
+
+        int bound = bestScore <= originalAlpha ? TranspositionTable.UPPER
+                : bestScore >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+        table.store(hash, bestScore, bestMove, depth, bound);
+        if (ply == 0) rootMove = bestMove;
+        return bestScore;
+    }
+
+    /**
+     * Scores a finished game: the disc differential for the player to move.
+     *
+     * @param game The finished game.
+     *
+     * @return The score.
+     */
+    private static float finalScore(Board game)
+    {
+        Move me = game.getCurrentPlayer();
+        int differential = 0;
+        for (int row = 0; row < game.getRows(); ++row)
+        {
+            for (int col = 0; col < game.getCols(); ++col)
+            {
+                Move move = game.getCell(row, col);
+                if (move == me) ++differential;
+                else if (move != Move.NONE) --differential;
+            }
+        }
+        return differential;
+    }
+
+    /**
+     * Unwinds a stopped search. It carries no stack trace since it is thrown often and never reported.
+     */
+    private static final class SearchAborted extends RuntimeException
+    {
+        /** the version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Creates the exception.
+         */
+        SearchAborted()
+        {
+            super("search aborted", null, false, false);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package reversi.search;
+
+import java.util.Arrays;
+
+
+/**
+ * A fixed-size table of search results keyed by {@link reversi.Board#getHash()}, so positions reached through
+ * different move orders are only searched once. Entries are stored in two primitive arrays with the key XORed with
+ * the data, which lets several threads share one table without locks: an entry torn by a concurrent write simply
+ * fails to match its key and reads as a miss.
+ *
+ * @author Kevin Becker
+ */
+public class TranspositionTable
+{
+    /** the stored score is exact. */
+    static final int EXACT = 0;
+    /** the stored score is a lower bound (the search failed high). */
+    static final int LOWER = 1;
+    /** the stored score is an upper bound (the search failed low). */
+    static final int UPPER = 2;
+
+    /** the value stored for "no best move". */
+    private static final int NO_MOVE = 0xffffff;
+
+    /** the most cells a board may have for its moves to fit in an entry. */
+    public static final int MAX_CELLS = NO_MOVE;
+
+    /** the keys of each entry, XORed with their data. */
+    private final long [] keys;
+
+    /** the packed data of each entry: score bits (32), move (24), a used flag, depth (5) and bound (2). */
+    private final long [] data;
+
+    /** selects a slot from a hash. */
+    private final int mask;
+
+    /**
+     * Creates a table with room for at least the given number of entries (rounded up to a power of two).
+     *
+     * @param entries The number of entries.
+     */
+    public TranspositionTable(int entries)
+    {
+        int size = Integer.highestOneBit(Math.max(2, entries - 1)) << 1;
+        this.keys = new long[size];
+        this.data = new long[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param hash The hash of the position.
+     *
+     * @return The packed entry, or 0 if the position is not in the table.
+     */
+    long probe(long hash)
+    {
+        int slot = (int) hash & mask;
+        long entry = data[slot];
+        return (keys[slot] ^ entry) == hash && entry != 0 ? entry : 0;
+    }
+
+    /**
+     * Stores the result of searching a position, replacing whatever was in its slot.
+     *
+     * @param hash The hash of the position.
+     * @param score The score of the position.
+     * @param move The best move found (row * cols + col, below {@link #MAX_CELLS}), or -1 for none.
+     * @param depth The depth searched.
+     * @param bound Whether the score is {@link #EXACT}, a {@link #LOWER} or an {@link #UPPER} bound.
+     */
+    void store(long hash, float score, int move, int depth, int bound)
+    {
+        long entry = ((long) Float.floatToIntBits(score) << 32) | ((long) (move < 0 ? NO_MOVE : move) << 8) |
+                ((long) Math.min(depth, 31) << 2) | bound | (1L << 7);
+        int slot = (int) hash & mask;
+        keys[slot] = hash ^ entry;
+        data[slot] = entry;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear()
+    {
+        Arrays.fill(keys, 0);
+        Arrays.fill(data, 0);
+    }
+
+    /**
+     * Gets the score of an entry.
+     */
+    static float score(long entry)
+    {
+        return Float.intBitsToFloat((int) (entry >>> 32));
+    }
+
+    /**
+     * Gets the best move of an entry, or -1 for none.
+     */
+    static int move(long entry)
+    {
+        int move = (int) (entry >>> 8) & NO_MOVE;
+        return move == NO_MOVE ? -1 : move;
+    }
+
+    /**
+     * Gets the depth of an entry.
+     */
+    static int depth(long entry)
+    {
+        return (int) (entry >>> 2) & 31;
+    }
+
+    /**
+     * Gets the bound type of an entry.
+     */
+    static int bound(long entry)
+    {
+        return (int) entry & 3;
+    }
+}
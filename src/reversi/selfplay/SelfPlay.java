@@ -0,0 +1,427 @@
+package reversi.selfplay;
+
+import reversi.*;
+import reversi.Reversi.Move;
+import reversi.eval.PatternEvaluator;
+import reversi.search.SearchResult;
+import reversi.search.Searcher;
+import reversi.search.TranspositionTable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPOutputStream;
+
+
+/**
+ * Generates training positions by having the engine play itself. Games are played directly on {@link Reversi} boards
+ * by one worker thread per core; finished games are handed through a bounded queue to a few writer threads, which
+ * compress them into shard files. Workers only wait on the disk if the writers fall a whole queue behind, and the
+ * time they spend waiting is reported.<br><br>
+ *
+ * Every game has its own random generator, seeded from the run's seed and the game's number, and every search starts
+ * from an empty transposition table, so game n of a run is the same whichever thread plays it and however many
+ * threads there are (only the order of games within the shards varies).<br><br>
+ *
+ * Each shard is a gzip stream of records, one per position played: the position as written by
+ * {@link Position#toBytes()}, followed by the final disc differential from player one's point of view as a signed
+ * big endian short. {@link ShardReader} reads them back.
+ *
+ * @author Kevin Becker
+ */
+public class SelfPlay
+{
+    /** the largest board whose disc differential always fits the records' short. */
+    static final int MAX_CELLS = Short.MAX_VALUE;
+
+    /** the number of opening moves played at random, so games differ. */
+    private static final int RANDOM_OPENING = 8;
+
+    /** the chance of a random move after the opening, so positions stay varied. */
+    private static final double EXPLORATION = 0.1;
+
+    /** the number of positions written to a shard before the next one is started. */
+    private static final long SHARD_POSITIONS = 10_000_000;
+
+    /** the number of finished games which may wait for a writer. */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    /** the number of entries in each worker's transposition table. */
+    private static final int TABLE_ENTRIES = 1 << 16;
+
+    /** tells a writer there are no more games. */
+    private static final byte [] END = new byte[0];
+
+    /** where the shards are written. */
+    private final Path directory;
+
+    /** the number of rows of every game. */
+    private final int rows;
+
+    /** the number of columns of every game. */
+    private final int cols;
+
+    /** the depth of each engine search (0 plays every move at random). */
+    private final int depth;
+
+    /** the seed from which every game's seed is derived. */
+    private final long seed;
+
+    /** scores the leaves of every search. */
+    private final PatternEvaluator evaluator;
+
+    /** finished games, already encoded, on their way to the writers. */
+    private final BlockingQueue<byte []> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /** the number of the next game to play. */
+    private final AtomicLong nextGame = new AtomicLong();
+
+    /** the number of positions played. */
+    private final LongAdder positions = new LongAdder();
+
+    /** the number of bytes of records handed to the writers (before compression). */
+    private final LongAdder bytes = new LongAdder();
+
+    /** the time workers spent waiting for room in the queue, in nanoseconds. */
+    private final LongAdder stalledNanos = new LongAdder();
+
+    /**
+     * Creates a self-play run.
+     *
+     * @param directory Where the shards are written.
+     * @param rows The number of rows of every game.
+     * @param cols The number of columns of every game.
+     * @param depth The depth of each engine search (0 plays every move at random).
+     * @param seed The seed from which every game's seed is derived.
+     * @param evaluator Scores the leaves of every search.
+     *
+     * @throws IllegalArgumentException If the board has more than {@link #MAX_CELLS} cells, so a differential could
+     * wrap in its record.
+     */
+    public SelfPlay(Path directory, int rows, int cols, int depth, long seed, PatternEvaluator evaluator)
+    {
+        if ((long) rows * cols > MAX_CELLS)
+        {
+            throw new IllegalArgumentException("Boards of more than " + MAX_CELLS + " cells cannot be recorded");
+        }
+        this.directory = directory;
+        this.rows = rows;
+        this.cols = cols;
+        this.depth = depth;
+        this.seed = seed;
+        this.evaluator = evaluator;
+    }
+
+    /**
+     * Plays games and writes their positions.
+     *
+     * @param args The arguments:<br><br><em>
+     *             0 => The directory the shards are written to.<br>
+     *             1 => The number of games to play.<br>
+     *             2 => (optional) The search depth, 0 for random play (default 2).<br>
+     *             3 => (optional) The seed (default 1).<br>
+     *             4, 5 => (optional) The number of rows and columns (default 8 8).<br>
+     *             6 => (optional) A weights file for the evaluator.</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 2 || args.length > 7 || args.length == 5)
+        {
+            System.out.println("Invalid number of arguments.\n" +
+                    "Usage: java SelfPlay out_dir #_games [depth [seed [#_rows #_cols [weights]]]]");
+            System.exit(1);
+        }
+
+        try
+        {
+            long games = Long.parseLong(args[1]);
+            int depth = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+            long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+            int rows = args.length > 5 ? Integer.parseInt(args[4]) : Reversi.DIM;
+            int cols = args.length > 5 ? Integer.parseInt(args[5]) : Reversi.DIM;
+            PatternEvaluator evaluator = args.length > 6 ? PatternEvaluator.load(Paths.get(args[6]))
+                    : PatternEvaluator.createDefault();
+
+            int cores = Runtime.getRuntime().availableProcessors();
+            SelfPlay selfPlay = new SelfPlay(Paths.get(args[0]), rows, cols, depth, seed, evaluator);
+            selfPlay.run(games, cores, Math.max(1, cores / 4));
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An error has occurred while writing the shards.");
+        }
+        catch (InterruptedException ie)
+        {
+            System.out.println("Self-play was interrupted.");
+        }
+        catch (IllegalArgumentException iae)
+        {
+            System.out.println(iae.getMessage() + ".");
+        }
+    }
+
+    /**
+     * Plays a number of games and writes their positions, then reports the throughput.
+     *
+     * @param games The number of games to play.
+     * @param workers The number of threads playing games.
+     * @param writers The number of threads writing shards (each writes its own shards).
+     *
+     * @throws IOException If a shard cannot be written.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    public void run(long games, int workers, int writers) throws IOException, InterruptedException
+    {
+        Files.createDirectories(directory);
+        long start = System.nanoTime();
+
+        IOException [] failure = new IOException[1];
+        List<Thread> writerThreads = new ArrayList<>();
+        for (int i = 0; i < writers; ++i)
+        {
+            int writer = i;
+            writerThreads.add(start("reversi-selfplay-writer", () -> {
+                try
+                {
+                    write(writer);
+                }
+                catch (IOException ioe)
+                {
+                    synchronized (failure)
+                    {
+                        failure[0] = ioe;
+                    }
+                    // stop handing out games, and keep taking them so no worker waits on a writer which has gone
+                    nextGame.set(Long.MAX_VALUE / 2);
+                    drain();
+                }
+            }));
+        }
+
+        List<Thread> workerThreads = new ArrayList<>();
+        for (int i = 0; i < workers; ++i)
+        {
+            workerThreads.add(start("reversi-selfplay", () -> play(games)));
+        }
+        for (Thread worker : workerThreads)
+        {
+            worker.join();
+        }
+        for (int i = 0; i < writers; ++i)
+        {
+            queue.put(END);
+        }
+        for (Thread writer : writerThreads)
+        {
+            writer.join();
+        }
+
+        synchronized (failure)
+        {
+            if (failure[0] != null) throw failure[0];
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        long played = positions.sum();
+        int cores = Math.min(workers, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%,d games, %,d positions (%,d bytes before compression) in %.1f s%n", games, played,
+                bytes.sum(), seconds);
+        System.out.printf("%,.0f positions/s, %,.0f positions/s per core (%d workers, %d writers), " +
+                "workers waited %.1f ms for the writers%n", played / seconds, played / seconds / cores, workers,
+                writers, stalledNanos.sum() / 1e6);
+    }
+
+    /**
+     * Plays games until the run has played enough. Runs on each worker thread.
+     *
+     * @param games The number of games in the run.
+     */
+    private void play(long games)
+    {
+        TranspositionTable table = depth > 0 ? new TranspositionTable(TABLE_ENTRIES) : null;
+        Searcher searcher = table == null ? null : new Searcher(evaluator, table);
+
+        long game;
+        while ((game = nextGame.getAndIncrement()) < games)
+        {
+            if (table != null) table.clear();
+            byte [] record = playGame(new SplittableRandom(seed + game * 0x9E3779B97F4A7C15L), searcher);
+
+            long waitStart = System.nanoTime();
+            try
+            {
+                if (!queue.offer(record))
+                {
+                    queue.put(record);
+                    stalledNanos.add(System.nanoTime() - waitStart);
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Plays one game and encodes every position of it.
+     *
+     * @param random The game's own random generator.
+     * @param searcher Chooses the engine's moves, or null to play at random.
+     *
+     * @return The records of the game's positions.
+     */
+    byte [] playGame(SplittableRandom random, Searcher searcher)
+    {
+        Reversi game = new Reversi(rows, cols);
+        List<byte []> played = new ArrayList<>(rows * cols);
+
+        while (!game.gameOver())
+        {
+            played.add(Position.of(game).toBytes());
+
+            int move;
+            // getNumMoves counts the four starting discs, the positions played so far count just the moves
+            if (searcher == null || played.size() <= RANDOM_OPENING || random.nextDouble() < EXPLORATION)
+            {
+                int [] moves = game.getValidMoves();
+                move = moves[random.nextInt(moves.length)];
+            }
+            else
+            {
+                SearchResult best = searcher.search(game, depth);
+                move = best.getRow() * cols + best.getCol();
+            }
+
+            try
+            {
+                game.makeMove(move / cols, move % cols);
+            }
+            catch (ReversiException re)
+            {
+                // the move came from the board's own list of valid moves
+                throw new IllegalStateException(re);
+            }
+        }
+
+        short result = (short) differential(game);
+        int size = played.isEmpty() ? 0 : played.get(0).length + Short.BYTES;
+        ByteBuffer record = ByteBuffer.allocate(size * played.size());
+        for (byte [] position : played)
+        {
+            record.put(position).putShort(result);
+        }
+
+        positions.add(played.size());
+        bytes.add(record.capacity());
+        return record.array();
+    }
+
+    /**
+     * Writes finished games to this writer's shards until there are no more. Runs on each writer thread.
+     *
+     * @param writer The number of this writer, which names its shards.
+     */
+    private void write(int writer) throws IOException
+    {
+        int shard = 0;
+        long inShard = 0;
+        OutputStream out = null;
+        try
+        {
+            byte [] record;
+            while ((record = queue.take()) != END)
+            {
+                if (record.length == 0) continue;
+                if (out == null || inShard >= SHARD_POSITIONS)
+                {
+                    if (out != null) out.close();
+                    Path file = directory.resolve(String.format("selfplay-%02d-%04d.bin.gz", writer, shard++));
+                    out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16),
+                            1 << 16);
+                    inShard = 0;
+                }
+                out.write(record);
+                inShard += positionsIn(record);
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        finally
+        {
+            if (out != null) out.close();
+        }
+    }
+
+    /**
+     * Discards finished games until there are no more.
+     */
+    private void drain()
+    {
+        try
+        {
+            while (queue.take() != END)
+            {
+                // the game is lost along with the shard
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Works out how many positions a game's records hold.
+     */
+    private static int positionsIn(byte [] record)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int cells = (buffer.getShort(0) & 0xffff) * (buffer.getShort(2) & 0xffff);
+        return record.length / (4 + 2 * ((cells + 7) / 8) + Short.BYTES);
+    }
+
+    /**
+     * Counts player one's discs less player two's.
+     */
+    private static int differential(Reversi game)
+    {
+        int difference = 0;
+        for (int row = 0; row < game.getRows(); ++row)
+        {
+            for (int col = 0; col < game.getCols(); ++col)
+            {
+                Move cell = game.getCell(row, col);
+                if (cell == Move.PLAYER_ONE) ++difference;
+                else if (cell == Move.PLAYER_TWO) --difference;
+            }
+        }
+        return difference;
+    }
+
+    /**
+     * Starts a daemon thread.
+     */
+    private static Thread start(String name, Runnable task)
+    {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+}
@@ -0,0 +1,146 @@
+package reversi.selfplay;
+
+import reversi.*;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Reads back the records of a shard written by {@link SelfPlay}, one position at a time.
+ *
+ * @author Kevin Becker
+ */
+public class ShardReader implements Closeable
+{
+    /** the decompressed shard. */
+    private final DataInputStream in;
+
+    /** the position of the current record. */
+    private Position position;
+
+    /** the final disc differential of the current record's game, from player one's point of view. */
+    private int result;
+
+    /**
+     * Opens a shard.
+     *
+     * @param shard The shard.
+     *
+     * @throws IOException If the shard cannot be read.
+     */
+    public ShardReader(Path shard) throws IOException
+    {
+        this.in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(shard),
+                1 << 16)));
+    }
+
+    /**
+     * Summarises shards: how many positions and games they hold and how player one did.
+     *
+     * @param args The arguments:<br><br><em>
+     *             0... => The shards.</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java ShardReader shard...");
+            System.exit(1);
+        }
+
+        for (String shard : args)
+        {
+            long positions = 0;
+            long games = 0;
+            long p1Wins = 0;
+            try (ShardReader reader = new ShardReader(Paths.get(shard)))
+            {
+                while (reader.next())
+                {
+                    ++positions;
+                    // every game starts from the four starting discs
+                    if (reader.getPosition().getDiscCount() == 4)
+                    {
+                        ++games;
+                        if (reader.getResult() > 0) ++p1Wins;
+                    }
+                }
+                System.out.printf("%s: %,d positions from %,d games, player one won %.1f%%%n", shard, positions,
+                        games, 100.0 * p1Wins / Math.max(1, games));
+            }
+            catch (IOException | ReversiException e)
+            {
+                System.err.println("Error - " + e.getMessage());
+                System.out.println("An error has occurred while reading " + shard + ".");
+            }
+        }
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return False at the end of the shard.
+     *
+     * @throws IOException If the shard cannot be read.
+     * @throws ReversiException If the record does not hold a valid position.
+     */
+    public boolean next() throws IOException, ReversiException
+    {
+        int rows;
+        try
+        {
+            rows = in.readUnsignedShort();
+        }
+        catch (EOFException eofe)
+        {
+            return false;
+        }
+        int cols = in.readUnsignedShort();
+        int cells = rows * cols;
+
+        byte [] bytes = new byte[4 + 2 * ((cells + 7) / 8)];
+        bytes[0] = (byte) (rows >>> 8);
+        bytes[1] = (byte) rows;
+        bytes[2] = (byte) (cols >>> 8);
+        bytes[3] = (byte) cols;
+        in.readFully(bytes, 4, bytes.length - 4);
+
+        position = Position.fromBytes(bytes);
+        result = in.readShort();
+        return true;
+    }
+
+    /**
+     * Gets the position of the current record.
+     *
+     * @return The position.
+     */
+    public Position getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * Gets the final disc differential of the current record's game, from player one's point of view.
+     *
+     * @return The differential.
+     */
+    public int getResult()
+    {
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
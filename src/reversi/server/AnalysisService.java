@@ -0,0 +1,281 @@
+package reversi.server;
+
+import reversi.*;
+import reversi.book.Symmetry;
+import reversi.eval.PatternEvaluator;
+import reversi.search.SearchResult;
+import reversi.search.Searcher;
+import reversi.search.TranspositionTable;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Answers "what is the best move here, and what is it worth?" for the {@link ReversiProtocol#ANALYZE} request.
+ * Searches run on a fixed pool of worker threads with a bounded queue, so a burst of requests cannot swamp the
+ * server. Positions are folded by symmetry before anything else, so a position and its rotations and reflections
+ * share one cache entry and one search:
+ * <ul>
+ *     <li>results are kept in a size-bounded LRU cache;</li>
+ *     <li>a request for a position which is already being searched waits for that search instead of starting
+ *     another.</li>
+ * </ul>
+ * The number of replies to each move grows with the board, so the deepest search allowed shrinks as the board grows
+ * (see {@link #maxDepth(int, int)}), and every search gives up after {@link #TIME_LIMIT_MILLIS} with the deepest
+ * result it finished.
+ *
+ * @author Kevin Becker
+ */
+class AnalysisService
+{
+    /** the deepest search a client may ask for, on boards up to 8x8. */
+    static final int MAX_DEPTH = 6;
+
+    /** how long a search may run for, in milliseconds. */
+    static final long TIME_LIMIT_MILLIS = 2000;
+
+    /** how long a caller should wait for an answer (the search plus some time waiting for a worker). */
+    static final long ANSWER_TIMEOUT_MILLIS = TIME_LIMIT_MILLIS + 1000;
+
+    /** the depth used when a client does not ask for one. */
+    static final int DEFAULT_DEPTH = 4;
+
+    /** the number of searches which may wait for a worker. */
+    private static final int QUEUE_CAPACITY = 256;
+
+    /** the number of results kept in the cache. */
+    private static final int CACHE_CAPACITY = 100_000;
+
+    /** the number of entries in the transposition table shared by the workers. */
+    private static final int TABLE_ENTRIES = 1 << 20;
+
+    /** scores the leaves of every search. */
+    private final PatternEvaluator evaluator;
+
+    /** shared by every worker, so work on one request speeds up similar ones. */
+    private final TranspositionTable table = new TranspositionTable(TABLE_ENTRIES);
+
+    /** one searcher per worker thread. */
+    private final ThreadLocal<Searcher> searchers;
+
+    /** the worker threads. */
+    private final ThreadPoolExecutor workers;
+
+    /** finished results, keyed by canonical position and depth. */
+    private final LruCache<Key, SearchResult> cache = new LruCache<>(CACHE_CAPACITY);
+
+    /** searches which have been queued or started but not finished. */
+    private final ConcurrentHashMap<Key, CompletableFuture<SearchResult>> inFlight = new ConcurrentHashMap<>();
+
+    /** the number of requests which joined a search that was already in flight. */
+    private final LongAdder collapsed = new LongAdder();
+
+    /** the number of searches which were rejected because the queue was full. */
+    private final LongAdder rejected = new LongAdder();
+
+    /** the number of searches which have started. */
+    private final LongAdder started = new LongAdder();
+
+    /** the total time searches spent waiting for a worker, in nanoseconds. */
+    private final LongAdder totalQueueNanos = new LongAdder();
+
+    /** the longest time a search spent waiting for a worker, in nanoseconds. */
+    private final AtomicLong maxQueueNanos = new AtomicLong();
+
+    /**
+     * Creates the service and starts its workers.
+     *
+     * @param evaluator Scores the leaves of every search.
+     * @param threads The number of worker threads.
+     */
+    AnalysisService(PatternEvaluator evaluator, int threads)
+    {
+        this.evaluator = evaluator;
+        this.searchers = ThreadLocal.withInitial(() -> new Searcher(this.evaluator, table));
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), runnable -> {
+                    Thread thread = new Thread(runnable, "reversi-analysis");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Finds the best move in a position.
+     *
+     * @param game The position, which is copied so the caller may keep playing on it.
+     * @param depth The number of moves to look ahead (clamped to 1..{@link #maxDepth(int, int)}).
+     *
+     * @return The best move (in the caller's orientation of the board) once it is known, or a future which fails
+     * with {@link RejectedExecutionException} if the server is too busy.
+     */
+    CompletableFuture<SearchResult> analyze(Board game, int depth)
+    {
+        Position position = Position.of(game);
+        int symmetry = Symmetry.canonicalSymmetry(position);
+        int maxDepth = maxDepth(game.getRows(), game.getCols());
+        Key key = new Key(Symmetry.transform(position, symmetry), Math.max(1, Math.min(maxDepth, depth)));
+        int inverse = Symmetry.inverse(symmetry);
+
+        SearchResult cached = cache.get(key);
+        if (cached != null)
+        {
+            return CompletableFuture.completedFuture(orient(cached, inverse, game));
+        }
+
+        boolean [] created = new boolean[1];
+        CompletableFuture<SearchResult> search = inFlight.computeIfAbsent(key, k -> {
+            created[0] = true;
+            return new CompletableFuture<>();
+        });
+        if (created[0])
+        {
+            submit(key, search);
+        }
+        else
+        {
+            collapsed.increment();
+        }
+        return search.thenApply(result -> orient(result, inverse, game));
+    }
+
+    /**
+     * Gets the deepest search allowed on a board. Each is measured to take well under a second in the middle of a
+     * game on one core.
+     *
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     *
+     * @return The depth.
+     */
+    static int maxDepth(int rows, int cols)
+    {
+        long area = (long) rows * cols;
+        if (area <= 64) return MAX_DEPTH;
+        if (area <= 144) return 5;
+        if (area <= 400) return 4;
+        if (area <= 1024) return 3;
+        return 2;
+    }
+
+    /**
+     * Describes how the service has been doing.
+     *
+     * @return The statistics, on one line.
+     */
+    String getStatistics()
+    {
+        long searches = started.sum();
+        return String.format("Analysis: %d cache hits, %d misses (%.1f%% hit rate), %d collapsed, %d rejected, " +
+                        "queue latency avg %.2f ms max %.2f ms",
+                cache.getHits(), cache.getMisses(), 100 * cache.getHitRate(), collapsed.sum(), rejected.sum(),
+                searches == 0 ? 0 : totalQueueNanos.sum() / 1e6 / searches, maxQueueNanos.get() / 1e6);
+    }
+
+    /**
+     * Stops the workers. Searches which are running are left to finish.
+     */
+    void shutdown()
+    {
+        workers.shutdown();
+    }
+
+    /**
+     * Queues the search for a canonical position.
+     *
+     * @param key The canonical position and depth.
+     * @param search Completed with the result.
+     */
+    private void submit(Key key, CompletableFuture<SearchResult> search)
+    {
+        long queued = System.nanoTime();
+        try
+        {
+            workers.execute(() -> {
+                long waited = System.nanoTime() - queued;
+                started.increment();
+                totalQueueNanos.add(waited);
+                maxQueueNanos.accumulateAndGet(waited, Math::max);
+                try
+                {
+                    SearchResult result = searchers.get().search(key.position.toBoard(), key.depth,
+                            TimeUnit.MILLISECONDS.toNanos(TIME_LIMIT_MILLIS));
+                    // a search cut short by the time limit is not what was asked for, so it is not cached
+                    if (result != null && result.getDepth() == key.depth) cache.put(key, result);
+                    search.complete(result);
+                }
+                catch (RuntimeException re)
+                {
+                    search.completeExceptionally(re);
+                }
+                finally
+                {
+                    inFlight.remove(key, search);
+                }
+            });
+        }
+        catch (RejectedExecutionException ree)
+        {
+            rejected.increment();
+            inFlight.remove(key, search);
+            search.completeExceptionally(ree);
+        }
+    }
+
+    /**
+     * Maps a result found on the canonical position back onto the board the caller asked about.
+     *
+     * @param result The result on the canonical position, or null if the game was over.
+     * @param inverse The symmetry from the canonical position back to the caller's.
+     * @param game The caller's board.
+     *
+     * @return The result on the caller's board.
+     */
+    private static SearchResult orient(SearchResult result, int inverse, Board game)
+    {
+        if (result == null) return null;
+
+        int cell = Symmetry.transformCell(inverse, game.getRows(), game.getCols(), result.getRow(), result.getCol());
+        return new SearchResult(cell / game.getCols(), cell % game.getCols(), result.getScore(), result.getDepth(),
+                result.getNodes());
+    }
+
+    /**
+     * A canonical position and a search depth.
+     */
+    private static final class Key
+    {
+        /** the canonical position. */
+        private final Position position;
+        /** the depth to search. */
+        private final int depth;
+
+        /**
+         * Creates a key.
+         */
+        Key(Position position, int depth)
+        {
+            this.position = position;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean equals(Object other)
+        {
+            return other instanceof Key && ((Key) other).depth == depth && ((Key) other).position.equals(position);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * position.hashCode() + depth;
+        }
+    }
+}
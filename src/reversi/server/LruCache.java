@@ -0,0 +1,151 @@
+package reversi.server;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A size-bounded, thread-safe cache which evicts the least recently used entries. The keys are spread over a number
+ * of independently locked segments, each an access-ordered {@link LinkedHashMap}, so threads working on different
+ * keys rarely wait for each other.
+ *
+ * @param <K> The type of the keys.
+ * @param <V> The type of the values.
+ *
+ * @author Kevin Becker
+ */
+class LruCache<K, V>
+{
+    /** the number of independently locked segments. */
+    private static final int SEGMENTS = 16;
+
+    /** the segments, each holding a share of the capacity. */
+    private final Segment<K, V> [] segments;
+
+    /** the number of lookups which found a value. */
+    private final LongAdder hits = new LongAdder();
+
+    /** the number of lookups which found nothing. */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity The most entries the cache holds (rounded up to a multiple of the segment count).
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    LruCache(int capacity)
+    {
+        int perSegment = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; ++i)
+        {
+            segments[i] = new Segment<>(perSegment);
+        }
+    }
+
+    /**
+     * Looks up a value and marks it as recently used.
+     *
+     * @param key The key.
+     *
+     * @return The value, or null if it is not cached.
+     */
+    V get(K key)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        V value;
+        synchronized (segment)
+        {
+            value = segment.get(key);
+        }
+        if (value != null) hits.increment();
+        else misses.increment();
+        return value;
+    }
+
+    /**
+     * Adds a value, evicting the least recently used entry of its segment if it is full.
+     *
+     * @param key The key.
+     * @param value The value.
+     */
+    void put(K key, V value)
+    {
+        Segment<K, V> segment = segmentFor(key);
+        synchronized (segment)
+        {
+            segment.put(key, value);
+        }
+    }
+
+    /**
+     * Gets the fraction of lookups which found a value.
+     *
+     * @return The hit rate, from 0 to 1.
+     */
+    double getHitRate()
+    {
+        long found = hits.sum();
+        long total = found + misses.sum();
+        return total == 0 ? 0 : (double) found / total;
+    }
+
+    /**
+     * Gets the number of lookups which found a value.
+     *
+     * @return The number of hits.
+     */
+    long getHits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups which found nothing.
+     *
+     * @return The number of misses.
+     */
+    long getMisses()
+    {
+        return misses.sum();
+    }
+
+    /**
+     * Picks the segment of a key, mixing the hash so keys with similar hashes spread out.
+     */
+    private Segment<K, V> segmentFor(K key)
+    {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return segments[(hash * 0x9e3779b9 >>> 28) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * One segment of the cache: an access-ordered map which drops its eldest entry when over capacity.
+     */
+    private static final class Segment<K, V> extends LinkedHashMap<K, V>
+    {
+        /** the version of the serialized form. */
+        private static final long serialVersionUID = 1L;
+
+        /** the most entries this segment holds. */
+        private final int capacity;
+
+        /**
+         * Creates an empty segment.
+         */
+        Segment(int capacity)
+        {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+        {
+            return size() > capacity;
+        }
+    }
+}
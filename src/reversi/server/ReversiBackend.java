@@ -0,0 +1,423 @@
+package reversi.server;
+
+import reversi.*;
+import reversi.archive.ArchiveTool;
+import reversi.archive.GameWriter;
+import reversi.eval.PatternEvaluator;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+import java.nio.file.Paths;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A long-running Reversi server meant to sit behind a {@link reversi.gateway.ReversiGateway}. Unlike
+ * {@link ReversiServer}, which plays one game and exits, it keeps accepting players. Players wait in a lobby, and
+ * every two in a row become player one and player two of a new game, which runs on its own thread.<br><br>
+ *
+ * A connection is not closed when its game ends. A player who answers with NEXT_GAME, or who queued games with
+ * QUEUE, goes back into the lobby to play again on the same connection. Player two goes back in first, so two
+ * players who both carry on usually play a rematch with the colors swapped. A player who sends QUIT, hangs up or
+ * gives no answer within {@link #IDLE_TIMEOUT} is disconnected. If a game fails because one player hung up, the
+ * other goes back to the lobby, and is sent CONNECT again when their next game begins. A player left alone in the
+ * lobby for {@link #LOBBY_TIMEOUT} is disconnected too, so that behind a gateway they reconnect and are sent to a
+ * backend along with the next player to arrive, rather than waiting here while a lone player waits on another
+ * backend.<br><br>
+ *
+ * A second port answers health checks: each connection is sent "OK" and the number of games in progress. It may then
+ * send one command:<br><br><em>
+ *     GAMES => a line for each game in progress, read from the game's {@link ReversiGame#getSnapshot() snapshot}
+ *     without holding up its players (<tt>GAME id rows cols player_one_discs player_two_discs</tt>), then END.<br>
+ *     DRAIN => the backend is drained so it can be taken down: games in progress play on, but CONNECT no longer
+ *     offers NEXT_GAME, players are disconnected when their game ends (whatever they queued), and players waiting in
+ *     the lobby or connecting afresh are disconnected straight away. The answer is DRAINING.<br>
+ *     UNDRAIN => the backend takes players again. The answer is UNDRAINED.</em><br><br>
+ * The connection is closed after that, or as soon as it sends anything else.
+ *
+ * @author Kevin Becker
+ */
+public class ReversiBackend implements ReversiProtocol
+{
+    /** how long a player has to ask for another game after one ends, in milliseconds. */
+    private static final int IDLE_TIMEOUT = 60_000;
+
+    /** how long a health check connection has to send a command, in milliseconds. */
+    private static final int COMMAND_TIMEOUT = 500;
+
+    /** how long a player waits in the lobby for an opponent before being disconnected, in milliseconds. */
+    private static final long LOBBY_TIMEOUT = 5_000;
+
+    /** how often a matchmaker waiting for a second player checks for a drain, in milliseconds. */
+    private static final long DRAIN_POLL = 100;
+
+    /** whether the backend is being drained (see DRAIN). */
+    private static volatile boolean draining;
+
+    /** the players waiting for a game, in the order they became ready. */
+    private static final BlockingQueue<ReversiPlayer> lobby = new LinkedBlockingQueue<>();
+
+    /** waits for players to say whether they will play again, so a slow answer holds up nobody else. */
+    private static final ExecutorService waiters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "reversi-next-game");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** the number of games in progress. */
+    private static final AtomicInteger activeGames = new AtomicInteger();
+
+    /** the games in progress, by ID, for spectators. */
+    private static final Map<Long, ReversiGame> liveGames = new ConcurrentHashMap<>();
+
+    /** the number of connections accepted since the backend started, which numbers them. */
+    private static final AtomicLong totalConnections = new AtomicLong();
+
+    /** the number of games started since the backend started. */
+    private static final AtomicInteger totalGames = new AtomicInteger();
+
+    /** guards the archive games are appended to, since games finish on their own threads. */
+    private static final Object archiveLock = new Object();
+
+    /**
+     * Runs the backend until it is killed.
+     *
+     * @param args The arguments that are used for the creation of the backend.
+     *             The arguments should have the following:<br><br><em>
+     *             0 => The number of rows the Reversi board should have.<br>
+     *             1 => The number of columns the Reversi board should have.<br>
+     *             2 => The port players connect to.<br>
+     *             3 => The port health checks connect to.</em>
+     */
+    public static void main(String [] args)
+    {
+        // if we don't have enough arguments, we don't try to run
+        if (args.length != 4)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java ReversiBackend #_rows #_cols port health_port");
+            System.exit(1);
+        }
+
+        int numRows = Integer.parseInt(args[0]);
+        int numCols = Integer.parseInt(args[1]);
+        int port = Integer.parseInt(args[2]);
+        int healthPort = Integer.parseInt(args[3]);
+        // the board must be at least 2x2 to hold the starting pieces, RESYNC's encoding caps each side and the client's
+        // packed engine caps the area
+        if (numRows < 2 || numCols < 2 || numRows > Position.MAX_SIDE || numCols > Position.MAX_SIDE ||
+                (long) numRows * numCols > Integer.MAX_VALUE - 64)
+        {
+            System.out.println("Invalid board size " + numRows + "x" + numCols + ". Both dimensions must be from 2 to " + Position.MAX_SIDE + " and the area below 2^31.");
+            System.exit(1);
+        }
+
+        // starts the analysis workers, shared by every game, using trained weights if we were given them
+        AnalysisService analysisService;
+        try
+        {
+            String weights = System.getProperty("reversi.weights");
+            analysisService = new AnalysisService(weights == null ? PatternEvaluator.createDefault()
+                    : PatternEvaluator.load(Paths.get(weights)), Runtime.getRuntime().availableProcessors());
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("The weights could not be loaded. Terminating backend.");
+            return;
+        }
+
+        try (ServerSocket server = new ServerSocket(port); ServerSocket health = new ServerSocket(healthPort))
+        {
+            startHealthChecks(health);
+            startMatchmaker(numRows, numCols, analysisService);
+            System.out.println("Backend listening for players on " + port + " and health checks on " + healthPort + ".");
+
+            while (true)
+            {
+                // new players join the lobby; which game they play is decided there, so the trace of the accept
+                // only has the connection's number, which its handshakes also carry
+                long connectionId = totalConnections.incrementAndGet();
+                Socket conn = ReversiPlayer.accept(server, connectionId, 0, 0);
+                if (draining)
+                {
+                    close(null, conn);
+                    continue;
+                }
+                try
+                {
+                    lobby.add(new ReversiPlayer(conn, connectionId));
+                }
+                catch (IOException ioe)
+                {
+                    close(null, conn);
+                }
+            }
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("An issue was encountered with IO. Terminating backend.");
+        }
+        finally
+        {
+            analysisService.shutdown();
+            System.out.println(analysisService.getStatistics());
+        }
+    }
+
+    /**
+     * Answers health checks on their own thread.
+     *
+     * @param health The health check socket.
+     */
+    private static void startHealthChecks(ServerSocket health)
+    {
+        Thread checks = new Thread(() -> {
+            while (!health.isClosed())
+            {
+                try (Socket check = health.accept(); PrintWriter out = new PrintWriter(check.getOutputStream(), true))
+                {
+                    out.println("OK " + activeGames.get());
+
+                    // most checks hang up straight away; a spectator asks for the games, a gateway may drain us
+                    check.setSoTimeout(COMMAND_TIMEOUT);
+                    String command = new BufferedReader(new InputStreamReader(check.getInputStream())).readLine();
+                    if ("GAMES".equals(command)) listGames(out);
+                    else if ("DRAIN".equals(command) || "UNDRAIN".equals(command))
+                    {
+                        draining = command.equals("DRAIN");
+                        System.out.println(draining ? "Draining: no new games will start." : "Taking players again.");
+                        out.println(draining ? "DRAINING" : "UNDRAINED");
+                    }
+                }
+                catch (SocketTimeoutException ste)
+                {
+                    // no command
+                }
+                catch (IOException ioe)
+                {
+                    // a failed check is the checker's problem; keep answering
+                }
+            }
+        }, "reversi-health");
+        checks.setDaemon(true);
+        checks.start();
+    }
+
+    /**
+     * Describes every game in progress from its latest snapshot.
+     *
+     * @param out Where to write the description.
+     */
+    private static void listGames(PrintWriter out)
+    {
+        for (ReversiGame game : liveGames.values())
+        {
+            Position position = game.getSnapshot();
+            int discs1 = 0;
+            int discs2 = 0;
+            for (int i = 0; i < position.getWordCount(); ++i)
+            {
+                discs1 += Long.bitCount(position.getPlayer1Word(i));
+                discs2 += Long.bitCount(position.getPlayer2Word(i));
+            }
+            out.println("GAME " + game.getGameId() + " " + position.getRows() + " " + position.getCols() + " " +
+                    discs1 + " " + discs2);
+        }
+        out.println("END");
+    }
+
+    /**
+     * Pairs the players in the lobby on its own thread, in the order they arrive: the first of each pair is player
+     * one. A player nobody joins within {@link #LOBBY_TIMEOUT} is disconnected, and while the backend is draining,
+     * players taken from the lobby are disconnected instead.
+     *
+     * @param numRows The number of rows in the Reversi game.
+     * @param numCols The number of columns in the Reversi game.
+     * @param analysisService Answers the players' requests for analysis.
+     */
+    private static void startMatchmaker(int numRows, int numCols, AnalysisService analysisService)
+    {
+        Thread matchmaker = new Thread(() -> {
+            try
+            {
+                while (true)
+                {
+                    ReversiPlayer first = lobby.take();
+                    ReversiPlayer second = null;
+                    // neither a drain nor an empty lobby may leave the first player waiting for an opponent who
+                    // will never come
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LOBBY_TIMEOUT);
+                    while (second == null && !draining && System.nanoTime() - deadline < 0)
+                    {
+                        second = lobby.poll(DRAIN_POLL, TimeUnit.MILLISECONDS);
+                    }
+                    if (draining || second == null)
+                    {
+                        close(first, null);
+                        if (second != null) close(second, null);
+                        continue;
+                    }
+                    startGame(first, second, numRows, numCols, analysisService);
+                }
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }, "reversi-matchmaker");
+        matchmaker.setDaemon(true);
+        matchmaker.start();
+    }
+
+    /**
+     * Plays a game between two players on its own thread, then sends each player who wants another game back to
+     * the lobby and disconnects the rest (everyone, if the backend is draining).
+     *
+     * @param reversiPlayer1 Player one.
+     * @param reversiPlayer2 Player two.
+     * @param numRows The number of rows in the Reversi game.
+     * @param numCols The number of columns in the Reversi game.
+     * @param analysisService Answers the players' requests for analysis.
+     */
+    private static void startGame(ReversiPlayer reversiPlayer1, ReversiPlayer reversiPlayer2, int numRows,
+                                  int numCols, AnalysisService analysisService)
+    {
+        int gameNumber = totalGames.incrementAndGet();
+        activeGames.incrementAndGet();
+
+        Thread game = new Thread(() -> {
+            Position finalPosition = null;
+            try
+            {
+                boolean nextGame = !draining;
+                reversiPlayer1.startGame(numRows, numCols, gameNumber, 1, nextGame);
+                reversiPlayer2.startGame(numRows, numCols, gameNumber, 2, nextGame);
+                ReversiGame reversiGame = new ReversiGame(gameNumber, reversiPlayer1, reversiPlayer2, numRows, numCols,
+                        analysisService);
+                liveGames.put((long) gameNumber, reversiGame);
+                reversiGame.run();
+                // built on this thread from the game's board, so it is the end of the game whatever the snapshots do
+                finalPosition = reversiGame.getFinalPosition();
+                System.out.println("Game " + gameNumber + " has finished.");
+                archive(reversiGame);
+            }
+            catch (IOException | RuntimeException e)
+            {
+                System.err.println("Game " + gameNumber + ": I/O Error - " + e);
+            }
+            catch (ReversiException re)
+            {
+                System.err.println("Game " + gameNumber + ": Reversi Error - " + re.getMessage());
+            }
+            finally
+            {
+                liveGames.remove((long) gameNumber);
+                activeGames.decrementAndGet();
+                if (finalPosition != null)
+                {
+                    // player two first, so two players who both carry on swap colors
+                    nextGame(reversiPlayer2, finalPosition);
+                    nextGame(reversiPlayer1, finalPosition);
+                }
+                else
+                {
+                    abandon(reversiPlayer1, reversiPlayer2);
+                    abandon(reversiPlayer2, reversiPlayer1);
+                }
+            }
+        }, "reversi-game-" + gameNumber);
+        game.start();
+    }
+
+    /**
+     * Sends a player whose game has ended back to the lobby if they want another game, and disconnects them if
+     * not, or if the backend is draining. A player with games queued goes straight back; the others are waited for
+     * on another thread.
+     *
+     * @param player The player.
+     * @param finalPosition The position their game ended in, for a player who asks to resync before answering.
+     */
+    private static void nextGame(ReversiPlayer player, Position finalPosition)
+    {
+        if (draining)
+        {
+            close(player, null);
+            return;
+        }
+        if (player.takeQueuedGame())
+        {
+            lobby.add(player);
+            return;
+        }
+        waiters.execute(() -> {
+            if (player.wantsNextGame(IDLE_TIMEOUT, finalPosition) && !draining) lobby.add(player);
+            else close(player, null);
+        });
+    }
+
+    /**
+     * Deals with a player whose game failed. If their opponent hung up (perhaps while waiting in the lobby), the
+     * player did nothing wrong and goes back to the lobby; their next CONNECT replaces the abandoned game. Otherwise,
+     * or if the backend is draining, they are disconnected.
+     *
+     * @param player The player.
+     * @param opponent Their opponent.
+     */
+    private static void abandon(ReversiPlayer player, ReversiPlayer opponent)
+    {
+        if (opponent.hasHungUp() && !player.hasHungUp() && !draining) lobby.add(player);
+        else close(player, null);
+    }
+
+    /**
+     * Adds a finished game to the archive, if we were asked to keep one (-Dreversi.archive=file).
+     *
+     * @param game The finished game.
+     */
+    private static void archive(ReversiGame game) throws IOException
+    {
+        String archive = System.getProperty("reversi.archive");
+        if (archive == null) return;
+
+        synchronized (archiveLock)
+        {
+            try (GameWriter writer = ArchiveTool.openWriter(Paths.get(archive), true))
+            {
+                writer.write(game.getRecord());
+            }
+        }
+    }
+
+    /**
+     * Closes a player, or their bare connection if the player was never created.
+     */
+    private static void close(ReversiPlayer player, Socket conn)
+    {
+        try
+        {
+            if (player != null) player.close();
+            else conn.close();
+        }
+        catch (IOException ioe)
+        {
+            // the game is over either way
+        }
+    }
+}
@@ -1,16 +1,37 @@
 package reversi.server;
 
 import reversi.*;
+import reversi.archive.GameRecord;
+import reversi.search.SearchResult;
+import reversi.trace.AnalysisEvent;
+import reversi.trace.BroadcastEvent;
+import reversi.trace.GameEndEvent;
+import reversi.trace.MoveRoundTripEvent;
+import reversi.trace.MoveValidationEvent;
 
 import java.io.IOException;
 
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 public class ReversiGame implements ReversiProtocol
 {
+    /** the game's ID, which tags its trace events. */
+    private final long gameId;
+
     /** the number of moves that have been made so far*/
     private int numMoves = 0;
 
+    /** the moves that have been made so far, each row * cols + col (the first numMoves are used). */
+    private int [] moves = new int[64];
+
+    /** how long each player took over each move, in milliseconds (the first numMoves are used). */
+    private int [] moveMillis = new int[64];
+
     /** the master game that the server bases its running off of. */
-    private Reversi serverGame;
+    private final Board serverGame;
 
     /** the player object for player 1. */
     private ReversiPlayer reversiPlayer1;
@@ -18,22 +39,42 @@ public class ReversiGame implements ReversiProtocol
     /** the player object for player 2. */
     private ReversiPlayer reversiPlayer2;
 
+    /** answers the players' requests for analysis. */
+    private AnalysisService analysisService;
+
+    /**
+     * the position after the latest move, for threads other than the game's own. Positions are immutable, so a
+     * reader never blocks the game and never sees a board half way through a move.
+     */
+    private volatile Position snapshot;
+
+    /** the number of moves played, written after the snapshot of the latest one (see {@link #getMovesPlayed()}). */
+    private volatile int movesPlayed;
+
     /**
      * Creates a new ReversiGame object. ReversiGame exists to be a more thread friendly approach.
      *
+     * @param gameId The game's ID, which tags its trace events.
      * @param reversiPlayer1 The ReversiPlayer of player1.
      * @param reversiPlayer2 The ReversiPlayer of player2.
      * @param numRows The number of rows in the Reversi game.
      * @param numCols The number of columns in the Reversi game.
+     * @param analysisService Answers the players' requests for analysis.
      */
-    ReversiGame(ReversiPlayer reversiPlayer1, ReversiPlayer reversiPlayer2, int numRows, int numCols)
+    ReversiGame(long gameId, ReversiPlayer reversiPlayer1, ReversiPlayer reversiPlayer2, int numRows, int numCols,
+                AnalysisService analysisService)
     {
+        this.gameId = gameId;
+
         // sets the serverGame to the game given as an argument
-        this.serverGame = new Reversi(numRows, numCols);
+        this.serverGame = Board.create(numRows, numCols);
 
         // sets the reversiPlayers
         this.reversiPlayer1 = reversiPlayer1;
         this.reversiPlayer2 = reversiPlayer2;
+        this.analysisService = analysisService;
+
+        this.snapshot = Position.of(serverGame);
     }
 
     /**
@@ -44,20 +85,32 @@ public class ReversiGame implements ReversiProtocol
         // used to hold the client response on each pass of the loop
         String [] message;
 
+        // times the whole game for tracing, and how it ended
+        GameEndEvent gameEnd = new GameEndEvent();
+        gameEnd.begin();
+        String result = "ERROR";
+
         try
         {
             // continues looping until the game is over (as specified by the Reversi class)
             while (!serverGame.gameOver()) {
-                // gets the next move from the correct player
+                // gets the next move from the correct player, timing how long they take
+                long asked = System.nanoTime();
                 message = getNextMoveFromPlayer();
+                int millis = (int) Math.min(Integer.MAX_VALUE, (System.nanoTime() - asked) / 1_000_000);
 
                 // attempts to make the move requested by the client (held in move)
                 // if it fails, the method throws a ReversiException to the gameIO method
-                serverGame.makeMove(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+                int row = Integer.parseInt(message[1]);
+                int col = Integer.parseInt(message[2]);
+                validateMove(row, col);
+                recordMove(row * serverGame.getCols() + col, millis);
+                publishSnapshot();
 
                 // if there was no exception thrown we can tell each client the move was okay so they can
                 // update their copies of the game
-                sendMoveMade(MOVE_MADE + " " + message[1] + " " + message[2]);
+                sendMoveMade(MOVE_MADE + " " + message[1] + " " + message[2] + " " +
+                        Long.toHexString(serverGame.getHash()));
 
                 // increment numMoves for the next turn
                 ++numMoves;
@@ -65,6 +118,7 @@ public class ReversiGame implements ReversiProtocol
 
             // sends the results to the client
             sendResults();
+            result = serverGame.getWinner().name();
         }
         catch (ReversiException re)
         {
@@ -74,6 +128,105 @@ public class ReversiGame implements ReversiProtocol
             // throw the error again so that the ReversiServer can output correct stuff
             throw re;
         }
+        catch (IOException ioe)
+        {
+            result = "DISCONNECTED";
+            throw ioe;
+        }
+        finally
+        {
+            gameEnd.end();
+            if (gameEnd.shouldCommit())
+            {
+                gameEnd.gameId = gameId;
+                gameEnd.moves = numMoves;
+                gameEnd.result = result;
+                gameEnd.commit();
+            }
+        }
+    }
+
+    /**
+     * Gets the game's ID.
+     *
+     * @return The ID.
+     */
+    long getGameId()
+    {
+        return gameId;
+    }
+
+    /**
+     * Gets the position after the latest move without waiting for the game. Safe to call from any thread; the
+     * backend's spectators read it from the health check thread. A snapshot is published after every move (on large
+     * boards {@link Position#of(Board)} copies the engine's packed cells a word at a time, so this stays cheap).
+     *
+     * @return The position, which never changes.
+     */
+    public Position getSnapshot()
+    {
+        return snapshot;
+    }
+
+    /**
+     * Gets the number of moves played. It is written after each move's snapshot, so a snapshot read after this call
+     * is at least this many moves into the game (and at most one more, if a move lands in between).
+     *
+     * @return The number of moves played.
+     */
+    int getMovesPlayed()
+    {
+        return movesPlayed;
+    }
+
+    /**
+     * Gets the position the game is in, built from the game's own board. Unlike {@link #getSnapshot()} it must only
+     * be called on the game's thread, or once {@link #run()} has returned, and is then always current.
+     *
+     * @return The position.
+     */
+    Position getFinalPosition()
+    {
+        return Position.of(serverGame);
+    }
+
+    /**
+     * Publishes the position after a move to {@link #getSnapshot()}.
+     */
+    private void publishSnapshot()
+    {
+        snapshot = Position.of(serverGame);
+        movesPlayed = numMoves + 1;
+    }
+
+    /**
+     * Gets the record of the game so far, with how long each move took, naming each player by their address.
+     *
+     * @return The record of the game.
+     */
+    GameRecord getRecord()
+    {
+        return new GameRecord(serverGame.getRows(), serverGame.getCols(), Arrays.copyOf(moves, numMoves),
+                reversiPlayer1.getInetAddress() + ":" + reversiPlayer1.getPort(),
+                reversiPlayer2.getInetAddress() + ":" + reversiPlayer2.getPort(), GameRecord.NO_SCORE,
+                Arrays.copyOf(moveMillis, numMoves));
+    }
+
+    /**
+     * Adds a move to the record of the game.
+     *
+     * @param move The move, row * cols + col.
+     * @param millis How long the player took over the move, in milliseconds.
+     */
+    private void recordMove(int move, int millis)
+    {
+        if (numMoves == moves.length)
+        {
+            moves = Arrays.copyOf(moves, numMoves * 2);
+            moveMillis = Arrays.copyOf(moveMillis, numMoves * 2);
+        }
+        moves[numMoves] = move;
+        moveMillis[numMoves] = millis;
     }
 
     /**
@@ -99,6 +252,38 @@ public class ReversiGame implements ReversiProtocol
         }
     }
 
+    /**
+     * Checks the move a player asked for and plays it on the server's board.
+     *
+     * @param row The row of the move.
+     * @param col The column of the move.
+     *
+     * @throws ReversiException If the move is not legal.
+     */
+    private void validateMove(int row, int col) throws ReversiException
+    {
+        MoveValidationEvent event = new MoveValidationEvent();
+        event.begin();
+        boolean valid = false;
+        try
+        {
+            serverGame.makeMove(row, col);
+            valid = true;
+        }
+        finally
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.gameId = gameId;
+                event.player = numMoves % 2 + 1;
+                event.moveNumber = numMoves;
+                event.valid = valid;
+                event.commit();
+            }
+        }
+    }
+
     /**
      * Sends each of the clients the move that has just been made.
      *
@@ -106,8 +291,19 @@ public class ReversiGame implements ReversiProtocol
      */
     private void sendMoveMade(String moveMade)
     {
+        BroadcastEvent event = new BroadcastEvent();
+        event.begin();
+
         reversiPlayer1.moveMade(moveMade);
         reversiPlayer2.moveMade(moveMade);
+
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.gameId = gameId;
+            event.moveNumber = numMoves;
+            event.commit();
+        }
     }
 
     /**
@@ -119,9 +315,73 @@ public class ReversiGame implements ReversiProtocol
      */
     private String[] getNextMoveFromPlayer() throws IOException
     {
-        // if numMoves is even, it is player one's turn
-        if (numMoves % 2 == 0) return reversiPlayer1.makeMove();
-            // else it is player two's turn
-        else return reversiPlayer2.makeMove();
+        // if numMoves is even, it is player one's turn, else it is player two's turn
+        ReversiPlayer player = numMoves % 2 == 0 ? reversiPlayer1 : reversiPlayer2;
+        MoveRoundTripEvent event = new MoveRoundTripEvent();
+        event.begin();
+        String [] message = player.makeMove();
+
+        // a player may ask for the real board (if theirs drifted) or for analysis before moving
+        int requests = 0;
+        while (RESYNC.equals(message[0]) || ANALYZE.equals(message[0]))
+        {
+            if (RESYNC.equals(message[0])) player.sendBoard(Position.of(serverGame));
+            else player.sendAnalysis(analyze(message));
+            message = player.readMessage();
+            ++requests;
+        }
+
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.gameId = gameId;
+            event.player = player.getPlayerNumber();
+            event.moveNumber = numMoves;
+            event.requests = requests;
+            event.commit();
+        }
+        return message;
+    }
+
+    /**
+     * Runs the analysis a player asked for.
+     *
+     * @param message The player's ANALYZE request, which may include a depth.
+     *
+     * @return The best move, or null if the position could not be analyzed.
+     */
+    private SearchResult analyze(String [] message)
+    {
+        AnalysisEvent event = new AnalysisEvent();
+        event.begin();
+        int depth = AnalysisService.DEFAULT_DEPTH;
+        try
+        {
+            if (message.length > 1) depth = Integer.parseInt(message[1]);
+            return analysisService.analyze(serverGame, depth)
+                    .get(AnalysisService.ANSWER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (NumberFormatException | ExecutionException | TimeoutException e)
+        {
+            // a bad depth, a busy server or a search which took too long just means no analysis
+            return null;
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        finally
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.gameId = gameId;
+                event.player = numMoves % 2 + 1;
+                event.moveNumber = numMoves;
+                event.depth = depth;
+                event.commit();
+            }
+        }
     }
 }
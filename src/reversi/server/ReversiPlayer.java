@@ -1,18 +1,26 @@
 package reversi.server;
 
 import reversi.*;
+import reversi.search.SearchResult;
+import reversi.trace.ConnectionAcceptEvent;
+import reversi.trace.HandshakeEvent;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.IOException;
 
+import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.InetAddress;
 
+import java.util.Base64;
+
 
 /**
- * A middle-man class that holds each player.
+ * A middle-man class that holds each player. A player's connection may outlast their game: a server which plays
+ * several games can ask {@link #wantsNextGame(int, Position)} or {@link #takeQueuedGame()} and then {@link #startGame(int, int, long, int, boolean) start} another.
  *
  * @author Kevin Becker
  */
@@ -20,25 +28,114 @@ class ReversiPlayer implements ReversiProtocol
 {
     /** the socket of the player. */
     private Socket playerConn;
+    /** the connection's number, which ties its accept to its games in a trace. */
+    private final long connectionId;
     /** the BufferedReader for player. */
     private BufferedReader playerIn;
     /** the PrintWriter for player. */
     private PrintWriter playerOut;
+    /** the game the player is in (used for tracing). */
+    private long gameId;
+    /** which player this is in their game, 1 or 2 (used for tracing). */
+    private int playerNumber;
+    /** the number of games the player has asked to play after the current one (see QUEUE). */
+    private int gamesQueued;
+    /** whether the player has hung up. */
+    private boolean hungUp;
 
     /**
-     * Constructs a player object.
+     * Constructs a player object and starts their first game.
      *
      * @param conn The connection Socket that player is connected to.
+     * @param connectionId The connection's number (see {@link #accept(ServerSocket, long, long, int)}).
      * @param numRows The number of rows in the Reversi game (used for connect message).
      * @param numCols The number of cols in the Reversi game (used for connect message).
+     * @param gameId The game the player is in.
+     * @param playerNumber Which player this is, 1 or 2.
+     */
+    ReversiPlayer(Socket conn, long connectionId, int numRows, int numCols, long gameId, int playerNumber)
+            throws IOException
+    {
+        this(conn, connectionId);
+        startGame(numRows, numCols, gameId, playerNumber, false);
+    }
+
+    /**
+     * Constructs a player object which is not yet in a game.
+     *
+     * @param conn The connection Socket that player is connected to.
+     * @param connectionId The connection's number (see {@link #accept(ServerSocket, long, long, int)}).
      */
-    ReversiPlayer(Socket conn, int numRows, int numCols) throws IOException
+    ReversiPlayer(Socket conn, long connectionId) throws IOException
     {
         this.playerConn = conn;
+        this.connectionId = connectionId;
+        // a move and the next MAKE_MOVE go out back to back, and must not wait on each other's acknowledgement
+        this.playerConn.setTcpNoDelay(true);
         this.playerIn = new BufferedReader(new InputStreamReader(playerConn.getInputStream()));
         this.playerOut = new PrintWriter(playerConn.getOutputStream(), true);
+    }
 
-        successfulConnect(numRows, numCols);
+    /**
+     * Starts a game: tells the player they are connected to it, with the number of rows and columns.
+     *
+     * @param numRows The number of rows in the Reversi game.
+     * @param numCols The number of cols in the Reversi game.
+     * @param gameId The game the player is in.
+     * @param playerNumber Which player this is, 1 or 2.
+     * @param nextGame Whether the player may ask for another game on this connection when this one ends.
+     */
+    void startGame(int numRows, int numCols, long gameId, int playerNumber, boolean nextGame)
+    {
+        this.gameId = gameId;
+        this.playerNumber = playerNumber;
+
+        HandshakeEvent handshake = new HandshakeEvent();
+        handshake.begin();
+
+        successfulConnect(numRows, numCols, nextGame);
+
+        handshake.end();
+        if (handshake.shouldCommit())
+        {
+            handshake.gameId = gameId;
+            handshake.player = playerNumber;
+            handshake.connectionId = connectionId;
+            handshake.rows = numRows;
+            handshake.cols = numCols;
+            handshake.commit();
+        }
+    }
+
+    /**
+     * Waits for a player to connect to a server. The connection's number is recorded with the wait and with each of
+     * its handshakes, so a trace can charge the wait to the connection's first game even when the game was not known
+     * at the time.
+     *
+     * @param server The server's socket.
+     * @param connectionId The connection's number, unique within the server.
+     * @param gameId The game the player will be in, or 0 if it is not known yet.
+     * @param playerNumber Which player they will be, 1 or 2, or 0 if it is not known yet.
+     *
+     * @return The player's connection.
+     *
+     * @throws IOException If the connection cannot be accepted.
+     */
+    static Socket accept(ServerSocket server, long connectionId, long gameId, int playerNumber) throws IOException
+    {
+        ConnectionAcceptEvent event = new ConnectionAcceptEvent();
+        event.begin();
+        Socket conn = server.accept();
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.gameId = gameId;
+            event.player = playerNumber;
+            event.connectionId = connectionId;
+            event.remoteAddress = conn.getInetAddress().getHostAddress() + ":" + conn.getPort();
+            event.commit();
+        }
+        return conn;
     }
 
     /**
@@ -51,7 +148,116 @@ class ReversiPlayer implements ReversiProtocol
     String [] makeMove() throws IOException
     {
         playerOut.println(MAKE_MOVE);
-        return playerIn.readLine().split(" ");
+        return readMessage();
+    }
+
+    /**
+     * Reads the next message from the player, split by space.
+     *
+     * @return The player's message split by spaces
+     *
+     * @throws IOException If an IOException is encountered while reading in the message.
+     */
+    String [] readMessage() throws IOException
+    {
+        String [] message = readLine();
+
+        // games queued for later are noted here, so the game itself only sees moves and requests
+        while (QUEUE.equals(message[0]))
+        {
+            queueGames(message);
+            message = readLine();
+        }
+        return message;
+    }
+
+    /**
+     * Starts one of the games the player has queued, if they have any, without waiting for them.
+     *
+     * @return True if the player had a game queued.
+     */
+    boolean takeQueuedGame()
+    {
+        if (gamesQueued == 0) return false;
+        --gamesQueued;
+        return true;
+    }
+
+    /**
+     * Waits for the player to say whether they will play another game, after one has ended. A player with games
+     * queued is not asked. While they decide, a RESYNC is answered with the final board and an ANALYZE with no
+     * analysis (there are no moves left to analyze); anything else but QUIT is ignored.
+     *
+     * @param timeout How long to wait for the player to answer, in milliseconds.
+     * @param finalPosition The position the game ended in.
+     *
+     * @return True if the player wants another game, false if they quit, hung up or took too long.
+     */
+    boolean wantsNextGame(int timeout, Position finalPosition)
+    {
+        if (takeQueuedGame()) return true;
+
+        // other requests do not restart the clock
+        long deadline = System.currentTimeMillis() + timeout;
+        try
+        {
+            while (gamesQueued == 0)
+            {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) return false;
+                playerConn.setSoTimeout((int) remaining);
+
+                String [] message = readLine();
+                switch (message[0])
+                {
+                    case NEXT_GAME:
+                        return true;
+                    case QUIT:
+                        return false;
+                    case QUEUE:
+                        // the next game is the first of those queued (QUEUE 0 just leaves us waiting for an answer)
+                        queueGames(message);
+                        break;
+                    case RESYNC:
+                        sendBoard(finalPosition);
+                        break;
+                    case ANALYZE:
+                        sendAnalysis(null);
+                        break;
+                    default:
+                        // not an answer; keep waiting for one
+                        break;
+                }
+            }
+            --gamesQueued;
+            return true;
+        }
+        catch (IOException ioe)
+        {
+            // a hang up or a timeout
+            return false;
+        }
+        finally
+        {
+            try
+            {
+                playerConn.setSoTimeout(0);
+            }
+            catch (IOException ioe)
+            {
+                // the connection is closed, which the next game will find
+            }
+        }
+    }
+
+    /**
+     * Sends the player the whole board so it can replace its copy.
+     *
+     * @param position The current position of the game.
+     */
+    void sendBoard(Position position)
+    {
+        playerOut.println(BOARD + " " + Base64.getEncoder().encodeToString(position.toBytes()));
     }
 
     /**
@@ -64,6 +270,17 @@ class ReversiPlayer implements ReversiProtocol
         playerOut.println(moveMade);
     }
 
+    /**
+     * Sends the player the analysis it asked for.
+     *
+     * @param result The best move and its score, or null if there was no analysis.
+     */
+    void sendAnalysis(SearchResult result)
+    {
+        if (result == null) playerOut.println(ANALYSIS + " NONE");
+        else playerOut.println(ANALYSIS + " " + result.getRow() + " " + result.getCol() + " " + result.getScore());
+    }
+
     /**
      * Sends the result of the game to the player.
      *
@@ -94,6 +311,70 @@ class ReversiPlayer implements ReversiProtocol
         if(this.playerConn != null) playerConn.close();
     }
 
+    /**
+     * Reads a line from the player, split by space.
+     *
+     * @throws IOException If the line cannot be read, or the player has hung up.
+     */
+    private String [] readLine() throws IOException
+    {
+        String line = playerIn.readLine();
+        if (line == null)
+        {
+            hungUp = true;
+            throw new EOFException("Player " + playerNumber + " hung up");
+        }
+        return line.split(" ");
+    }
+
+    /**
+     * Notes the number of games a player has queued (QUEUE n).
+     *
+     * @param message The player's QUEUE message.
+     */
+    private void queueGames(String [] message)
+    {
+        try
+        {
+            gamesQueued = message.length > 1 ? Math.max(0, Integer.parseInt(message[1])) : 0;
+        }
+        catch (NumberFormatException nfe)
+        {
+            // a bad count queues nothing
+            gamesQueued = 0;
+        }
+    }
+
+    /**
+     * Checks whether the player has hung up, which is found out when they are next read from.
+     *
+     * @return True if the player has hung up.
+     */
+    boolean hasHungUp()
+    {
+        return hungUp;
+    }
+
+    /**
+     * Gets the game the player is in.
+     *
+     * @return The game's ID.
+     */
+    long getGameId()
+    {
+        return gameId;
+    }
+
+    /**
+     * Gets which player this is.
+     *
+     * @return 1 or 2.
+     */
+    int getPlayerNumber()
+    {
+        return playerNumber;
+    }
+
     /**
      * Gets the InetAddress of the player (used for server output).
      *
@@ -115,13 +396,15 @@ class ReversiPlayer implements ReversiProtocol
     }
 
     /**
-     * Tells the player they have connected successfully, followed by the number of rows and number of columns.
+     * Tells the player they have connected successfully, followed by the number of rows and number of columns, and
+     * NEXT_GAME if they may ask for another game afterwards.
      *
      * @param rows The number of rows in the Reversi board.
      * @param cols The number of columns in the Reversi board.
+     * @param nextGame Whether another game is on offer.
      */
-    private void successfulConnect(int rows, int cols)
+    private void successfulConnect(int rows, int cols, boolean nextGame)
     {
-        playerOut.println(CONNECT + " " + rows + " " + cols);
+        playerOut.println(CONNECT + " " + rows + " " + cols + (nextGame ? " " + NEXT_GAME : ""));
     }
 }
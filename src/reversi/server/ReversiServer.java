@@ -1,11 +1,16 @@
 package reversi.server;
 
 import reversi.*;
+import reversi.archive.ArchiveTool;
+import reversi.archive.GameWriter;
+import reversi.eval.PatternEvaluator;
 
 import java.net.ServerSocket;
 
 import java.io.IOException;
 
+import java.nio.file.Paths;
+
 
 /**
  * A server which can run a game of Reversi, a flip-flop game played with two players. ReversiServer controls the
@@ -15,6 +20,9 @@ import java.io.IOException;
  */
 public class ReversiServer implements ReversiProtocol
 {
+    /** the ID of the server's only game (used for tracing) */
+    private static final long GAME_ID = 1;
+
     /** the ServerSocket */
     private static ServerSocket server;
 
@@ -24,6 +32,9 @@ public class ReversiServer implements ReversiProtocol
     /** player2's ReversiPlayer */
     private static ReversiPlayer reversiPlayer2;
 
+    /** answers the players' requests for analysis */
+    private static AnalysisService analysisService;
+
 
     /**
      * The main method that checks correct
@@ -49,6 +60,14 @@ public class ReversiServer implements ReversiProtocol
         int numCols = Integer.parseInt(args[1]);
         // sets port to its integer value
         int port = Integer.parseInt(args[2]);
+        // the board must be at least 2x2 to hold the starting pieces, RESYNC's encoding caps each side and the client's
+        // packed engine caps the area
+        if (numRows < 2 || numCols < 2 || numRows > Position.MAX_SIDE || numCols > Position.MAX_SIDE ||
+                (long) numRows * numCols > Integer.MAX_VALUE - 64)
+        {
+            System.out.println("Invalid board size " + numRows + "x" + numCols + ". Both dimensions must be from 2 to " + Position.MAX_SIDE + " and the area below 2^31.");
+            System.exit(1);
+        }
         // makes a null ReversiGame
         ReversiGame game;
 
@@ -59,7 +78,7 @@ public class ReversiServer implements ReversiProtocol
             // alerts that the server has finished initializing
             System.out.print("Server initialization completed.\nBuilding game now...");
             // creates a ReversiGame object with the two ReversiPlayers, the number of rows and the number of columns
-            game = new ReversiGame(reversiPlayer1, reversiPlayer2, numRows, numCols);
+            game = new ReversiGame(GAME_ID, reversiPlayer1, reversiPlayer2, numRows, numCols, analysisService);
             System.out.println(" completed. Game will begin now.");
 
             // starts the game
@@ -67,6 +86,16 @@ public class ReversiServer implements ReversiProtocol
 
             // once we get here the game has completed
             System.out.println("The game has finished. Server will now terminate.");
+
+            // adds the game to an archive if we were asked to keep one (-Dreversi.archive=file)
+            String archive = System.getProperty("reversi.archive");
+            if (archive != null)
+            {
+                try (GameWriter writer = ArchiveTool.openWriter(Paths.get(archive), true))
+                {
+                    writer.write(game.getRecord());
+                }
+            }
         }
         catch (IOException ioe)
         {
@@ -113,15 +142,20 @@ public class ReversiServer implements ReversiProtocol
         // sets the server to a new ServerSocket on port
         server = new ServerSocket(port);
 
+        // starts the analysis workers, using trained weights if we were given them (-Dreversi.weights=file)
+        String weights = System.getProperty("reversi.weights");
+        analysisService = new AnalysisService(weights == null ? PatternEvaluator.createDefault()
+                : PatternEvaluator.load(Paths.get(weights)), Runtime.getRuntime().availableProcessors());
+
         // waits for player one to connect to server
         System.out.print("Waiting for player 1 to connect... ");
-        reversiPlayer1 = new ReversiPlayer(server.accept(), numRows, numCols);
+        reversiPlayer1 = new ReversiPlayer(ReversiPlayer.accept(server, 1, GAME_ID, 1), 1, numRows, numCols, GAME_ID, 1);
         // we tell reversiPlayer1 it was connected successfully then tell it the number of rows and columns in the game
         System.out.println("successfully connected! (player 1 located at: " + reversiPlayer1.getInetAddress() + ":" + reversiPlayer1.getPort() + ")");
 
         // waits for player two to connect to server
         System.out.print("Waiting for player 2 to connect... ");
-        reversiPlayer2 = new ReversiPlayer(server.accept(), numRows, numCols);
+        reversiPlayer2 = new ReversiPlayer(ReversiPlayer.accept(server, 2, GAME_ID, 2), 2, numRows, numCols, GAME_ID, 2);
         // we tell reversiPlayer2 it was connected successfully then tell it the number of rows and columns in the game
         System.out.println("successfully connected! (player 2 located at: " + reversiPlayer2.getInetAddress() + ":" + reversiPlayer2.getPort() + ")");
     }
@@ -139,5 +173,11 @@ public class ReversiServer implements ReversiProtocol
         if (reversiPlayer2 != null) reversiPlayer2.close();
         // closes the server
         if (server != null) server.close();
+        // stops the analysis workers and reports how they did
+        if (analysisService != null)
+        {
+            analysisService.shutdown();
+            System.out.println(analysisService.getStatistics());
+        }
     }
 }
\ No newline at end of file
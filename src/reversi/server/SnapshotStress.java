@@ -0,0 +1,246 @@
+package reversi.server;
+
+import reversi.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Stress tests {@link ReversiGame#getSnapshot()} in the manner of a jcstress test: real games are played over local
+ * sockets by two random players while reader threads spin on the snapshot of the game in progress, checking every
+ * position they see:<br><br><em>
+ *     no cell belongs to both players (a position built half way through a move would show one);<br>
+ *     the disc count never goes down within a game (snapshots are published in order);<br>
+ *     the disc count is the four starting discs plus the moves played, as counted just before and just after the
+ *     read (a snapshot is published after every move, so it is never stale).</em><br><br>
+ * Usage: <tt>java SnapshotStress [#_rows #_cols [#_games [#_readers]]]</tt> (8 8 50 3 by default). The exit status is
+ * 1 if any check fails.
+ *
+ * @author Kevin Becker
+ */
+public class SnapshotStress
+{
+    /** the game in progress, or null between games. */
+    private static volatile ReversiGame current;
+
+    /** whether the games are over. */
+    private static volatile boolean done;
+
+    /** the number of snapshots read. */
+    private static final AtomicLong reads = new AtomicLong();
+
+    /** the number of snapshots which failed a check. */
+    private static final AtomicLong violations = new AtomicLong();
+
+    /**
+     * Runs the stress test.
+     *
+     * @param args The arguments:<br><br><em>
+     *             0, 1 => (optional) The number of rows and columns (default 8 8).<br>
+     *             2 => (optional) The number of games (default 50).<br>
+     *             3 => (optional) The number of reader threads (default 3).</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length == 1 || args.length > 4)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java SnapshotStress [#_rows #_cols [#_games [#_readers]]]");
+            System.exit(1);
+        }
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int cols = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int readerCount = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+        List<Thread> readers = new ArrayList<>();
+        for (int i = 0; i < readerCount; ++i)
+        {
+            Thread reader = new Thread(SnapshotStress::read, "snapshot-reader-" + i);
+            readers.add(reader);
+            reader.start();
+        }
+
+        long start = System.nanoTime();
+        try (ServerSocket server = new ServerSocket(0, 2, InetAddress.getLoopbackAddress()))
+        {
+            for (int game = 1; game <= games; ++game)
+            {
+                play(server, rows, cols, game);
+            }
+        }
+        catch (IOException | ReversiException e)
+        {
+            System.err.println("Game failed - " + e);
+            violations.incrementAndGet();
+        }
+        finally
+        {
+            done = true;
+        }
+
+        for (Thread reader : readers)
+        {
+            try
+            {
+                reader.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        System.out.printf("%d %dx%d games in %.1f s: %,d snapshots read by %d readers, %d violations%n", games, rows,
+                cols, (System.nanoTime() - start) / 1e9, reads.get(), readerCount, violations.get());
+        if (violations.get() > 0) System.exit(1);
+    }
+
+    /**
+     * Plays one game between two random players, publishing it to the readers while it runs.
+     *
+     * @param server Where the players connect.
+     * @param rows The number of rows.
+     * @param cols The number of columns.
+     * @param gameId The game's ID.
+     */
+    private static void play(ServerSocket server, int rows, int cols, long gameId) throws IOException, ReversiException
+    {
+        Thread [] players = new Thread[2];
+        for (int i = 0; i < players.length; ++i)
+        {
+            long seed = gameId * 2 + i;
+            players[i] = new Thread(() -> randomPlayer(server.getLocalPort(), seed), "snapshot-player-" + i);
+            players[i].start();
+        }
+
+        try (Socket conn1 = server.accept(); Socket conn2 = server.accept())
+        {
+            ReversiPlayer player1 = new ReversiPlayer(conn1, gameId * 2 - 1, rows, cols, gameId, 1);
+            ReversiPlayer player2 = new ReversiPlayer(conn2, gameId * 2, rows, cols, gameId, 2);
+            ReversiGame game = new ReversiGame(gameId, player1, player2, rows, cols, null);
+            current = game;
+            game.run();
+        }
+        finally
+        {
+            current = null;
+        }
+
+        for (Thread player : players)
+        {
+            try
+            {
+                player.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Connects to the game and plays random valid moves until it ends.
+     *
+     * @param port The port of the game.
+     * @param seed Chooses the moves.
+     */
+    private static void randomPlayer(int port, long seed)
+    {
+        SplittableRandom random = new SplittableRandom(seed);
+        try (Socket conn = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+             PrintWriter out = new PrintWriter(conn.getOutputStream(), true))
+        {
+            conn.setTcpNoDelay(true);
+            Board board = null;
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                String [] message = line.split(" ");
+                switch (message[0])
+                {
+                    case ReversiProtocol.CONNECT:
+                        board = Board.create(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+                        break;
+                    case ReversiProtocol.MAKE_MOVE:
+                        int [] valid = board.getValidMoves();
+                        int move = valid[random.nextInt(valid.length)];
+                        out.println(ReversiProtocol.MOVE + " " + move / board.getCols() + " " + move % board.getCols());
+                        break;
+                    case ReversiProtocol.MOVE_MADE:
+                        board.makeMove(Integer.parseInt(message[1]), Integer.parseInt(message[2]));
+                        break;
+                    default:
+                        return;
+                }
+            }
+        }
+        catch (IOException | ReversiException | RuntimeException e)
+        {
+            System.err.println("Player failed - " + e);
+            violations.incrementAndGet();
+        }
+    }
+
+    /**
+     * Reads snapshots of the game in progress as fast as possible, checking each one.
+     */
+    private static void read()
+    {
+        long lastGame = -1;
+        int lastDiscs = 0;
+        long count = 0;
+        while (!done)
+        {
+            ReversiGame game = current;
+            if (game == null)
+            {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            int before = game.getMovesPlayed();
+            Position position = game.getSnapshot();
+            int after = game.getMovesPlayed();
+            ++count;
+            if (game.getGameId() != lastGame)
+            {
+                lastGame = game.getGameId();
+                lastDiscs = 0;
+            }
+
+            int discs = 0;
+            boolean shared = false;
+            for (int i = 0; i < position.getWordCount(); ++i)
+            {
+                long player1 = position.getPlayer1Word(i);
+                long player2 = position.getPlayer2Word(i);
+                shared |= (player1 & player2) != 0;
+                discs += Long.bitCount(player1) + Long.bitCount(player2);
+            }
+            // the move after the last count may already be in the snapshot
+            boolean stale = discs - 4 < before || discs - 4 > after + 1;
+            if (shared || discs < lastDiscs || stale)
+            {
+                violations.incrementAndGet();
+                System.err.println("Game " + lastGame + ": bad snapshot with " + discs + " discs after " + lastDiscs +
+                        " (" + before + " to " + after + " moves played)" +
+                        (shared ? ", a cell owned by both players" : ""));
+            }
+            lastDiscs = discs;
+        }
+        reads.addAndGet(count);
+    }
+}
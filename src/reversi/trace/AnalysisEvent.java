@@ -0,0 +1,25 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The server answering a player's ANALYZE request, including any wait for a free analysis worker.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.Analysis")
+@Label("Analysis")
+@Description("Answering a player's ANALYZE request")
+public class AnalysisEvent extends GameTraceEvent
+{
+    /** the number of the move being thought about, from 0. */
+    @Label("Move Number")
+    public int moveNumber;
+
+    /** the depth searched. */
+    @Label("Depth")
+    public int depth;
+}
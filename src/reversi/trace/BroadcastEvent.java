@@ -0,0 +1,22 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The server sending MOVE_MADE to both players. The duration only grows when a player's socket buffer is full, that
+ * is when they are not reading.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.Broadcast")
+@Label("Broadcast")
+@Description("Sending a move to both players")
+public class BroadcastEvent extends GameTraceEvent
+{
+    /** the number of the move in the game, from 0. */
+    @Label("Move Number")
+    public int moveNumber;
+}
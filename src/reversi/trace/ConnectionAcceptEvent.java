@@ -0,0 +1,25 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The server waiting for a player to connect. The duration is mostly the time until the player turned up.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.ConnectionAccept")
+@Label("Connection Accept")
+@Description("The server waiting for and accepting a player's connection")
+public class ConnectionAcceptEvent extends GameTraceEvent
+{
+    /** the player's address, as host:port. */
+    @Label("Remote Address")
+    public String remoteAddress;
+
+    /** the connection's number, unique within the server; it ties a lobby's accepts to the games they led to. */
+    @Label("Connection ID")
+    public long connectionId;
+}
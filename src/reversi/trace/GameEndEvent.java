@@ -0,0 +1,25 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The end of a game. The duration is the whole game, from the first MAKE_MOVE to the results being sent.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.GameEnd")
+@Label("Game End")
+@Description("A game finishing, timed from its first move")
+public class GameEndEvent extends GameTraceEvent
+{
+    /** the number of moves made. */
+    @Label("Moves")
+    public int moves;
+
+    /** how the game ended: PLAYER_ONE, PLAYER_TWO or NONE for the winner, or ERROR or DISCONNECTED. */
+    @Label("Result")
+    public String result;
+}
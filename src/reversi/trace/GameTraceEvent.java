@@ -0,0 +1,42 @@
+package reversi.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+
+/**
+ * The fields every Java Flight Recorder event of a game shares. The events are recorded by the server when a
+ * recording is running (for example with {@code -XX:StartFlightRecording=filename=games.jfr}) and read back by
+ * {@link TraceReport}.<br><br>
+ *
+ * An event is used as
+ * <pre>
+ *     MoveValidationEvent event = new MoveValidationEvent();
+ *     event.begin();
+ *     ... the work being timed ...
+ *     event.end();
+ *     if (event.shouldCommit())
+ *     {
+ *         event.gameId = gameId;
+ *         event.commit();
+ *     }
+ * </pre>
+ * When no recording wants the event, begin, end and shouldCommit do nothing and the JIT removes the unused object,
+ * so the server pays nothing for them. The fields are only filled in once an event is known to be wanted.
+ *
+ * @author Kevin Becker
+ */
+@Category("Reversi")
+@StackTrace(false)
+public abstract class GameTraceEvent extends Event
+{
+    /** the game, numbered by the server from 1. */
+    @Label("Game ID")
+    public long gameId;
+
+    /** the player concerned (1 or 2), or 0 if the event concerns both. */
+    @Label("Player")
+    public int player;
+}
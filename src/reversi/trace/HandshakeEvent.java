@@ -0,0 +1,29 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The server setting up a player's streams and sending them CONNECT with the size of the board.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.Handshake")
+@Label("Handshake")
+@Description("Setting up a player's connection and sending CONNECT")
+public class HandshakeEvent extends GameTraceEvent
+{
+    /** the number of rows sent to the player. */
+    @Label("Rows")
+    public int rows;
+
+    /** the number of columns sent to the player. */
+    @Label("Columns")
+    public int cols;
+
+    /** the connection the handshake went out on (see {@link ConnectionAcceptEvent#connectionId}). */
+    @Label("Connection ID")
+    public long connectionId;
+}
@@ -0,0 +1,27 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * From the server sending MAKE_MOVE to the player's MOVE arriving: the network both ways, the player's thinking, and
+ * any RESYNC or ANALYZE requests the player made first (the analysis itself is also timed by an
+ * {@link AnalysisEvent}).
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.MoveRoundTrip")
+@Label("Move Round Trip")
+@Description("From sending MAKE_MOVE to receiving the player's MOVE")
+public class MoveRoundTripEvent extends GameTraceEvent
+{
+    /** the number of the move in the game, from 0. */
+    @Label("Move Number")
+    public int moveNumber;
+
+    /** the number of RESYNC and ANALYZE requests answered before the move. */
+    @Label("Requests")
+    public int requests;
+}
@@ -0,0 +1,25 @@
+package reversi.trace;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * The server checking a player's move and playing it on the master board.
+ *
+ * @author Kevin Becker
+ */
+@Name("reversi.MoveValidation")
+@Label("Move Validation")
+@Description("Checking and playing a move on the server's board")
+public class MoveValidationEvent extends GameTraceEvent
+{
+    /** the number of the move in the game, from 0. */
+    @Label("Move Number")
+    public int moveNumber;
+
+    /** whether the move was legal. */
+    @Label("Valid")
+    public boolean valid;
+}
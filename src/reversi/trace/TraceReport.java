@@ -0,0 +1,325 @@
+package reversi.trace;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Reads a Java Flight Recorder file made by a server and breaks down where each game's time went. A recording is
+ * made by starting the server with, for example,
+ * <pre>
+ *     java -XX:StartFlightRecording=filename=games.jfr reversi.server.ReversiBackend 8 8 5000 5001
+ * </pre>
+ * and is dumped when the server exits (or with {@code jcmd pid JFR.dump}). Then
+ * <pre>
+ *     java reversi.trace.TraceReport games.jfr
+ * </pre>
+ * prints a line for each game:<br><br><em>
+ *     Accept => waiting for the players to connect. A server with a lobby accepts a player before it knows their
+ *     game, so the wait is charged to the first game the connection was sent CONNECT for; waits for connections
+ *     which never started a game are reported on their own.<br>
+ *     Handshake => setting up the connections and sending CONNECT.<br>
+ *     P1 client, P2 client => MAKE_MOVE to MOVE, less any analysis the player asked for: the network both ways plus
+ *     the player's thinking.<br>
+ *     Analysis => answering ANALYZE requests.<br>
+ *     Validation => checking and playing moves on the server's board.<br>
+ *     Broadcast => sending MOVE_MADE to both players.<br>
+ *     Other => the rest of the game's time on the server (parsing, recording, hashing and snapshots).</em><br><br>
+ * followed by the totals over all games and each game's slowest move.
+ *
+ * @author Kevin Becker
+ */
+public class TraceReport
+{
+    /** the prefix of the names of our events. */
+    private static final String PREFIX = "reversi.";
+
+    /** nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /**
+     * Everything recorded about one game, in nanoseconds.
+     */
+    private static class GameTrace
+    {
+        /** the game's ID. */
+        final long gameId;
+
+        /** waiting for the players to connect. */
+        long accept;
+
+        /** the number of connections accepted. */
+        int connections;
+
+        /** setting up the players' connections. */
+        long handshake;
+
+        /** MAKE_MOVE to MOVE for each player (indexed by player number). */
+        final long [] roundTrip = new long[3];
+
+        /** answering each player's ANALYZE requests (indexed by player number). */
+        final long [] analysis = new long[3];
+
+        /** checking and playing moves. */
+        long validation;
+
+        /** sending moves to the players. */
+        long broadcast;
+
+        /** the number of moves which were not legal. */
+        int invalid;
+
+        /** the longest round trip. */
+        long slowest = -1;
+
+        /** the number of the move with the longest round trip. */
+        int slowestMove;
+
+        /** the player who made the move with the longest round trip. */
+        int slowestPlayer;
+
+        /** the length of the whole game, or -1 if it has not ended. */
+        long game = -1;
+
+        /** the number of moves made, once the game has ended. */
+        int moves;
+
+        /** how the game ended, or null if it has not. */
+        String result;
+
+        /**
+         * Starts the trace of a game.
+         *
+         * @param gameId The game's ID.
+         */
+        GameTrace(long gameId)
+        {
+            this.gameId = gameId;
+        }
+
+        /**
+         * Gets the player's time in the game: the round trips, less the analysis they asked for.
+         *
+         * @param player The player, 1 or 2.
+         *
+         * @return The time in nanoseconds.
+         */
+        long client(int player)
+        {
+            return roundTrip[player] - analysis[player];
+        }
+
+        /**
+         * Gets the server's time in the game which is not accounted for by any event.
+         *
+         * @return The time in nanoseconds, or -1 if the game has not ended.
+         */
+        long other()
+        {
+            if (game < 0) return -1;
+            return Math.max(0, game - roundTrip[1] - roundTrip[2] - validation - broadcast);
+        }
+    }
+
+    /**
+     * Prints the breakdown of a recording.
+     *
+     * @param args The arguments that are used for the report.
+     *             The arguments should have the following:<br><br><em>
+     *             0 => The recording (.jfr file).</em>
+     */
+    public static void main(String [] args)
+    {
+        if (args.length != 1)
+        {
+            System.out.println("Invalid number of arguments.\nUsage: java TraceReport recording.jfr");
+            System.exit(1);
+        }
+
+        try
+        {
+            GameTrace unmatched = new GameTrace(0);
+            print(read(Paths.get(args[0]), unmatched), unmatched);
+        }
+        catch (IOException ioe)
+        {
+            System.err.println("I/O Error - " + ioe.getMessage());
+            System.out.println("The recording could not be read.");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gathers the events of a recording by game.
+     *
+     * @param file The recording.
+     * @param unmatched Collects the accepts of connections which never started a game.
+     *
+     * @return The games, in order of their IDs.
+     *
+     * @throws IOException If the recording cannot be read.
+     */
+    static Map<Long, GameTrace> read(Path file, GameTrace unmatched) throws IOException
+    {
+        Map<Long, GameTrace> games = new TreeMap<>();
+        // accepts are joined to games by connection once everything is read, since events are not in time order
+        Map<Long, Long> accepts = new HashMap<>();
+        Map<Long, Long> firstGames = new HashMap<>();
+        try (RecordingFile recording = new RecordingFile(file))
+        {
+            while (recording.hasMoreEvents())
+            {
+                RecordedEvent event = recording.readEvent();
+                String name = event.getEventType().getName();
+                if (!name.startsWith(PREFIX)) continue;
+
+                long nanos = event.getDuration().toNanos();
+                if (name.equals(PREFIX + "ConnectionAccept"))
+                {
+                    accepts.merge(event.getLong("connectionId"), nanos, Long::sum);
+                    continue;
+                }
+
+                GameTrace game = games.computeIfAbsent(event.getLong("gameId"), GameTrace::new);
+                int player = event.getInt("player");
+                switch (name.substring(PREFIX.length()))
+                {
+                    case "Handshake":
+                        game.handshake += nanos;
+                        firstGames.merge(event.getLong("connectionId"), game.gameId, Math::min);
+                        break;
+                    case "MoveRoundTrip":
+                        game.roundTrip[player] += nanos;
+                        if (nanos > game.slowest)
+                        {
+                            game.slowest = nanos;
+                            game.slowestMove = event.getInt("moveNumber");
+                            game.slowestPlayer = player;
+                        }
+                        break;
+                    case "Analysis":
+                        game.analysis[player] += nanos;
+                        break;
+                    case "MoveValidation":
+                        game.validation += nanos;
+                        if (!event.getBoolean("valid")) ++game.invalid;
+                        break;
+                    case "Broadcast":
+                        game.broadcast += nanos;
+                        break;
+                    case "GameEnd":
+                        game.game = nanos;
+                        game.moves = event.getInt("moves");
+                        game.result = event.getString("result");
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Long> accept : accepts.entrySet())
+        {
+            Long gameId = firstGames.get(accept.getKey());
+            GameTrace game = gameId == null ? unmatched : games.get(gameId);
+            game.accept += accept.getValue();
+            ++game.connections;
+        }
+        return games;
+    }
+
+    /**
+     * Prints a line for each game and the totals over all of them.
+     *
+     * @param games The games.
+     * @param unmatched The accepts of connections which never started a game.
+     */
+    private static void print(Map<Long, GameTrace> games, GameTrace unmatched)
+    {
+        if (games.isEmpty() && unmatched.connections == 0)
+        {
+            System.out.println("The recording has no Reversi events. Was the server run with -XX:StartFlightRecording?");
+            return;
+        }
+
+        if (unmatched.connections > 0)
+        {
+            System.out.printf("%d connections never started a game, %.1f ms spent waiting for them.%n%n",
+                    unmatched.connections, unmatched.accept / NANOS_PER_MILLI);
+        }
+
+        System.out.printf("%6s %5s %-12s %10s %10s %10s %10s %10s %10s %10s %10s %10s  %s%n", "Game", "Moves", "Result",
+                "Game ms", "Accept", "Handshake", "P1 client", "P2 client", "Analysis", "Validation", "Broadcast",
+                "Other", "Slowest move");
+
+        GameTrace total = new GameTrace(0);
+        total.game = 0;
+        int ended = 0;
+        for (GameTrace game : games.values())
+        {
+            System.out.printf("%6d %5s %-12s %10s %10.1f %10.3f %10.1f %10.1f %10.1f %10.3f %10.3f %10s  %s%n",
+                    game.gameId, game.result == null ? "-" : String.valueOf(game.moves),
+                    game.result == null ? "(unfinished)" : game.result + (game.invalid > 0 ? "*" : ""),
+                    millis(game.game), game.accept / NANOS_PER_MILLI, game.handshake / NANOS_PER_MILLI,
+                    game.client(1) / NANOS_PER_MILLI, game.client(2) / NANOS_PER_MILLI,
+                    (game.analysis[1] + game.analysis[2]) / NANOS_PER_MILLI, game.validation / NANOS_PER_MILLI,
+                    game.broadcast / NANOS_PER_MILLI, millis(game.other()), game.slowest < 0 ? "-"
+                            : String.format("#%d by P%d, %.1f ms", game.slowestMove, game.slowestPlayer,
+                            game.slowest / NANOS_PER_MILLI));
+
+            // only finished games go into the totals, so the shares add up to their time
+            if (game.result == null) continue;
+            ++ended;
+            total.game += game.game;
+            total.moves += game.moves;
+            total.invalid += game.invalid;
+            total.validation += game.validation;
+            total.broadcast += game.broadcast;
+            for (int player = 1; player <= 2; ++player)
+            {
+                total.roundTrip[player] += game.roundTrip[player];
+                total.analysis[player] += game.analysis[player];
+            }
+        }
+        if (ended == 0) return;
+
+        System.out.printf("%n%d finished games, %d moves, %.1f ms of play. Where the time went:%n", ended, total.moves,
+                total.game / NANOS_PER_MILLI);
+        share("Clients (network and thinking)", total.client(1) + total.client(2), total);
+        share("Analysis", total.analysis[1] + total.analysis[2], total);
+        share("Move validation", total.validation, total);
+        share("Broadcast", total.broadcast, total);
+        share("Other server time", total.other(), total);
+        if (total.moves > 0)
+        {
+            System.out.printf("Per move: %.3f ms in clients, %.1f us validating, %.1f us broadcasting.%n",
+                    (total.client(1) + total.client(2)) / NANOS_PER_MILLI / total.moves,
+                    total.validation / 1000.0 / total.moves, total.broadcast / 1000.0 / total.moves);
+        }
+        if (total.invalid > 0) System.out.println("(* a game ended by an illegal move)");
+    }
+
+    /**
+     * Prints one part of the total time.
+     */
+    private static void share(String name, long nanos, GameTrace total)
+    {
+        System.out.printf("  %-32s %12.1f ms %6.1f%%%n", name, nanos / NANOS_PER_MILLI,
+                total.game == 0 ? 0.0 : 100.0 * nanos / total.game);
+    }
+
+    /**
+     * Formats a time in milliseconds, or a dash if it is unknown.
+     */
+    private static String millis(long nanos)
+    {
+        return nanos < 0 ? "-" : String.format("%.1f", nanos / NANOS_PER_MILLI);
+    }
+}